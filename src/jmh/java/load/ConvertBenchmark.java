@@ -0,0 +1,341 @@
+/*
+ *           Copyright 2015 - Allanbank Consulting, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package load;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.w3c.dom.Text;
+
+import com.allanbank.mongodb.bson.Document;
+import com.allanbank.mongodb.bson.builder.ArrayBuilder;
+import com.allanbank.mongodb.bson.builder.BuilderFactory;
+import com.allanbank.mongodb.bson.builder.DocumentBuilder;
+
+/**
+ * Compares the allocation of {@link XmlLoader}'s single pass DOM conversion,
+ * which groups siblings in a reused {@link SiblingGroups}, with the previous
+ * two pass conversion that allocated a name count and a duplicates
+ * {@link HashMap} for every element.
+ * <p>
+ * The document is a tree of <code>depth</code> levels where every element has
+ * two attributes, a <code>label</code> child element holding only text and,
+ * above the last level, three repeated <code>item</code> children, so the
+ * elements have both unique and repeated names. Run with the GC
+ * profiler, as {@link #main(String[])} does, and compare the
+ * <code>gc.alloc.rate.norm</code> of the two benchmarks:
+ * </p>
+ * <blockquote>
+ *
+ * <pre>
+ * mvn -P benchmarks package
+ * java -jar target/benchmarks.jar ConvertBenchmark -prof gc
+ * </pre>
+ *
+ * </blockquote>
+ *
+ * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConvertBenchmark {
+
+    /** The number of repeated children of each element. */
+    private static final int FAN_OUT = 3;
+
+    /**
+     * Runs the benchmarks with the GC profiler.
+     *
+     * @param args
+     *            The command line arguments, ignored.
+     * @throws RunnerException
+     *             On a failure to run the benchmarks.
+     */
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ConvertBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class).build()).run();
+    }
+
+    /** The depth of the document. */
+    @Param({ "4", "7" })
+    public int depth;
+
+    /** The loader for the single pass conversion. */
+    private XmlLoader myLoader;
+
+    /** The unmapped field types for the two pass conversion. */
+    private FieldPath myTypes;
+
+    /** The document to convert. */
+    private org.w3c.dom.Document myXml;
+
+    /**
+     * Builds the document.
+     *
+     * @throws ParserConfigurationException
+     *             On a failure to create the DOM.
+     */
+    @Setup
+    public void setup() throws ParserConfigurationException {
+        myXml = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .newDocument();
+        myXml.appendChild(element(myXml, "root", depth));
+
+        myLoader = new XmlLoader();
+        myTypes = new FieldPath();
+    }
+
+    /**
+     * Converts the document with the current single pass conversion.
+     *
+     * @return The converted document.
+     */
+    @Benchmark
+    public Document singlePass() {
+        return myLoader.convert(myXml).asDocument();
+    }
+
+    /**
+     * Converts the document with the previous two pass conversion.
+     *
+     * @return The converted document.
+     */
+    @Benchmark
+    public Document twoPassHashMap() {
+        final DocumentBuilder builder = BuilderFactory.start();
+        convert(builder, myXml.getDocumentElement(), myTypes);
+        return builder.build();
+    }
+
+    /**
+     * Appends the {@link Node}'s attributes and children to the document, as
+     * {@link XmlLoader} did before the single pass conversion. Field names
+     * are cleaned with the current cached {@link XmlLoader#cleanName} so only
+     * the grouping differs.
+     *
+     * @param builder
+     *            The builder for the document.
+     * @param xmlNode
+     *            The XML node to convert.
+     * @param path
+     *            The field path for the node.
+     */
+    private void convert(final DocumentBuilder builder, final Node xmlNode,
+            final FieldPath path) {
+        final NamedNodeMap attributes = xmlNode.getAttributes();
+        final NodeList children = xmlNode.getChildNodes();
+
+        Map<String, Integer> nameCount = new HashMap<String, Integer>();
+        Map<String, ArrayBuilder> duplicates = new HashMap<String, ArrayBuilder>();
+
+        // Two passes through the structures.
+
+        // First time we just count names.
+        if (attributes != null) {
+            for (int i = 0; i < attributes.getLength(); ++i) {
+                final Node attr = attributes.item(i);
+                final String name = XmlLoader.cleanName(attr.getNodeName());
+
+                if (nameCount.containsKey(name)) {
+                    nameCount.put(name, nameCount.get(name) + 1);
+                }
+                else {
+                    nameCount.put(name, 1);
+                }
+            }
+        }
+        for (int i = 0; i < children.getLength(); ++i) {
+            final Node child = children.item(i);
+
+            if (child instanceof Text) {
+                // skip.
+            }
+            else {
+                final String name = XmlLoader.cleanName(child.getNodeName());
+                if (nameCount.containsKey(name)) {
+                    nameCount.put(name, nameCount.get(name) + 1);
+                }
+                else {
+                    nameCount.put(name, 1);
+                }
+            }
+        }
+
+        // Second pass we build the documents.
+        if (attributes != null) {
+            for (int i = 0; i < attributes.getLength(); ++i) {
+                final Node attr = attributes.item(i);
+                final String name = XmlLoader.cleanName(attr.getNodeName());
+
+                if (nameCount.containsKey(name) && nameCount.get(name) > 1) {
+                    ArrayBuilder arrayBuilder = duplicates.get(name);
+                    if (arrayBuilder == null) {
+                        arrayBuilder = builder.pushArray(name);
+                        duplicates.put(name, arrayBuilder);
+                    }
+
+                    arrayBuilder.add(myLoader.coerce(name, attr.getNodeValue(),
+                            path.child(name).getType()));
+                }
+                else {
+                    builder.add(myLoader.coerce(name, attr.getNodeValue(), path
+                            .child(name).getType()));
+                }
+            }
+        }
+
+        ArrayBuilder textSegments = null;
+        for (int i = 0; i < children.getLength(); ++i) {
+            final Node child = children.item(i);
+
+            if (child instanceof Text) {
+                final Text textNode = (Text) child;
+                final String text = textNode.getData().trim();
+
+                // Skip whitespace.
+                if (text.length() > 0) {
+                    if (textSegments == null) {
+                        textSegments = builder.pushArray("_text");
+                    }
+                    textSegments.add(text);
+                }
+            }
+            else {
+                final String name = XmlLoader.cleanName(child.getNodeName());
+                if (textNode(child)) {
+                    if (nameCount.containsKey(name) && nameCount.get(name) > 1) {
+                        ArrayBuilder arrayBuilder = duplicates.get(name);
+                        if (arrayBuilder == null) {
+                            arrayBuilder = builder.pushArray(name);
+                            duplicates.put(name, arrayBuilder);
+                        }
+
+                        arrayBuilder.add(myLoader.coerce(name,
+                                convertToText(child), path.child(name)
+                                        .getType()));
+                    }
+                    else {
+                        builder.add(myLoader.coerce(name, convertToText(child),
+                                path.child(name).getType()));
+                    }
+                }
+                else {
+                    if (nameCount.containsKey(name) && nameCount.get(name) > 1) {
+                        ArrayBuilder arrayBuilder = duplicates.get(name);
+                        if (arrayBuilder == null) {
+                            arrayBuilder = builder.pushArray(name);
+                            duplicates.put(name, arrayBuilder);
+                        }
+
+                        convert(arrayBuilder.push(), child, path.child(name));
+                    }
+                    else {
+                        convert(builder.push(name), child, path.child(name));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Converts the presumed {@link #textNode(Node)} into a string value.
+     *
+     * @param xmlNode
+     *            The node to inspect.
+     * @return The value of the node.
+     */
+    private String convertToText(final Node xmlNode) {
+        final NodeList children = xmlNode.getChildNodes();
+        if ((children.getLength() == 1) && (children.item(0) instanceof Text)) {
+            return ((Text) children.item(0)).getData().trim();
+        }
+        return "";
+    }
+
+    /**
+     * Creates an element and, below the last level, its children.
+     *
+     * @param xml
+     *            The document to create the element in.
+     * @param name
+     *            The name of the element.
+     * @param levels
+     *            The number of levels to create, including this one.
+     * @return The element.
+     */
+    private org.w3c.dom.Element element(final org.w3c.dom.Document xml,
+            final String name, final int levels) {
+        final org.w3c.dom.Element element = xml.createElement(name);
+        element.setAttribute("id", Integer.toString(levels));
+        element.setAttribute("kind", "level-" + levels);
+
+        final org.w3c.dom.Element label = xml.createElement("label");
+        label.appendChild(xml.createTextNode("Label for level " + levels));
+        element.appendChild(label);
+
+        if (levels > 1) {
+            for (int i = 0; i < FAN_OUT; ++i) {
+                element.appendChild(element(xml, "item", levels - 1));
+            }
+        }
+        return element;
+    }
+
+    /**
+     * Determines if the xmlNode has no attributes and only a single child text
+     * node.
+     *
+     * @param xmlNode
+     *            The node to inspect.
+     * @return True if xmlNode has no attributes and only a single child text
+     *         node, false otherwise.
+     */
+    private boolean textNode(final Node xmlNode) {
+        final NamedNodeMap attributes = xmlNode.getAttributes();
+        final NodeList children = xmlNode.getChildNodes();
+
+        return ((attributes == null) || (attributes.getLength() == 0))
+                && (children.getLength() == 1)
+                && (children.item(0) instanceof Text);
+    }
+}
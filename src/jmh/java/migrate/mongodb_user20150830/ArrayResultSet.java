@@ -0,0 +1,2323 @@
+/*
+ * #%L
+ * ArrayResultSet.java - mongodb-async-examples - Allanbank Consulting, Inc.
+ * %%
+ * Copyright (C) 2015 Allanbank Consulting, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+package migrate.mongodb_user20150830;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Date;
+import java.sql.NClob;
+import java.sql.Ref;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.RowId;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Statement;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Calendar;
+import java.util.Map;
+
+/**
+ * A {@link ResultSet} over a single in-memory row, for the benchmarks.
+ * <p>
+ * The results are always positioned on the row. Each value is read from the
+ * row's array with a cast and no conversion, so reading a column costs about
+ * as little as it can: only the getters the {@link ColumnPlan} uses for the
+ * benchmark's columns are supported.
+ * </p>
+ *
+ * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+ */
+public class ArrayResultSet implements ResultSet {
+
+    /** The metadata for the row. */
+    private final ResultSetMetaData myMetaData;
+
+    /** The values of the row's columns. */
+    private final Object[] myRow;
+
+    /** True if the last column read was null. */
+    private boolean myWasNull;
+
+    /**
+     * Creates a new ArrayResultSet.
+     *
+     * @param metaData
+     *            The metadata for the row.
+     * @param row
+     *            The values of the row's columns.
+     */
+    public ArrayResultSet(final ResultSetMetaData metaData,
+            final Object[] row) {
+        myMetaData = metaData;
+        myRow = row;
+        myWasNull = false;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public boolean absolute(final int row) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void afterLast() throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void beforeFirst() throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void cancelRowUpdates() throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void clearWarnings() throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to do nothing, the row is in memory.
+     * </p>
+     */
+    @Override
+    public void close() throws SQLException {
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void deleteRow() throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public int findColumn(final String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public boolean first() throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public Array getArray(final String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public Array getArray(final int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public InputStream getAsciiStream(final String columnLabel)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public InputStream getAsciiStream(final int columnIndex)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public BigDecimal getBigDecimal(final String columnLabel)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public BigDecimal getBigDecimal(final int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public BigDecimal getBigDecimal(final String columnLabel, final int scale)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public BigDecimal getBigDecimal(final int columnIndex, final int scale)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public InputStream getBinaryStream(final String columnLabel)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public InputStream getBinaryStream(final int columnIndex)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public Blob getBlob(final String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public Blob getBlob(final int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public boolean getBoolean(final String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to return the column's value as a boolean.
+     * </p>
+     */
+    @Override
+    public boolean getBoolean(final int columnIndex) throws SQLException {
+        final Object value = value(columnIndex);
+        return (value != null) && ((Boolean) value).booleanValue();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public byte getByte(final String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public byte getByte(final int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public byte[] getBytes(final String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public byte[] getBytes(final int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public Reader getCharacterStream(final String columnLabel)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public Reader getCharacterStream(final int columnIndex)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public Clob getClob(final String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public Clob getClob(final int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public int getConcurrency() throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public String getCursorName() throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public Date getDate(final String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to return the column's date value as a {@link Date}.
+     * </p>
+     */
+    @Override
+    public Date getDate(final int columnIndex) throws SQLException {
+        final Object value = value(columnIndex);
+        return (value == null) ? null : new Date(
+                ((java.util.Date) value).getTime());
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public Date getDate(final String columnLabel, final Calendar cal)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to return the column's date value as a {@link Date},
+     * ignoring the calendar.
+     * </p>
+     */
+    @Override
+    public Date getDate(final int columnIndex, final Calendar cal)
+            throws SQLException {
+        return getDate(columnIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public double getDouble(final String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to return the column's numeric value as a double.
+     * </p>
+     */
+    @Override
+    public double getDouble(final int columnIndex) throws SQLException {
+        final Object value = value(columnIndex);
+        return (value == null) ? 0 : ((Number) value).doubleValue();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public int getFetchDirection() throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public int getFetchSize() throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public float getFloat(final String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public float getFloat(final int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public int getHoldability() throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public int getInt(final String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to return the column's numeric value as an int.
+     * </p>
+     */
+    @Override
+    public int getInt(final int columnIndex) throws SQLException {
+        final Object value = value(columnIndex);
+        return (value == null) ? 0 : ((Number) value).intValue();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public long getLong(final String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to return the column's numeric value as a long.
+     * </p>
+     */
+    @Override
+    public long getLong(final int columnIndex) throws SQLException {
+        final Object value = value(columnIndex);
+        return (value == null) ? 0 : ((Number) value).longValue();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to return the row's metadata.
+     * </p>
+     */
+    @Override
+    public ResultSetMetaData getMetaData() throws SQLException {
+        return myMetaData;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public Reader getNCharacterStream(final String columnLabel)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public Reader getNCharacterStream(final int columnIndex)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public NClob getNClob(final String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public NClob getNClob(final int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public String getNString(final String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public String getNString(final int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public Object getObject(final String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to return the column's value.
+     * </p>
+     */
+    @Override
+    public Object getObject(final int columnIndex) throws SQLException {
+        return value(columnIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public <T> T getObject(final String columnLabel, final Class<T> type)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public Object getObject(final String columnLabel, final Map<String,
+            Class<?>> map) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public <T> T getObject(final int columnIndex, final Class<T> type)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public Object getObject(final int columnIndex, final Map<String,
+            Class<?>> map) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public Ref getRef(final String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public Ref getRef(final int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public int getRow() throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public RowId getRowId(final String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public RowId getRowId(final int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public SQLXML getSQLXML(final String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public SQLXML getSQLXML(final int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public short getShort(final String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public short getShort(final int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public Statement getStatement() throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public String getString(final String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to return the column's value as a string.
+     * </p>
+     */
+    @Override
+    public String getString(final int columnIndex) throws SQLException {
+        final Object value = value(columnIndex);
+        return (value == null) ? null : value.toString();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public Time getTime(final String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public Time getTime(final int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public Time getTime(final String columnLabel, final Calendar cal)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public Time getTime(final int columnIndex, final Calendar cal)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public Timestamp getTimestamp(final String columnLabel)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to return the column's {@link Timestamp} value.
+     * </p>
+     */
+    @Override
+    public Timestamp getTimestamp(final int columnIndex) throws SQLException {
+        return (Timestamp) value(columnIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public Timestamp getTimestamp(final String columnLabel, final Calendar cal)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to return the column's {@link Timestamp} value,
+     * ignoring the calendar.
+     * </p>
+     */
+    @Override
+    public Timestamp getTimestamp(final int columnIndex, final Calendar cal)
+            throws SQLException {
+        return getTimestamp(columnIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public int getType() throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public URL getURL(final String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public URL getURL(final int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public InputStream getUnicodeStream(final String columnLabel)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public InputStream getUnicodeStream(final int columnIndex)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public SQLWarning getWarnings() throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void insertRow() throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public boolean isAfterLast() throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public boolean isBeforeFirst() throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to return false.
+     * </p>
+     */
+    @Override
+    public boolean isClosed() throws SQLException {
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public boolean isFirst() throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public boolean isLast() throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to return true if this is an instance of the
+     * interface.
+     * </p>
+     */
+    @Override
+    public boolean isWrapperFor(final Class<?> iface) throws SQLException {
+        return iface.isInstance(this);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public boolean last() throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void moveToCurrentRow() throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void moveToInsertRow() throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to return false, the results are always positioned on
+     * their only row.
+     * </p>
+     */
+    @Override
+    public boolean next() throws SQLException {
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public boolean previous() throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void refreshRow() throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public boolean relative(final int rows) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public boolean rowDeleted() throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public boolean rowInserted() throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public boolean rowUpdated() throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void setFetchDirection(final int direction) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void setFetchSize(final int rows) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to return this if it is an instance of the interface.
+     * </p>
+     */
+    @Override
+    public <T> T unwrap(final Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("Not a wrapper for " + iface.getName() + ".");
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateArray(final String columnLabel, final Array x)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateArray(final int columnIndex, final Array x)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateAsciiStream(final String columnLabel, final InputStream x)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateAsciiStream(final int columnIndex, final InputStream x)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateAsciiStream(final String columnLabel, final InputStream x,
+            final int length) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateAsciiStream(final String columnLabel, final InputStream x,
+            final long length) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateAsciiStream(final int columnIndex, final InputStream x,
+            final int length) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateAsciiStream(final int columnIndex, final InputStream x,
+            final long length) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateBigDecimal(final String columnLabel, final BigDecimal x)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateBigDecimal(final int columnIndex, final BigDecimal x)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateBinaryStream(final String columnLabel,
+            final InputStream x) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateBinaryStream(final int columnIndex, final InputStream x)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateBinaryStream(final String columnLabel,
+            final InputStream x, final int length) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateBinaryStream(final String columnLabel,
+            final InputStream x, final long length) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateBinaryStream(final int columnIndex, final InputStream x,
+            final int length) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateBinaryStream(final int columnIndex, final InputStream x,
+            final long length) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateBlob(final String columnLabel, final InputStream x)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateBlob(final String columnLabel, final Blob x)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateBlob(final int columnIndex, final InputStream x)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateBlob(final int columnIndex, final Blob x)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateBlob(final String columnLabel, final InputStream x,
+            final long length) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateBlob(final int columnIndex, final InputStream x,
+            final long length) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateBoolean(final String columnLabel, final boolean x)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateBoolean(final int columnIndex, final boolean x)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateByte(final String columnLabel, final byte x)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateByte(final int columnIndex, final byte x)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateBytes(final String columnLabel, final byte[] x)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateBytes(final int columnIndex, final byte[] x)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateCharacterStream(final String columnLabel, final Reader x)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateCharacterStream(final int columnIndex, final Reader x)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateCharacterStream(final String columnLabel, final Reader x,
+            final int length) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateCharacterStream(final String columnLabel, final Reader x,
+            final long length) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateCharacterStream(final int columnIndex, final Reader x,
+            final int length) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateCharacterStream(final int columnIndex, final Reader x,
+            final long length) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateClob(final String columnLabel, final Reader x)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateClob(final String columnLabel, final Clob x)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateClob(final int columnIndex, final Reader x)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateClob(final int columnIndex, final Clob x)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateClob(final String columnLabel, final Reader x,
+            final long length) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateClob(final int columnIndex, final Reader x,
+            final long length) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateDate(final String columnLabel, final Date x)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateDate(final int columnIndex, final Date x)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateDouble(final String columnLabel, final double x)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateDouble(final int columnIndex, final double x)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateFloat(final String columnLabel, final float x)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateFloat(final int columnIndex, final float x)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateInt(final String columnLabel, final int x)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateInt(final int columnIndex, final int x)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateLong(final String columnLabel, final long x)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateLong(final int columnIndex, final long x)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateNCharacterStream(final String columnLabel, final Reader x)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateNCharacterStream(final int columnIndex, final Reader x)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateNCharacterStream(final String columnLabel, final Reader x,
+            final long length) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateNCharacterStream(final int columnIndex, final Reader x,
+            final long length) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateNClob(final String columnLabel, final Reader x)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateNClob(final String columnLabel, final NClob x)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateNClob(final int columnIndex, final Reader x)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateNClob(final int columnIndex, final NClob x)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateNClob(final String columnLabel, final Reader x,
+            final long length) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateNClob(final int columnIndex, final Reader x,
+            final long length) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateNString(final String columnLabel, final String x)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateNString(final int columnIndex, final String x)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateNull(final String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateNull(final int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateObject(final String columnLabel, final Object x)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateObject(final int columnIndex, final Object x)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateObject(final String columnLabel, final Object x,
+            final int scaleOrLength) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateObject(final int columnIndex, final Object x,
+            final int scaleOrLength) throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateRef(final String columnLabel, final Ref x)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateRef(final int columnIndex, final Ref x)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateRow() throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateRowId(final String columnLabel, final RowId x)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateRowId(final int columnIndex, final RowId x)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateSQLXML(final String columnLabel, final SQLXML x)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateSQLXML(final int columnIndex, final SQLXML x)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateShort(final String columnLabel, final short x)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateShort(final int columnIndex, final short x)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateString(final String columnLabel, final String x)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateString(final int columnIndex, final String x)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateTime(final String columnLabel, final Time x)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateTime(final int columnIndex, final Time x)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateTimestamp(final String columnLabel, final Timestamp x)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to throw a {@link SQLFeatureNotSupportedException}.
+     * </p>
+     */
+    @Override
+    public void updateTimestamp(final int columnIndex, final Timestamp x)
+            throws SQLException {
+        throw unsupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to return true if the last column read was null.
+     * </p>
+     */
+    @Override
+    public boolean wasNull() throws SQLException {
+        return myWasNull;
+    }
+
+    /**
+     * Returns the exception for an operation the results do not support.
+     *
+     * @return The exception for an operation the results do not support.
+     */
+    private SQLFeatureNotSupportedException unsupported() {
+        return new SQLFeatureNotSupportedException(
+                "Not supported by the benchmark's results.");
+    }
+
+    /**
+     * Returns the column's value and records if it is null.
+     *
+     * @param columnIndex
+     *            The index of the column.
+     * @return The column's value.
+     */
+    private Object value(final int columnIndex) {
+        final Object value = myRow[columnIndex - 1];
+        myWasNull = (value == null);
+        return value;
+    }
+}
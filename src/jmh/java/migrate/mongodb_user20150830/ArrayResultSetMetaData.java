@@ -0,0 +1,310 @@
+/*
+ * #%L
+ * ArrayResultSetMetaData.java - mongodb-async-examples - Allanbank Consulting, Inc.
+ * %%
+ * Copyright (C) 2015 Allanbank Consulting, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+package migrate.mongodb_user20150830;
+
+import java.sql.JDBCType;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * The {@link ResultSetMetaData} for an {@link ArrayResultSet}, for the
+ * benchmarks. The column names and types are read from arrays.
+ *
+ * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+ */
+public class ArrayResultSetMetaData implements ResultSetMetaData {
+
+    /** The names of the columns. */
+    private final String[] myNames;
+
+    /** The SQL types of the columns. */
+    private final int[] myTypes;
+
+    /**
+     * Creates a new ArrayResultSetMetaData.
+     *
+     * @param names
+     *            The names of the columns.
+     * @param types
+     *            The SQL types of the columns.
+     */
+    public ArrayResultSetMetaData(final String[] names, final int[] types) {
+        myNames = names;
+        myTypes = types;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to return an empty name.
+     * </p>
+     */
+    @Override
+    public String getCatalogName(final int column) throws SQLException {
+        return "";
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to return {@link Object}, the class is not known.
+     * </p>
+     */
+    @Override
+    public String getColumnClassName(final int column) throws SQLException {
+        return Object.class.getName();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to return the number of columns.
+     * </p>
+     */
+    @Override
+    public int getColumnCount() throws SQLException {
+        return myNames.length;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to return zero, the size is not known.
+     * </p>
+     */
+    @Override
+    public int getColumnDisplaySize(final int column) throws SQLException {
+        return 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to return the column's name.
+     * </p>
+     */
+    @Override
+    public String getColumnLabel(final int column) throws SQLException {
+        return myNames[column - 1];
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to return the column's name.
+     * </p>
+     */
+    @Override
+    public String getColumnName(final int column) throws SQLException {
+        return myNames[column - 1];
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to return the column's SQL type.
+     * </p>
+     */
+    @Override
+    public int getColumnType(final int column) throws SQLException {
+        return myTypes[column - 1];
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to return the name of the column's SQL type.
+     * </p>
+     */
+    @Override
+    public String getColumnTypeName(final int column) throws SQLException {
+        return JDBCType.valueOf(myTypes[column - 1]).getName();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to return zero, the precision is not known.
+     * </p>
+     */
+    @Override
+    public int getPrecision(final int column) throws SQLException {
+        return 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to return zero, the scale is not known.
+     * </p>
+     */
+    @Override
+    public int getScale(final int column) throws SQLException {
+        return 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to return an empty name.
+     * </p>
+     */
+    @Override
+    public String getSchemaName(final int column) throws SQLException {
+        return "";
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to return an empty name.
+     * </p>
+     */
+    @Override
+    public String getTableName(final int column) throws SQLException {
+        return "";
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to return false.
+     * </p>
+     */
+    @Override
+    public boolean isAutoIncrement(final int column) throws SQLException {
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to return true.
+     * </p>
+     */
+    @Override
+    public boolean isCaseSensitive(final int column) throws SQLException {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to return false.
+     * </p>
+     */
+    @Override
+    public boolean isCurrency(final int column) throws SQLException {
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to return false.
+     * </p>
+     */
+    @Override
+    public boolean isDefinitelyWritable(final int column) throws SQLException {
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to return that the nullability is not known.
+     * </p>
+     */
+    @Override
+    public int isNullable(final int column) throws SQLException {
+        return columnNullableUnknown;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to return true.
+     * </p>
+     */
+    @Override
+    public boolean isReadOnly(final int column) throws SQLException {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to return false.
+     * </p>
+     */
+    @Override
+    public boolean isSearchable(final int column) throws SQLException {
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to return false.
+     * </p>
+     */
+    @Override
+    public boolean isSigned(final int column) throws SQLException {
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to return true if this is an instance of the
+     * interface.
+     * </p>
+     */
+    @Override
+    public boolean isWrapperFor(final Class<?> iface) throws SQLException {
+        return iface.isInstance(this);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to return false.
+     * </p>
+     */
+    @Override
+    public boolean isWritable(final int column) throws SQLException {
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to return this if it is an instance of the interface.
+     * </p>
+     */
+    @Override
+    public <T> T unwrap(final Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("Not a wrapper for " + iface.getName() + ".");
+    }
+}
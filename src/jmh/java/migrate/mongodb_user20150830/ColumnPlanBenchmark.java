@@ -0,0 +1,262 @@
+/*
+ * #%L
+ * ColumnPlanBenchmark.java - mongodb-async-examples - Allanbank Consulting, Inc.
+ * %%
+ * Copyright (C) 2015 Allanbank Consulting, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+package migrate.mongodb_user20150830;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.allanbank.mongodb.bson.Document;
+import com.allanbank.mongodb.bson.builder.BuilderFactory;
+import com.allanbank.mongodb.bson.builder.DocumentBuilder;
+
+/**
+ * Compares the per-row cost of converting a wide row with a
+ * {@link ColumnPlan} against the previous conversion that looked up each
+ * cell's column name and type in the {@link ResultSetMetaData} and ran the
+ * <code>map()</code> switch.
+ * <p>
+ * The {@link ResultSet} and its metadata are the array-backed
+ * {@link ArrayResultSet} and {@link ArrayResultSetMetaData} over a single row
+ * with a mix of <code>BIGINT</code>, <code>INTEGER</code>,
+ * <code>VARCHAR</code>, <code>DOUBLE</code>, <code>BOOLEAN</code> and
+ * <code>TIMESTAMP</code> columns, so the benchmark measures the conversion and
+ * not a driver. A getter or metadata call is an array read, so the previous
+ * conversion's two metadata calls per cell cost less than they would with a
+ * driver and the difference is a lower bound.
+ * </p>
+ * <blockquote>
+ *
+ * <pre>
+ * mvn -P benchmarks package
+ * java -jar target/benchmarks.jar ColumnPlanBenchmark -prof gc
+ * </pre>
+ *
+ * </blockquote>
+ *
+ * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ColumnPlanBenchmark {
+
+    /** The SQL types of the columns, repeated across the row. */
+    private static final int[] TYPES = { Types.BIGINT, Types.VARCHAR,
+            Types.DOUBLE, Types.INTEGER, Types.BOOLEAN, Types.TIMESTAMP };
+
+    /**
+     * Runs the benchmarks with the GC profiler.
+     *
+     * @param args
+     *            The command line arguments, ignored.
+     * @throws RunnerException
+     *             On a failure to run the benchmarks.
+     */
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ColumnPlanBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class).build()).run();
+    }
+
+    /** The number of columns in the row. */
+    @Param({ "20", "200" })
+    public int columns;
+
+    /** The builder for the row's document. */
+    private DocumentBuilder myBuilder;
+
+    /** The plan for the row. */
+    private ColumnPlan myPlan;
+
+    /** The row. */
+    private ResultSet myResults;
+
+    /**
+     * Creates the row and its plan.
+     *
+     * @throws SQLException
+     *             On a failure to create the plan.
+     */
+    @Setup
+    public void setup() throws SQLException {
+        final String[] names = new String[columns];
+        final int[] types = new int[columns];
+        final Object[] values = new Object[columns];
+        for (int i = 0; i < columns; ++i) {
+            names[i] = "column_" + i;
+            types[i] = TYPES[i % TYPES.length];
+            switch (types[i]) {
+            case Types.BIGINT:
+                values[i] = Long.valueOf(1234567890123L + i);
+                break;
+            case Types.VARCHAR:
+                values[i] = "value of column " + i;
+                break;
+            case Types.DOUBLE:
+                values[i] = Double.valueOf(i * 1.5);
+                break;
+            case Types.INTEGER:
+                values[i] = Integer.valueOf(i);
+                break;
+            case Types.BOOLEAN:
+                values[i] = Boolean.valueOf((i % 2) == 0);
+                break;
+            default:
+                values[i] = new Timestamp(1420070400000L + i);
+                break;
+            }
+        }
+
+        myResults = new ArrayResultSet(
+                new ArrayResultSetMetaData(names, types), values);
+        myPlan = ColumnPlan.create(myResults.getMetaData(),
+                ColumnPlan.Decimals.STRING, null, TimeZone.getTimeZone("UTC"));
+        myBuilder = BuilderFactory.start();
+    }
+
+    /**
+     * Converts the row with the precompiled plan.
+     *
+     * @return The row's document.
+     * @throws SQLException
+     *             On a failure to read the row.
+     */
+    @Benchmark
+    public Document columnPlan() throws SQLException {
+        myBuilder.reset();
+        myPlan.append(myResults, myBuilder);
+        return myBuilder.build();
+    }
+
+    /**
+     * Converts the row with a metadata lookup and type switch for every cell,
+     * as the migration did before the {@link ColumnPlan}.
+     *
+     * @return The row's document.
+     * @throws SQLException
+     *             On a failure to read the row.
+     */
+    @Benchmark
+    public Document perCellSwitch() throws SQLException {
+        myBuilder.reset();
+        final ResultSetMetaData md = myResults.getMetaData();
+        final int columnCount = md.getColumnCount();
+        for (int column = 1; column <= columnCount; ++column) {
+            myBuilder.add(md.getColumnName(column),
+                    map(md.getColumnType(column), column, myResults));
+        }
+        return myBuilder.build();
+    }
+
+    /**
+     * Maps the SQL column to a Java Type that MongoDB supports, as the
+     * migration did before the {@link ColumnPlan}. Only the types in the
+     * benchmark's row are mapped.
+     *
+     * @param columnType
+     *            The type for the column.
+     * @param columnIndex
+     *            The index of the column.
+     * @param rs
+     *            The result to extract from.
+     * @return The mapped Java value.
+     * @throws SQLException
+     *             On a failure to map the column.
+     */
+    private Object map(final int columnType, final int columnIndex,
+            final ResultSet rs) throws SQLException {
+        switch (columnType) {
+        // Boolean
+        case Types.BIT:
+        case Types.BOOLEAN:
+            return rs.getBoolean(columnIndex);
+
+            // String
+        case Types.CHAR:
+        case Types.LONGNVARCHAR:
+        case Types.VARCHAR:
+        case Types.LONGVARCHAR:
+        case Types.NCHAR:
+        case Types.NVARCHAR:
+            return rs.getString(columnIndex);
+
+            // Null
+        case Types.NULL:
+            return null;
+
+            // Double
+        case Types.DECIMAL:
+        case Types.REAL:
+        case Types.DOUBLE:
+        case Types.FLOAT:
+        case Types.NUMERIC:
+            return rs.getDouble(columnIndex);
+
+            // Integer/Long
+        case Types.INTEGER:
+        case Types.ROWID:
+        case Types.TINYINT:
+        case Types.SMALLINT:
+        case Types.BIGINT:
+            return rs.getLong(columnIndex);
+
+            // Date / Time
+        case Types.DATE:
+        case Types.TIME:
+        case Types.TIME_WITH_TIMEZONE:
+        case Types.TIMESTAMP:
+        case Types.TIMESTAMP_WITH_TIMEZONE:
+            return new Date(rs.getDate(columnIndex).getTime());
+
+            // Bytes
+        case Types.VARBINARY:
+        case Types.LONGVARBINARY:
+        case Types.BINARY:
+            return rs.getBytes(columnIndex);
+        }
+        return null;
+    }
+}
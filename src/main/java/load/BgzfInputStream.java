@@ -0,0 +1,357 @@
+/*
+ *           Copyright 2015 - Allanbank Consulting, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package load;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * An {@link InputStream} that decompresses a BGZF file using multiple threads.
+ * <p>
+ * A BGZF file is a series of gzip members, each of which records its
+ * compressed size in a <code>BC</code> extra field. The stream uses those sizes
+ * to find each member without decompressing the previous one and submits up
+ * to {@link #READ_AHEAD} members at a time to the executor to be inflated in
+ * parallel. The inflated members are returned in file order.
+ * </p>
+ *
+ * @see <a href="https://samtools.github.io/hts-specs/SAMv1.pdf">BGZF
+ *      specification (section 4.1)</a>
+ *
+ * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+ */
+public class BgzfInputStream
+        extends InputStream {
+
+    /** The number of bytes in a BGZF member's header. */
+    public static final int HEADER_LENGTH = 18;
+
+    /** The number of members to inflate ahead of the reader. */
+    public static final int READ_AHEAD = 64;
+
+    /** The number of bytes in a gzip member's trailer. */
+    private static final int TRAILER_LENGTH = 8;
+
+    /** The inflater for each thread. */
+    private static final ThreadLocal<Inflater> INFLATERS = new ThreadLocal<Inflater>() {
+        @Override
+        protected Inflater initialValue() {
+            return new Inflater(true);
+        }
+    };
+
+    /**
+     * Returns the size of the BGZF member from its header, or -1 if the header
+     * is not for a BGZF member.
+     *
+     * @param header
+     *            The member's header.
+     * @param length
+     *            The number of valid bytes in the header.
+     * @return The number of bytes in the member or -1 if the header is not a
+     *         BGZF header.
+     */
+    public static int memberSize(final byte[] header, final int length) {
+        if ((length < HEADER_LENGTH) || (header[0] != (byte) 0x1f)
+                || (header[1] != (byte) 0x8b) || (header[2] != 8)
+                || ((header[3] & 0x04) == 0) || (header[10] != 6)
+                || (header[11] != 0) || (header[12] != 'B')
+                || (header[13] != 'C') || (header[14] != 2)
+                || (header[15] != 0)) {
+            return -1;
+        }
+        return ((header[16] & 0xFF) | ((header[17] & 0xFF) << 8)) + 1;
+    }
+
+    /**
+     * Reads bytes from the channel at the position until the buffer is full
+     * or the end of the file is reached.
+     *
+     * @param channel
+     *            The channel to read from.
+     * @param buffer
+     *            The buffer to fill.
+     * @param position
+     *            The position in the file to read from.
+     * @return The number of bytes read.
+     * @throws IOException
+     *             On a failure to read the file.
+     */
+    protected static int read(final FileChannel channel,
+            final ByteBuffer buffer, final long position) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            final int read = channel.read(buffer, position + total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    /** The channel for the file. */
+    private final FileChannel myChannel;
+
+    /** The member currently being read. */
+    private byte[] myCurrent;
+
+    /** The executor to inflate members. */
+    private final ExecutorService myExecutor;
+
+    /** The position of the next member to submit. */
+    private long myNext;
+
+    /** The members being inflated, in file order. */
+    private final Deque<Future<byte[]>> myPending;
+
+    /** The position of the next byte to read in the current member. */
+    private int myPosition;
+
+    /** The size of the file. */
+    private final long mySize;
+
+    /**
+     * Creates a new BgzfInputStream.
+     *
+     * @param channel
+     *            The channel for the file. Closed when the stream is closed.
+     * @param executor
+     *            The executor to inflate the members.
+     * @throws IOException
+     *             On a failure to determine the size of the file.
+     */
+    public BgzfInputStream(final FileChannel channel,
+            final ExecutorService executor) throws IOException {
+        myChannel = channel;
+        myExecutor = executor;
+        mySize = channel.size();
+        myNext = 0;
+        myPending = new ArrayDeque<Future<byte[]>>(READ_AHEAD);
+        myCurrent = new byte[0];
+        myPosition = 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to return the bytes remaining in the current member.
+     * </p>
+     */
+    @Override
+    public int available() {
+        return myCurrent.length - myPosition;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to cancel the pending members and close the file.
+     * </p>
+     */
+    @Override
+    public void close() throws IOException {
+        for (final Future<byte[]> pending : myPending) {
+            pending.cancel(false);
+        }
+        myPending.clear();
+        myChannel.close();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to read from the inflated members.
+     * </p>
+     */
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return myCurrent[myPosition++] & 0xFF;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to read from the inflated members.
+     * </p>
+     */
+    @Override
+    public int read(final byte[] b, final int off, final int len)
+            throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+
+        final int count = Math.min(len, myCurrent.length - myPosition);
+        System.arraycopy(myCurrent, myPosition, b, off, count);
+        myPosition += count;
+        return count;
+    }
+
+    /**
+     * Makes sure there are bytes in the current member, waiting for the next
+     * inflated member if needed.
+     *
+     * @return True if there are bytes to read, false at the end of the file.
+     * @throws IOException
+     *             On a failure to read or inflate a member.
+     */
+    private boolean fill() throws IOException {
+        while (myPosition == myCurrent.length) {
+            submit();
+
+            final Future<byte[]> next = myPending.poll();
+            if (next == null) {
+                return false;
+            }
+
+            try {
+                myCurrent = next.get();
+                myPosition = 0;
+            }
+            catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted inflating a BGZF member.",
+                        e);
+            }
+            catch (final ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                throw new IOException(cause.getMessage(), cause);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the members after the last one submitted and submits them to be
+     * inflated until {@link #READ_AHEAD} members are pending.
+     *
+     * @throws IOException
+     *             On a failure to read a member.
+     */
+    private void submit() throws IOException {
+        final byte[] header = new byte[HEADER_LENGTH];
+        while ((myPending.size() < READ_AHEAD) && (myNext < mySize)) {
+            final int headerLength = read(myChannel, ByteBuffer.wrap(header),
+                    myNext);
+            final int size = memberSize(header, headerLength);
+            if (size < 0) {
+                throw new IOException("Invalid BGZF member at offset "
+                        + myNext + ".");
+            }
+
+            final byte[] member = new byte[size];
+            if (read(myChannel, ByteBuffer.wrap(member), myNext) < size) {
+                throw new EOFException("Truncated BGZF member at offset "
+                        + myNext + ".");
+            }
+
+            final long offset = myNext;
+            myPending.add(myExecutor.submit(new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws IOException {
+                    return inflate(member, offset);
+                }
+            }));
+            myNext += size;
+        }
+    }
+
+    /**
+     * Inflates a single BGZF member and verifies its CRC.
+     *
+     * @param member
+     *            The bytes of the member.
+     * @param offset
+     *            The offset of the member within the file, for errors.
+     * @return The inflated bytes.
+     * @throws IOException
+     *             If the member is corrupt.
+     */
+    protected static byte[] inflate(final byte[] member, final long offset)
+            throws IOException {
+        final int trailer = member.length - TRAILER_LENGTH;
+        final int inflatedSize = (member[trailer + 4] & 0xFF)
+                | ((member[trailer + 5] & 0xFF) << 8)
+                | ((member[trailer + 6] & 0xFF) << 16)
+                | ((member[trailer + 7] & 0xFF) << 24);
+        final long expectedCrc = ((member[trailer] & 0xFF)
+                | ((member[trailer + 1] & 0xFF) << 8)
+                | ((member[trailer + 2] & 0xFF) << 16) | ((long) (member[trailer + 3] & 0xFF) << 24));
+
+        final byte[] inflated = new byte[inflatedSize];
+        if (inflatedSize == 0) {
+            // The empty end-of-file marker member.
+            return inflated;
+        }
+
+        final Inflater inflater = INFLATERS.get();
+        try {
+            inflater.setInput(member, HEADER_LENGTH, trailer - HEADER_LENGTH);
+
+            int total = 0;
+            while (total < inflatedSize) {
+                final int count = inflater.inflate(inflated, total,
+                        inflatedSize - total);
+                if (count == 0) {
+                    break;
+                }
+                total += count;
+            }
+            if ((total != inflatedSize) || !inflater.finished()) {
+                throw new IOException("Corrupt BGZF member at offset "
+                        + offset + ".");
+            }
+        }
+        catch (final DataFormatException dfe) {
+            throw new IOException("Corrupt BGZF member at offset " + offset
+                    + ": " + dfe.getMessage(), dfe);
+        }
+        finally {
+            inflater.reset();
+        }
+
+        final CRC32 crc = new CRC32();
+        crc.update(inflated, 0, inflatedSize);
+        if (crc.getValue() != expectedCrc) {
+            throw new IOException("CRC mismatch for the BGZF member at offset "
+                    + offset + ".");
+        }
+
+        return inflated;
+    }
+}
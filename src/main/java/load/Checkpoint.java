@@ -0,0 +1,418 @@
+/*
+ *           Copyright 2015 - Allanbank Consulting, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package load;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.allanbank.mongodb.util.IOUtils;
+
+/**
+ * A journal of the files, and byte ranges within files, that have been
+ * completely loaded.
+ * <p>
+ * A file or range is complete once every document from it has been
+ * acknowledged by the server. Each completed file or range is appended to the
+ * journal as a line of the form <code>start&lt;tab&gt;end&lt;tab&gt;path</code>
+ * where the end is -1 for an entire file. The journal is flushed as each line
+ * is written and forced to disk at most once every {@link #SYNC_INTERVAL}
+ * milliseconds and when it is closed. A crash can lose at most the last
+ * interval's lines and those files or ranges are simply loaded again.
+ * </p>
+ * <p>
+ * The last reference to a file or range is usually released on the driver's
+ * callback thread. The completion is only queued there; the journal is
+ * written by the checkpoint's own thread so the callback never waits on the
+ * disk.
+ * </p>
+ * <p>
+ * When resuming, the lines from the previous journal are read back and any
+ * file or range they name is skipped. Files or ranges that were partially
+ * loaded are loaded again in their entirety.
+ * </p>
+ *
+ * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+ */
+public class Checkpoint
+        implements Closeable {
+
+    /** The maximum number of milliseconds between forcing the journal. */
+    public static final long SYNC_INTERVAL = 1000;
+
+    /** Queued to stop the journal's thread. Never a key: it has no tabs. */
+    private static final String CLOSE = "close";
+
+    /** The keys for the completed files and ranges. */
+    private final Set<String> myCompleted;
+
+    /** The first error writing the journal. */
+    private IOException myError;
+
+    /** The journal file. */
+    private final File myJournal;
+
+    /** The time the journal was last forced to disk. */
+    private long myLastSync;
+
+    /** The stream for the journal. */
+    private final FileOutputStream myOut;
+
+    /** The completed keys waiting to be written to the journal. */
+    private final BlockingQueue<String> myPendingKeys;
+
+    /** The writer for the journal. */
+    private final Writer myWriter;
+
+    /** The thread writing the journal. */
+    private final Thread myWriterThread;
+
+    /**
+     * Creates a new Checkpoint.
+     *
+     * @param journal
+     *            The journal file.
+     * @param resume
+     *            If true then the existing journal is read and extended.
+     *            Otherwise the journal is truncated.
+     * @throws IOException
+     *             On a failure to read or open the journal.
+     */
+    public Checkpoint(final File journal, final boolean resume)
+            throws IOException {
+        myJournal = journal;
+        myCompleted = Collections
+                .newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+        if (resume && journal.exists()) {
+            read(journal);
+        }
+
+        final boolean torn = resume && isTorn(journal);
+        myOut = new FileOutputStream(journal, resume);
+        myWriter = new BufferedWriter(new OutputStreamWriter(myOut,
+                StandardCharsets.UTF_8));
+        myLastSync = System.currentTimeMillis();
+        if (torn) {
+            // Terminate the partial line so it is not joined to the next.
+            myWriter.write('\n');
+        }
+
+        myPendingKeys = new LinkedBlockingQueue<String>();
+        myWriterThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeJournal();
+            }
+        }, "checkpoint");
+        myWriterThread.setDaemon(true);
+        myWriterThread.start();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to write the queued completions, force the journal to disk
+     * and close it.
+     * </p>
+     */
+    @Override
+    public void close() throws IOException {
+        myPendingKeys.add(CLOSE);
+        try {
+            myWriterThread.join();
+        }
+        catch (final InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (this) {
+            try {
+                sync();
+            }
+            finally {
+                IOUtils.close(myWriter);
+                IOUtils.close(myOut);
+            }
+        }
+    }
+
+    /**
+     * Returns the first error writing the journal, if any.
+     *
+     * @return The first error writing the journal, if any.
+     */
+    public synchronized IOException getError() {
+        return myError;
+    }
+
+    /**
+     * Returns true if the file or range has already been loaded.
+     *
+     * @param file
+     *            The file.
+     * @param start
+     *            The offset of the first byte of the range.
+     * @param end
+     *            The offset just past the last byte of the range or -1 for
+     *            the entire file.
+     * @return True if the file or range has already been loaded.
+     */
+    public boolean isComplete(final File file, final long start,
+            final long end) {
+        return myCompleted.contains(key(file, start, end));
+    }
+
+    /**
+     * Starts tracking the loading of the file or range.
+     *
+     * @param file
+     *            The file.
+     * @param start
+     *            The offset of the first byte of the range.
+     * @param end
+     *            The offset just past the last byte of the range or -1 for
+     *            the entire file.
+     * @return The progress for the file or range.
+     */
+    public Progress start(final File file, final long start, final long end) {
+        return new Progress(this, key(file, start, end));
+    }
+
+    /**
+     * Records that the file or range has been completely loaded. The key is
+     * queued for the journal's thread to write.
+     *
+     * @param key
+     *            The key for the file or range.
+     */
+    protected void complete(final String key) {
+        if (myCompleted.add(key)) {
+            myPendingKeys.add(key);
+        }
+    }
+
+    /**
+     * Returns true if the journal does not end with a complete line.
+     *
+     * @param journal
+     *            The journal file.
+     * @return True if the journal's last line is partial.
+     * @throws IOException
+     *             On a failure to read the journal.
+     */
+    private boolean isTorn(final File journal) throws IOException {
+        if (!journal.exists() || (journal.length() == 0)) {
+            return false;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(journal, "r")) {
+            file.seek(file.length() - 1);
+            return file.read() != '\n';
+        }
+    }
+
+    /**
+     * Returns the key for the file or range.
+     *
+     * @param file
+     *            The file.
+     * @param start
+     *            The offset of the first byte of the range.
+     * @param end
+     *            The offset just past the last byte of the range or -1 for
+     *            the entire file.
+     * @return The key for the file or range.
+     */
+    private String key(final File file, final long start, final long end) {
+        return start + "\t" + end + "\t" + file.getAbsolutePath();
+    }
+
+    /**
+     * Reads the completed files and ranges from the journal. A partially
+     * written last line is ignored.
+     *
+     * @param journal
+     *            The journal file.
+     * @throws IOException
+     *             On a failure to read the journal.
+     */
+    private void read(final File journal) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(journal), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final String[] fields = line.split("\t", 3);
+                if (fields.length == 3) {
+                    try {
+                        myCompleted.add(key(new File(fields[2]),
+                                Long.parseLong(fields[0]),
+                                Long.parseLong(fields[1])));
+                    }
+                    catch (final NumberFormatException partial) {
+                        // A torn write. Load the file/range again.
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Flushes the journal and forces it to disk.
+     *
+     * @throws IOException
+     *             On a failure to write the journal.
+     */
+    private void sync() throws IOException {
+        myWriter.flush();
+        myOut.getChannel().force(false);
+        myLastSync = System.currentTimeMillis();
+    }
+
+    /**
+     * Appends the keys to the journal, forcing it to disk if the
+     * {@link #SYNC_INTERVAL} has passed.
+     *
+     * @param keys
+     *            The keys for the completed files and ranges.
+     */
+    private synchronized void write(final List<String> keys) {
+        if (myError != null) {
+            return;
+        }
+
+        try {
+            for (final String key : keys) {
+                myWriter.write(key);
+                myWriter.write('\n');
+            }
+            myWriter.flush();
+
+            if (SYNC_INTERVAL <= (System.currentTimeMillis() - myLastSync)) {
+                sync();
+            }
+        }
+        catch (final IOException error) {
+            myError = error;
+        }
+    }
+
+    /**
+     * Writes the queued keys to the journal, in groups, until the checkpoint
+     * is closed.
+     */
+    private void writeJournal() {
+        final List<String> keys = new ArrayList<String>();
+        boolean closing = false;
+        while (!closing) {
+            try {
+                keys.add(myPendingKeys.take());
+            }
+            catch (final InterruptedException interrupted) {
+                return;
+            }
+            myPendingKeys.drainTo(keys);
+
+            closing = keys.remove(CLOSE);
+            write(keys);
+            keys.clear();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to return the journal's path.
+     * </p>
+     */
+    @Override
+    public String toString() {
+        return myJournal.getPath();
+    }
+
+    /**
+     * The progress loading a single file or range.
+     * <p>
+     * The progress counts the outstanding references to the file or range:
+     * one for the thread reading it, one for each record handed off for
+     * parsing and one for each document handed off for writing. Each
+     * reference is released once it has been successfully handled. When the
+     * last reference is released the file or range is recorded as complete. A
+     * failure simply never releases its reference.
+     * </p>
+     *
+     * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+     */
+    public static final class Progress {
+
+        /** The checkpoint to record completion in, if any. */
+        private final Checkpoint myCheckpoint;
+
+        /** The key for the file or range. */
+        private final String myKey;
+
+        /** The number of outstanding references. */
+        private final AtomicInteger myPending;
+
+        /**
+         * Creates a new Progress holding a single reference for the creator.
+         *
+         * @param checkpoint
+         *            The checkpoint to record completion in. May be
+         *            <code>null</code> if the load is not being journaled.
+         * @param key
+         *            The key for the file or range.
+         */
+        public Progress(final Checkpoint checkpoint, final String key) {
+            myCheckpoint = checkpoint;
+            myKey = key;
+            myPending = new AtomicInteger(1);
+        }
+
+        /**
+         * Adds a reference for a record or document that has been handed off.
+         */
+        public void add() {
+            myPending.incrementAndGet();
+        }
+
+        /**
+         * Releases a reference. Records the file or range as complete when
+         * the last reference is released.
+         */
+        public void release() {
+            if ((myPending.decrementAndGet() == 0) && (myCheckpoint != null)) {
+                myCheckpoint.complete(myKey);
+            }
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ *           Copyright 2015 - Allanbank Consulting, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package load;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.GZIPInputStream;
+
+import com.allanbank.mongodb.util.IOUtils;
+
+/**
+ * The compression formats for the input files.
+ * <p>
+ * The format is determined from the first bytes of each file, not its
+ * extension, so a compressed file is decompressed whatever its name. Only the
+ * formats the JDK can decompress are supported. Files in the other formats are
+ * recognized so they fail with a clear error instead of an XML parse error.
+ * </p>
+ *
+ * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+ */
+public enum Compression {
+
+    /**
+     * A BGZF file: gzip members that each record their size so they can be
+     * decompressed in parallel.
+     */
+    BGZF {
+        @Override
+        protected InputStream open(final FileInputStream in,
+                final ExecutorService inflaters) throws IOException {
+            return new BgzfInputStream(in.getChannel(), inflaters);
+        }
+    },
+
+    /** A bzip2 file. Not supported. */
+    BZIP2 {
+        @Override
+        protected InputStream open(final FileInputStream in,
+                final ExecutorService inflaters) throws IOException {
+            throw new IOException("bzip2 compressed files are not supported.");
+        }
+    },
+
+    /**
+     * A gzip file. Concatenated (multi-member) gzip files are decompressed
+     * sequentially since the member boundaries are not known until each
+     * member has been inflated.
+     */
+    GZIP {
+        @Override
+        protected InputStream open(final FileInputStream in,
+                final ExecutorService inflaters) throws IOException {
+            return new GZIPInputStream(in, BUFFER_SIZE);
+        }
+    },
+
+    /** An uncompressed file. */
+    NONE {
+        @Override
+        protected InputStream open(final FileInputStream in,
+                final ExecutorService inflaters) {
+            return in;
+        }
+    },
+
+    /** A Zstandard file. Not supported. */
+    ZSTD {
+        @Override
+        protected InputStream open(final FileInputStream in,
+                final ExecutorService inflaters) throws IOException {
+            throw new IOException("zstd compressed files are not supported.");
+        }
+    };
+
+    /** The size of the buffers for reading compressed files. */
+    protected static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Returns the compression format for the file.
+     *
+     * @param file
+     *            The file to inspect.
+     * @return The compression format for the file.
+     * @throws IOException
+     *             On a failure to read the file.
+     */
+    public static Compression detect(final File file) throws IOException {
+        try (FileInputStream in = new FileInputStream(file)) {
+            return detect(in);
+        }
+    }
+
+    /**
+     * Opens the file, decompressing it if needed. The returned stream is
+     * buffered.
+     *
+     * @param file
+     *            The file to open.
+     * @param inflaters
+     *            The executor to decompress BGZF files in parallel.
+     * @return The stream for the file's uncompressed contents.
+     * @throws IOException
+     *             On a failure to open the file or if its compression format
+     *             is not supported.
+     */
+    public static InputStream open(final File file,
+            final ExecutorService inflaters) throws IOException {
+        final FileInputStream in = new FileInputStream(file);
+        try {
+            return new BufferedInputStream(detect(in).open(in, inflaters),
+                    BUFFER_SIZE);
+        }
+        catch (final IOException | RuntimeException error) {
+            IOUtils.close(in);
+            throw error;
+        }
+    }
+
+    /**
+     * Returns the compression format from the first bytes of the file. The
+     * bytes are read without moving the stream's position.
+     *
+     * @param in
+     *            The stream for the file.
+     * @return The compression format for the file.
+     * @throws IOException
+     *             On a failure to read the file.
+     */
+    private static Compression detect(final FileInputStream in)
+            throws IOException {
+        final byte[] header = new byte[BgzfInputStream.HEADER_LENGTH];
+        final int length = BgzfInputStream.read(in.getChannel(),
+                ByteBuffer.wrap(header), 0);
+
+        if (BgzfInputStream.memberSize(header, length) > 0) {
+            return BGZF;
+        }
+        else if ((2 <= length) && (header[0] == (byte) 0x1f)
+                && (header[1] == (byte) 0x8b)) {
+            return GZIP;
+        }
+        else if ((4 <= length) && (header[0] == (byte) 0x28)
+                && (header[1] == (byte) 0xb5) && (header[2] == (byte) 0x2f)
+                && (header[3] == (byte) 0xfd)) {
+            return ZSTD;
+        }
+        else if ((3 <= length) && (header[0] == 'B') && (header[1] == 'Z')
+                && (header[2] == 'h')) {
+            return BZIP2;
+        }
+        return NONE;
+    }
+
+    /**
+     * Opens the stream for the file's uncompressed contents.
+     *
+     * @param in
+     *            The stream for the file, positioned at the start.
+     * @param inflaters
+     *            The executor to decompress BGZF files in parallel.
+     * @return The stream for the file's uncompressed contents.
+     * @throws IOException
+     *             On a failure to read the file or if the format is not
+     *             supported.
+     */
+    protected abstract InputStream open(FileInputStream in,
+            ExecutorService inflaters) throws IOException;
+}
@@ -0,0 +1,283 @@
+/*
+ *           Copyright 2015 - Allanbank Consulting, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package load;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import com.allanbank.mongodb.bson.Document;
+import com.allanbank.mongodb.bson.json.Json;
+import com.allanbank.mongodb.util.IOUtils;
+
+/**
+ * A file of the records that could not be parsed and the documents that could
+ * not be inserted.
+ * <p>
+ * Each failure is written as a single line JSON object with the
+ * <code>file</code> the record came from, the record's <code>line</code>
+ * number and byte <code>offset</code> within the file when they are known, the
+ * <code>stage</code> that failed (<code>parse</code>, <code>key</code> or
+ * <code>insert</code>) and the <code>error</code> message. A record that
+ * failed to parse includes its text as the <code>record</code> unless the
+ * record is an entire file. A document without a usable key or that failed to
+ * insert is included as the <code>document</code> in the driver's {@link Json}
+ * format.
+ * </p>
+ * <p>
+ * The file is flushed after each failure so it is complete up to the last
+ * failure if the load is killed.
+ * </p>
+ *
+ * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+ */
+public class DeadLetters
+        implements Closeable {
+
+    /** The number of failures written. */
+    private long myCount;
+
+    /** The dead-letter file. */
+    private final File myFile;
+
+    /** The writer for the file. */
+    private final Writer myWriter;
+
+    /**
+     * Creates a new DeadLetters.
+     *
+     * @param file
+     *            The dead-letter file.
+     * @param append
+     *            If true then the failures are appended to the existing file.
+     *            Otherwise the file is truncated.
+     * @throws IOException
+     *             On a failure to open the file.
+     */
+    public DeadLetters(final File file, final boolean append)
+            throws IOException {
+        myFile = file;
+        myWriter = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file, append), StandardCharsets.UTF_8));
+        myCount = 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to close the file.
+     * </p>
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        IOUtils.close(myWriter);
+    }
+
+    /**
+     * Returns the number of failures written.
+     *
+     * @return The number of failures written.
+     */
+    public synchronized long getCount() {
+        return myCount;
+    }
+
+    /**
+     * Writes a document that could not be inserted.
+     *
+     * @param file
+     *            The file the document came from.
+     * @param line
+     *            The line number of the document's record or -1 if not
+     *            known.
+     * @param offset
+     *            The byte offset of the document's record or -1 if not known.
+     * @param document
+     *            The document.
+     * @param error
+     *            The error inserting the document.
+     * @throws IOException
+     *             On a failure to write to the file.
+     */
+    public synchronized void insertFailed(final File file, final long line,
+            final long offset, final Document document, final Throwable error)
+            throws IOException {
+        final StringBuilder builder = start(file, line, offset, "insert",
+                error);
+        builder.append(",\"document\":").append(Json.serialize(document));
+
+        write(builder);
+    }
+
+    /**
+     * Writes a document that does not have a single value for its key.
+     *
+     * @param file
+     *            The file the document came from.
+     * @param line
+     *            The line number of the document or -1 if not known.
+     * @param offset
+     *            The byte offset of the document's record or -1 if not known.
+     * @param document
+     *            The document.
+     * @param error
+     *            The error finding the document's key.
+     * @throws IOException
+     *             On a failure to write to the file.
+     */
+    public synchronized void keyFailed(final File file, final long line,
+            final long offset, final Document document, final Throwable error)
+            throws IOException {
+        final StringBuilder builder = start(file, line, offset, "key", error);
+        builder.append(",\"document\":").append(Json.serialize(document));
+
+        write(builder);
+    }
+
+    /**
+     * Writes a record that could not be parsed.
+     *
+     * @param file
+     *            The file the record came from.
+     * @param line
+     *            The line number of the record or -1 if not known.
+     * @param offset
+     *            The byte offset of the record or -1 if not known.
+     * @param text
+     *            The record's text or null if the record is the entire file.
+     * @param error
+     *            The error parsing the record.
+     * @throws IOException
+     *             On a failure to write to the file.
+     */
+    public synchronized void parseFailed(final File file, final long line,
+            final long offset, final String text, final Throwable error)
+            throws IOException {
+        final StringBuilder builder = start(file, line, offset, "parse", error);
+        if (text != null) {
+            builder.append(",\"record\":");
+            quote(builder, text);
+        }
+
+        write(builder);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Overridden to return the file's path.
+     * </p>
+     */
+    @Override
+    public String toString() {
+        return myFile.getPath();
+    }
+
+    /**
+     * Appends the string as a quoted JSON string.
+     *
+     * @param builder
+     *            The builder to append to.
+     * @param value
+     *            The string to quote.
+     */
+    private void quote(final StringBuilder builder, final String value) {
+        builder.append('"');
+        for (int i = 0; i < value.length(); ++i) {
+            final char c = value.charAt(i);
+            switch (c) {
+            case '"':
+                builder.append("\\\"");
+                break;
+            case '\\':
+                builder.append("\\\\");
+                break;
+            case '\n':
+                builder.append("\\n");
+                break;
+            case '\r':
+                builder.append("\\r");
+                break;
+            case '\t':
+                builder.append("\\t");
+                break;
+            default:
+                if (c < ' ') {
+                    builder.append(String.format("\\u%04x", (int) c));
+                }
+                else {
+                    builder.append(c);
+                }
+            }
+        }
+        builder.append('"');
+    }
+
+    /**
+     * Starts the JSON object for a failure with the fields common to all
+     * failures.
+     *
+     * @param file
+     *            The file the failure came from.
+     * @param line
+     *            The line number or -1 if not known.
+     * @param offset
+     *            The byte offset or -1 if not known.
+     * @param stage
+     *            The stage that failed.
+     * @param error
+     *            The error.
+     * @return The builder for the failure.
+     */
+    private StringBuilder start(final File file, final long line,
+            final long offset, final String stage, final Throwable error) {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("{\"file\":");
+        quote(builder, file.getAbsolutePath());
+        if (0 <= line) {
+            builder.append(",\"line\":").append(line);
+        }
+        if (0 <= offset) {
+            builder.append(",\"offset\":").append(offset);
+        }
+        builder.append(",\"stage\":\"").append(stage).append('"');
+        builder.append(",\"error\":");
+        quote(builder, String.valueOf(error));
+
+        return builder;
+    }
+
+    /**
+     * Writes the failure and flushes the file.
+     *
+     * @param builder
+     *            The JSON object for the failure, without the closing brace.
+     * @throws IOException
+     *             On a failure to write to the file.
+     */
+    private void write(final StringBuilder builder) throws IOException {
+        builder.append("}\n");
+
+        myWriter.write(builder.toString());
+        myWriter.flush();
+        myCount += 1;
+    }
+}
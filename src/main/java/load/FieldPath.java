@@ -0,0 +1,468 @@
+/*
+ *           Copyright 2015 - Allanbank Consulting, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package load;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+
+import com.allanbank.mongodb.util.IOUtils;
+
+/**
+ * A node in the tree of document field paths used to find the
+ * {@link FieldType} for each value.
+ * <p>
+ * The tree is built once before the load starts. The conversion then walks the
+ * tree in step with the XML elements so each value's type is found with a
+ * single lookup in its parent's children. Paths that are not in the tree all
+ * share a single node with the {@link FieldType#STRING} type.
+ * </p>
+ * <p>
+ * The paths are the MongoDB field paths within the converted document, e.g.,
+ * <code>order.total</code>, using the cleaned field names. Elements in arrays
+ * use the path of the array field.
+ * </p>
+ *
+ * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+ */
+public class FieldPath {
+
+    /** The maximum depth to follow schema type references. */
+    private static final int MAX_SCHEMA_DEPTH = 32;
+
+    /** The type for each of the XML Schema built-in types. */
+    private static final Map<String, FieldType> SCHEMA_TYPES;
+
+    /** The node for any path that has not been configured. */
+    private static final FieldPath UNMAPPED = new FieldPath();
+
+    static {
+        final Map<String, FieldType> types = new HashMap<String, FieldType>();
+        types.put("boolean", FieldType.BOOLEAN);
+        types.put("byte", FieldType.INT);
+        types.put("short", FieldType.INT);
+        types.put("int", FieldType.INT);
+        types.put("unsignedByte", FieldType.INT);
+        types.put("unsignedShort", FieldType.INT);
+        types.put("long", FieldType.LONG);
+        types.put("integer", FieldType.LONG);
+        types.put("unsignedInt", FieldType.LONG);
+        types.put("negativeInteger", FieldType.LONG);
+        types.put("nonNegativeInteger", FieldType.LONG);
+        types.put("nonPositiveInteger", FieldType.LONG);
+        types.put("positiveInteger", FieldType.LONG);
+        // Kept as the exact string: a double would lose precision.
+        types.put("decimal", FieldType.STRING);
+        types.put("double", FieldType.DOUBLE);
+        types.put("float", FieldType.DOUBLE);
+        types.put("date", FieldType.DATE);
+        types.put("dateTime", FieldType.DATE);
+        types.put("string", FieldType.STRING);
+
+        SCHEMA_TYPES = Collections.unmodifiableMap(types);
+    }
+
+    /**
+     * Returns the local part of a possibly prefixed name.
+     *
+     * @param name
+     *            The name.
+     * @return The local part of the name.
+     */
+    private static String localName(final String name) {
+        return name.substring(name.indexOf(':') + 1);
+    }
+
+    /** The child paths. */
+    private final Map<String, FieldPath> myChildren;
+
+    /** The type for the values at this path. */
+    private FieldType myType;
+
+    /**
+     * Creates a new FieldPath.
+     */
+    public FieldPath() {
+        myChildren = new HashMap<String, FieldPath>();
+        myType = FieldType.STRING;
+    }
+
+    /**
+     * Adds the type for the field path to the tree.
+     *
+     * @param path
+     *            The '.' separated field path.
+     * @param type
+     *            The type for the field's values.
+     */
+    public void add(final String path, final FieldType type) {
+        FieldPath node = this;
+        for (final String name : path.split("\\.")) {
+            node = node.getOrCreate(name.trim());
+        }
+        node.myType = type;
+    }
+
+    /**
+     * Adds the field paths and types from the XML Schema to the tree.
+     * <p>
+     * Element and attribute declarations are followed from the root element's
+     * declaration through inline and named complex types. Values with one of
+     * the XML Schema numeric, boolean or date types (or simple types derived
+     * from them) are mapped to the matching {@link FieldType}. An
+     * <code>xs:decimal</code> is kept as a string so no precision is lost.
+     * </p>
+     *
+     * @param schemaFile
+     *            The XML Schema file.
+     * @param rootElement
+     *            The name of the element that is converted into each
+     *            document. If <code>null</code> then the first top level
+     *            element in the schema is used.
+     * @throws IOException
+     *             On a failure reading the schema.
+     * @throws IllegalArgumentException
+     *             If the schema cannot be parsed or does not declare the root
+     *             element.
+     */
+    public void addSchema(final File schemaFile, final String rootElement)
+            throws IOException, IllegalArgumentException {
+        final Document schema;
+        try {
+            final DocumentBuilderFactory factory = DocumentBuilderFactory
+                    .newInstance();
+            factory.setNamespaceAware(true);
+            schema = factory.newDocumentBuilder().parse(schemaFile);
+        }
+        catch (final ParserConfigurationException | SAXException error) {
+            throw new IllegalArgumentException("Could not parse the schema '"
+                    + schemaFile + "': " + error.getMessage(), error);
+        }
+
+        final Element root = findElement(schema.getDocumentElement(),
+                rootElement);
+        if (root == null) {
+            throw new IllegalArgumentException("The schema '" + schemaFile
+                    + "' does not declare the element '" + rootElement + "'.");
+        }
+
+        addElementType(schema.getDocumentElement(), root, this, 0);
+    }
+
+    /**
+     * Adds the field paths and types from a mapping file to the tree. Each
+     * line of the file is a <code>path=type</code> pair in
+     * {@link Properties} format.
+     *
+     * @param mappingFile
+     *            The file containing the mapping.
+     * @throws IOException
+     *             On a failure reading the file.
+     * @throws IllegalArgumentException
+     *             If a type is not known.
+     */
+    public void addTypes(final File mappingFile) throws IOException,
+            IllegalArgumentException {
+        final Properties mapping = new Properties();
+
+        InputStream in = null;
+        try {
+            in = new FileInputStream(mappingFile);
+            mapping.load(in);
+        }
+        finally {
+            IOUtils.close(in);
+        }
+
+        for (final String path : mapping.stringPropertyNames()) {
+            add(path, FieldType.forName(mapping.getProperty(path)));
+        }
+    }
+
+    /**
+     * Returns the child path with the (cleaned) field name.
+     *
+     * @param name
+     *            The field name.
+     * @return The child path. Never <code>null</code>.
+     */
+    public FieldPath child(final String name) {
+        final FieldPath child = myChildren.get(name);
+        if (child == null) {
+            return UNMAPPED;
+        }
+        return child;
+    }
+
+    /**
+     * Returns the type for the values at this path.
+     *
+     * @return The type for the values at this path.
+     */
+    public FieldType getType() {
+        return myType;
+    }
+
+    /**
+     * Adds the attribute and child element declarations from the complex
+     * type to the tree.
+     *
+     * @param schema
+     *            The schema's root element.
+     * @param declaration
+     *            The complex type or one of its content model elements.
+     * @param node
+     *            The node for the element using the complex type.
+     * @param depth
+     *            The depth of type references followed.
+     */
+    private void addComplexType(final Element schema,
+            final Element declaration, final FieldPath node, final int depth) {
+        for (Node child = declaration.getFirstChild(); child != null; child = child
+                .getNextSibling()) {
+            if (!isSchema(child)) {
+                continue;
+            }
+
+            final Element decl = (Element) child;
+            final String kind = decl.getLocalName();
+            if ("element".equals(kind)) {
+                Element element = decl;
+                if (decl.hasAttribute("ref")) {
+                    element = findElement(schema,
+                            localName(decl.getAttribute("ref")));
+                }
+                if (element != null) {
+                    addElementType(schema, element, node.getOrCreate(XmlLoader
+                            .cleanName(element.getAttribute("name"))), depth);
+                }
+            }
+            else if ("attribute".equals(kind) && decl.hasAttribute("name")) {
+                final FieldPath attribute = node.getOrCreate(XmlLoader
+                        .cleanName(decl.getAttribute("name")));
+                attribute.myType = simpleType(schema, decl, depth);
+            }
+            else if ("extension".equals(kind) || "restriction".equals(kind)) {
+                // Derived complex type. Add the base type's content too.
+                final Element base = findType(schema, "complexType",
+                        decl.getAttribute("base"));
+                if ((base != null) && (depth < MAX_SCHEMA_DEPTH)) {
+                    addComplexType(schema, base, node, depth + 1);
+                }
+                addComplexType(schema, decl, node, depth);
+            }
+            else if ("sequence".equals(kind) || "choice".equals(kind)
+                    || "all".equals(kind) || "complexContent".equals(kind)
+                    || "simpleContent".equals(kind)) {
+                addComplexType(schema, decl, node, depth);
+            }
+        }
+    }
+
+    /**
+     * Adds the element declaration's type to the tree.
+     *
+     * @param schema
+     *            The schema's root element.
+     * @param element
+     *            The element declaration.
+     * @param node
+     *            The node for the element.
+     * @param depth
+     *            The depth of type references followed.
+     */
+    private void addElementType(final Element schema, final Element element,
+            final FieldPath node, final int depth) {
+        if (depth >= MAX_SCHEMA_DEPTH) {
+            return;
+        }
+
+        Element complexType = findChild(element, "complexType");
+        if ((complexType == null) && element.hasAttribute("type")) {
+            complexType = findType(schema, "complexType",
+                    element.getAttribute("type"));
+        }
+
+        if (complexType != null) {
+            addComplexType(schema, complexType, node, depth + 1);
+        }
+        else {
+            node.myType = simpleType(schema, element, depth);
+        }
+    }
+
+    /**
+     * Returns the first child of the element with the schema type local name.
+     *
+     * @param parent
+     *            The parent element.
+     * @param kind
+     *            The local name of the schema declaration.
+     * @return The child or <code>null</code> if not found.
+     */
+    private Element findChild(final Element parent, final String kind) {
+        for (Node child = parent.getFirstChild(); child != null; child = child
+                .getNextSibling()) {
+            if (isSchema(child) && kind.equals(child.getLocalName())) {
+                return (Element) child;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds the element declaration with the name anywhere in the schema.
+     * Top level declarations are preferred.
+     *
+     * @param schema
+     *            The schema's root element.
+     * @param name
+     *            The name of the element. If <code>null</code> then the first
+     *            top level element is returned.
+     * @return The element declaration or <code>null</code> if not found.
+     */
+    private Element findElement(final Element schema, final String name) {
+        for (Node child = schema.getFirstChild(); child != null; child = child
+                .getNextSibling()) {
+            if (isSchema(child) && "element".equals(child.getLocalName())
+                    && ((name == null) || name.equals(((Element) child)
+                            .getAttribute("name")))) {
+                return (Element) child;
+            }
+        }
+
+        if (name != null) {
+            final org.w3c.dom.NodeList elements = schema
+                    .getElementsByTagNameNS(XMLConstants.W3C_XML_SCHEMA_NS_URI,
+                            "element");
+            for (int i = 0; i < elements.getLength(); ++i) {
+                final Element element = (Element) elements.item(i);
+                if (name.equals(element.getAttribute("name"))) {
+                    return element;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds the top level type declaration.
+     *
+     * @param schema
+     *            The schema's root element.
+     * @param kind
+     *            The kind of type: <code>complexType</code> or
+     *            <code>simpleType</code>.
+     * @param typeName
+     *            The possibly prefixed name of the type.
+     * @return The type declaration or <code>null</code> if not found.
+     */
+    private Element findType(final Element schema, final String kind,
+            final String typeName) {
+        final String name = localName(typeName);
+        for (Node child = schema.getFirstChild(); child != null; child = child
+                .getNextSibling()) {
+            if (isSchema(child) && kind.equals(child.getLocalName())
+                    && name.equals(((Element) child).getAttribute("name"))) {
+                return (Element) child;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the child node, creating it if needed.
+     *
+     * @param name
+     *            The field name.
+     * @return The child node.
+     */
+    private FieldPath getOrCreate(final String name) {
+        FieldPath child = myChildren.get(name);
+        if (child == null) {
+            child = new FieldPath();
+            myChildren.put(name, child);
+        }
+        return child;
+    }
+
+    /**
+     * Returns true if the node is an XML Schema element.
+     *
+     * @param node
+     *            The node to inspect.
+     * @return True if the node is an XML Schema element.
+     */
+    private boolean isSchema(final Node node) {
+        return (node.getNodeType() == Node.ELEMENT_NODE)
+                && XMLConstants.W3C_XML_SCHEMA_NS_URI.equals(node
+                        .getNamespaceURI());
+    }
+
+    /**
+     * Resolves the simple type for the element or attribute declaration.
+     *
+     * @param schema
+     *            The schema's root element.
+     * @param declaration
+     *            The element, attribute or simple type declaration.
+     * @param depth
+     *            The depth of type references followed.
+     * @return The type for the declaration's values.
+     */
+    private FieldType simpleType(final Element schema,
+            final Element declaration, final int depth) {
+        String typeName = declaration.getAttribute("type");
+        if (typeName.isEmpty()) {
+            final Element simpleType = findChild(declaration, "simpleType");
+            final Element restriction = (simpleType == null) ? findChild(
+                    declaration, "restriction") : findChild(simpleType,
+                    "restriction");
+            if (restriction != null) {
+                typeName = restriction.getAttribute("base");
+            }
+        }
+
+        if (typeName.isEmpty()) {
+            return FieldType.STRING;
+        }
+
+        final FieldType type = SCHEMA_TYPES.get(localName(typeName));
+        if (type != null) {
+            return type;
+        }
+
+        final Element named = findType(schema, "simpleType", typeName);
+        if ((named != null) && (depth < MAX_SCHEMA_DEPTH)) {
+            return simpleType(schema, named, depth + 1);
+        }
+        return FieldType.STRING;
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ *           Copyright 2015 - Allanbank Consulting, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package load;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+
+import com.allanbank.mongodb.bson.Element;
+import com.allanbank.mongodb.bson.element.BooleanElement;
+import com.allanbank.mongodb.bson.element.DoubleElement;
+import com.allanbank.mongodb.bson.element.IntegerElement;
+import com.allanbank.mongodb.bson.element.LongElement;
+import com.allanbank.mongodb.bson.element.StringElement;
+import com.allanbank.mongodb.bson.element.TimestampElement;
+
+/**
+ * The BSON types an XML value can be coerced into.
+ * <p>
+ * Each type converts the XML text into the appropriate BSON element. If the
+ * text cannot be converted then a {@link StringElement} is returned so that no
+ * data is lost.
+ * </p>
+ *
+ * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+ */
+public enum FieldType {
+
+    /** Coerces the value to a boolean. */
+    BOOLEAN {
+        @Override
+        protected Element convert(final String name, final String value) {
+            if ("true".equals(value) || "1".equals(value)) {
+                return new BooleanElement(name, true);
+            }
+            else if ("false".equals(value) || "0".equals(value)) {
+                return new BooleanElement(name, false);
+            }
+            return null;
+        }
+    },
+
+    /**
+     * Coerces the value to a date. The value may be an ISO-8601 date, local
+     * date/time (assumed UTC) or date/time with an offset.
+     */
+    DATE {
+        @Override
+        protected Element convert(final String name, final String value) {
+            try {
+                final long millis;
+                if (value.length() <= 10) {
+                    millis = LocalDate.parse(value).atStartOfDay()
+                            .toInstant(ZoneOffset.UTC).toEpochMilli();
+                }
+                else if (hasOffset(value)) {
+                    millis = OffsetDateTime.parse(value).toInstant()
+                            .toEpochMilli();
+                }
+                else {
+                    millis = LocalDateTime.parse(value)
+                            .toInstant(ZoneOffset.UTC).toEpochMilli();
+                }
+                return new TimestampElement(name, millis);
+            }
+            catch (final DateTimeParseException notDate) {
+                return null;
+            }
+        }
+    },
+
+    /** Coerces the value to a double. */
+    DOUBLE {
+        @Override
+        protected Element convert(final String name, final String value) {
+            try {
+                return new DoubleElement(name, Double.parseDouble(value));
+            }
+            catch (final NumberFormatException notDouble) {
+                return null;
+            }
+        }
+    },
+
+    /** Coerces the value to a 32-bit integer. */
+    INT {
+        @Override
+        protected Element convert(final String name, final String value) {
+            try {
+                return new IntegerElement(name, Integer.parseInt(value));
+            }
+            catch (final NumberFormatException notInt) {
+                return null;
+            }
+        }
+    },
+
+    /** Coerces the value to a 64-bit integer. */
+    LONG {
+        @Override
+        protected Element convert(final String name, final String value) {
+            try {
+                return new LongElement(name, Long.parseLong(value));
+            }
+            catch (final NumberFormatException notLong) {
+                return null;
+            }
+        }
+    },
+
+    /** Leaves the value as a string. The value is not trimmed. */
+    STRING {
+        @Override
+        public Element coerce(final String name, final String value) {
+            return new StringElement(name, value);
+        }
+
+        @Override
+        protected Element convert(final String name, final String value) {
+            return new StringElement(name, value);
+        }
+    };
+
+    /**
+     * Returns the type for the name. The name is not case sensitive.
+     *
+     * @param name
+     *            The name of the type.
+     * @return The type.
+     * @throws IllegalArgumentException
+     *             If the name is not a known type.
+     */
+    public static FieldType forName(final String name)
+            throws IllegalArgumentException {
+        return valueOf(name.trim().toUpperCase(Locale.US));
+    }
+
+    /**
+     * Returns true if the date/time value ends with a time zone offset.
+     *
+     * @param value
+     *            The value to inspect.
+     * @return True if the value has an offset.
+     */
+    protected static boolean hasOffset(final String value) {
+        final int timeStart = value.indexOf('T');
+        if (timeStart < 0) {
+            return false;
+        }
+        return value.endsWith("Z") || (value.indexOf('+', timeStart) > 0)
+                || (value.indexOf('-', timeStart) > 0);
+    }
+
+    /**
+     * Coerces the value into an element of this type. If the value cannot be
+     * converted then a {@link StringElement} is returned.
+     *
+     * @param name
+     *            The name for the element.
+     * @param value
+     *            The value for the element.
+     * @return The element.
+     */
+    public Element coerce(final String name, final String value) {
+        final Element element = convert(name, value.trim());
+        if (element == null) {
+            return new StringElement(name, value);
+        }
+        return element;
+    }
+
+    /**
+     * Converts the trimmed value into an element of this type.
+     *
+     * @param name
+     *            The name for the element.
+     * @param value
+     *            The trimmed value for the element.
+     * @return The element or <code>null</code> if the value cannot be
+     *         converted.
+     */
+    protected abstract Element convert(String name, String value);
+}
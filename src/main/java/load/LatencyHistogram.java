@@ -0,0 +1,163 @@
+/*
+ *           Copyright 2015 - Allanbank Consulting, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package load;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A thread safe histogram of latencies.
+ * <p>
+ * Samples are counted in power of 2 microsecond buckets so recording a sample
+ * is a few atomic increments and the percentiles are accurate to within a
+ * factor of 2. The count, total and maximum are exact.
+ * </p>
+ *
+ * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+ */
+public class LatencyHistogram
+        implements LatencyHistogramMXBean {
+
+    /** The number of buckets. Bucket <i>i</i> holds samples below 2^i us. */
+    private static final int BUCKETS = 40;
+
+    /** The number of nanoseconds in a millisecond. */
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS
+            .toNanos(1);
+
+    /** The number of samples in each bucket. */
+    private final AtomicLongArray myBuckets;
+
+    /** The number of samples. */
+    private final LongAdder myCount;
+
+    /** The largest sample in nanoseconds. */
+    private final AtomicLong myMax;
+
+    /** The total of the samples in nanoseconds. */
+    private final LongAdder myTotal;
+
+    /**
+     * Creates a new, empty LatencyHistogram.
+     */
+    public LatencyHistogram() {
+        myBuckets = new AtomicLongArray(BUCKETS);
+        myCount = new LongAdder();
+        myMax = new AtomicLong(0);
+        myTotal = new LongAdder();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getCount() {
+        return myCount.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getMaxMillis() {
+        return myMax.get() / NANOS_PER_MILLI;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getMeanMillis() {
+        final long count = myCount.sum();
+        if (count == 0) {
+            return 0;
+        }
+        return (myTotal.sum() / NANOS_PER_MILLI) / count;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getMedianMillis() {
+        return percentile(0.50);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getP99Millis() {
+        return percentile(0.99);
+    }
+
+    /**
+     * Returns the total of the samples in nanoseconds.
+     *
+     * @return The total of the samples in nanoseconds.
+     */
+    public long getTotalNanos() {
+        return myTotal.sum();
+    }
+
+    /**
+     * Records a sample.
+     *
+     * @param nanos
+     *            The latency in nanoseconds.
+     */
+    public void record(final long nanos) {
+        final long micros = Math.max(0, nanos / 1000);
+        final int bucket = Math.min(BUCKETS - 1,
+                64 - Long.numberOfLeadingZeros(micros));
+
+        myBuckets.incrementAndGet(bucket);
+        myCount.increment();
+        myTotal.add(nanos);
+
+        long max = myMax.get();
+        while ((max < nanos) && !myMax.compareAndSet(max, nanos)) {
+            max = myMax.get();
+        }
+    }
+
+    /**
+     * Returns the upper bound of the bucket holding the percentile in
+     * milliseconds.
+     *
+     * @param fraction
+     *            The percentile as a fraction between 0 and 1.
+     * @return The approximate percentile in milliseconds.
+     */
+    private double percentile(final double fraction) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            total += myBuckets.get(i);
+        }
+
+        final long target = (long) Math.ceil(total * fraction);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            seen += myBuckets.get(i);
+            if ((0 < seen) && (target <= seen)) {
+                return Math.min((1L << i) / 1000.0, getMaxMillis());
+            }
+        }
+        return 0;
+    }
+}
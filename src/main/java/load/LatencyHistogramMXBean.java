@@ -0,0 +1,59 @@
+/*
+ *           Copyright 2015 - Allanbank Consulting, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package load;
+
+/**
+ * The JMX interface for a {@link LatencyHistogram}.
+ *
+ * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+ */
+public interface LatencyHistogramMXBean {
+
+    /**
+     * Returns the number of samples.
+     *
+     * @return The number of samples.
+     */
+    public long getCount();
+
+    /**
+     * Returns the largest sample in milliseconds.
+     *
+     * @return The largest sample in milliseconds.
+     */
+    public double getMaxMillis();
+
+    /**
+     * Returns the average of the samples in milliseconds.
+     *
+     * @return The average of the samples in milliseconds.
+     */
+    public double getMeanMillis();
+
+    /**
+     * Returns the approximate median of the samples in milliseconds.
+     *
+     * @return The approximate median of the samples in milliseconds.
+     */
+    public double getMedianMillis();
+
+    /**
+     * Returns the approximate 99th percentile of the samples in milliseconds.
+     *
+     * @return The approximate 99th percentile of the samples in milliseconds.
+     */
+    public double getP99Millis();
+}
@@ -0,0 +1,340 @@
+/*
+ *           Copyright 2015 - Allanbank Consulting, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package load;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The metrics for a load: the counts of files, bytes and documents, the
+ * latency of each stage and the depth of the queues and write window.
+ * <p>
+ * The metrics are registered with the platform MBean server as
+ * <code>load:type=XmlLoader</code> with a
+ * <code>load:type=XmlLoader,latency=&lt;stage&gt;</code> {@link LatencyHistogram}
+ * for the <code>parse</code>, <code>convert</code> and <code>insert</code>
+ * latencies. {@link #report()} formats the metrics as a single line with the
+ * rates since the previous report.
+ * </p>
+ * <p>
+ * When streaming, the XML is parsed as it is converted so the time is all
+ * recorded as convert time.
+ * </p>
+ *
+ * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+ */
+public class LoadMetrics
+        implements LoadMetricsMXBean {
+
+    /** The name for the load's MBean. */
+    public static final String OBJECT_NAME = "load:type=XmlLoader";
+
+    /** The number of bytes in a megabyte. */
+    private static final double MEGABYTE = 1024 * 1024;
+
+    /** The number of bytes of the files and chunks read. */
+    private final LongAdder myBytes;
+
+    /** The latency to convert each document. */
+    private final LatencyHistogram myConvert;
+
+    /** The number of files and chunks read. */
+    private final LongAdder myFiles;
+
+    /** The latency of each batched write. */
+    private final LatencyHistogram myInsert;
+
+    /** The number of bytes read at the previous report. */
+    private long myLastBytes;
+
+    /** The number of documents converted at the previous report. */
+    private long myLastDocuments;
+
+    /** The number of files read at the previous report. */
+    private long myLastFiles;
+
+    /** The time of the previous report. */
+    private long myLastTime;
+
+    /** The number of documents written at the previous report. */
+    private long myLastWritten;
+
+    /** The latency to parse each record. */
+    private final LatencyHistogram myParse;
+
+    /** The records waiting to be parsed. */
+    private volatile Collection<?> myToParse;
+
+    /** The documents waiting to be written. */
+    private volatile Collection<?> myToWrite;
+
+    /** The permits for the batched writes. */
+    private volatile Semaphore myWindow;
+
+    /** The total number of permits for the batched writes. */
+    private volatile int myWindowSize;
+
+    /** The number of documents acknowledged. */
+    private final LongAdder myWritten;
+
+    /** The number of batched writes acknowledged. */
+    private final LongAdder myWrites;
+
+    /**
+     * Creates a new LoadMetrics.
+     */
+    public LoadMetrics() {
+        myBytes = new LongAdder();
+        myFiles = new LongAdder();
+        myWritten = new LongAdder();
+        myWrites = new LongAdder();
+        myConvert = new LatencyHistogram();
+        myInsert = new LatencyHistogram();
+        myParse = new LatencyHistogram();
+        myToParse = null;
+        myToWrite = null;
+        myWindow = null;
+        myWindowSize = 0;
+        myLastTime = System.nanoTime();
+    }
+
+    /**
+     * Records that a document was converted.
+     *
+     * @param nanos
+     *            The time to convert the document.
+     */
+    public void converted(final long nanos) {
+        myConvert.record(nanos);
+    }
+
+    /**
+     * Records that a file or chunk was read.
+     *
+     * @param bytes
+     *            The size of the file or chunk.
+     */
+    public void fileRead(final long bytes) {
+        myFiles.increment();
+        myBytes.add(bytes);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getBytes() {
+        return myBytes.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getDocuments() {
+        return myConvert.getCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getFiles() {
+        return myFiles.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getInFlight() {
+        final Semaphore window = myWindow;
+        return (window == null) ? 0 : Math.max(0,
+                myWindowSize - window.availablePermits());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getMaxInFlight() {
+        return myWindowSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getParseQueueSize() {
+        final Collection<?> queue = myToParse;
+        return (queue == null) ? 0 : queue.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getWriteQueueSize() {
+        final Collection<?> queue = myToWrite;
+        return (queue == null) ? 0 : queue.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getWrites() {
+        return myWrites.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getWrittenDocuments() {
+        return myWritten.sum();
+    }
+
+    /**
+     * Records that a record was parsed.
+     *
+     * @param nanos
+     *            The time to parse the record.
+     */
+    public void parsed(final long nanos) {
+        myParse.record(nanos);
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server.
+     *
+     * @throws JMException
+     *             On a failure to register the metrics.
+     */
+    public void register() throws JMException {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        server.registerMBean(this, new ObjectName(OBJECT_NAME));
+        server.registerMBean(myParse, new ObjectName(OBJECT_NAME
+                + ",latency=parse"));
+        server.registerMBean(myConvert, new ObjectName(OBJECT_NAME
+                + ",latency=convert"));
+        server.registerMBean(myInsert, new ObjectName(OBJECT_NAME
+                + ",latency=insert"));
+    }
+
+    /**
+     * Returns a single line report of the metrics. The rates are for the time
+     * since the previous report.
+     *
+     * @return The report.
+     */
+    public synchronized String report() {
+        final long now = System.nanoTime();
+        final double seconds = Math.max(1, now - myLastTime)
+                / (double) TimeUnit.SECONDS.toNanos(1);
+
+        final long files = getFiles();
+        final long bytes = getBytes();
+        final long documents = getDocuments();
+        final long written = getWrittenDocuments();
+
+        final String report = String.format("%,d files (%,.1f/s), "
+                + "%,.1f MB (%,.1f MB/s), %,d converted (%,.0f/s), "
+                + "%,d written (%,.0f/s); parse %.2f ms, convert %.2f ms, "
+                + "insert %.1f ms (p99 %.1f ms); in-flight %d/%d; "
+                + "queued to parse %,d, to write %,d", files,
+                (files - myLastFiles) / seconds, bytes / MEGABYTE,
+                ((bytes - myLastBytes) / MEGABYTE) / seconds, documents,
+                (documents - myLastDocuments) / seconds, written,
+                (written - myLastWritten) / seconds, myParse.getMeanMillis(),
+                myConvert.getMeanMillis(), myInsert.getMeanMillis(),
+                myInsert.getP99Millis(), getInFlight(), getMaxInFlight(),
+                getParseQueueSize(), getWriteQueueSize());
+
+        myLastTime = now;
+        myLastFiles = files;
+        myLastBytes = bytes;
+        myLastDocuments = documents;
+        myLastWritten = written;
+
+        return report;
+    }
+
+    /**
+     * Sets the queues between the stages.
+     *
+     * @param toParse
+     *            The records waiting to be parsed.
+     * @param toWrite
+     *            The documents waiting to be written.
+     */
+    public void setQueues(final Collection<?> toParse,
+            final Collection<?> toWrite) {
+        myToParse = toParse;
+        myToWrite = toWrite;
+    }
+
+    /**
+     * Sets the permits for the batched writes.
+     *
+     * @param window
+     *            The permits for the batched writes.
+     * @param size
+     *            The total number of permits.
+     */
+    public void setWindow(final Semaphore window, final int size) {
+        myWindowSize = size;
+        myWindow = window;
+    }
+
+    /**
+     * Unregisters the metrics from the platform MBean server.
+     *
+     * @throws JMException
+     *             On a failure to unregister the metrics.
+     */
+    public void unregister() throws JMException {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        server.unregisterMBean(new ObjectName(OBJECT_NAME));
+        server.unregisterMBean(new ObjectName(OBJECT_NAME + ",latency=parse"));
+        server.unregisterMBean(new ObjectName(OBJECT_NAME
+                + ",latency=convert"));
+        server.unregisterMBean(new ObjectName(OBJECT_NAME + ",latency=insert"));
+    }
+
+    /**
+     * Records that a batched write was acknowledged.
+     *
+     * @param documents
+     *            The number of documents in the write.
+     * @param nanos
+     *            The time from sending the write to its acknowledgement.
+     */
+    public void written(final int documents, final long nanos) {
+        myWrites.increment();
+        myWritten.add(documents);
+        myInsert.record(nanos);
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ *           Copyright 2015 - Allanbank Consulting, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package load;
+
+/**
+ * The JMX interface for the {@link LoadMetrics}.
+ *
+ * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+ */
+public interface LoadMetricsMXBean {
+
+    /**
+     * Returns the number of bytes of the files and chunks read.
+     *
+     * @return The number of bytes of the files and chunks read.
+     */
+    public long getBytes();
+
+    /**
+     * Returns the number of documents converted.
+     *
+     * @return The number of documents converted.
+     */
+    public long getDocuments();
+
+    /**
+     * Returns the number of files and chunks read.
+     *
+     * @return The number of files and chunks read.
+     */
+    public long getFiles();
+
+    /**
+     * Returns the number of batched writes waiting for an acknowledgement.
+     *
+     * @return The number of batched writes waiting for an acknowledgement.
+     */
+    public int getInFlight();
+
+    /**
+     * Returns the maximum number of batched writes waiting for an
+     * acknowledgement.
+     *
+     * @return The maximum number of batched writes waiting for an
+     *         acknowledgement.
+     */
+    public int getMaxInFlight();
+
+    /**
+     * Returns the number of records waiting to be parsed.
+     *
+     * @return The number of records waiting to be parsed.
+     */
+    public int getParseQueueSize();
+
+    /**
+     * Returns the number of documents waiting to be written.
+     *
+     * @return The number of documents waiting to be written.
+     */
+    public int getWriteQueueSize();
+
+    /**
+     * Returns the number of documents acknowledged by the server.
+     *
+     * @return The number of documents acknowledged by the server.
+     */
+    public long getWrittenDocuments();
+
+    /**
+     * Returns the number of batched writes acknowledged by the server.
+     *
+     * @return The number of batched writes acknowledged by the server.
+     */
+    public long getWrites();
+}
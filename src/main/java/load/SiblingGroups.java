@@ -0,0 +1,253 @@
+/*
+ *           Copyright 2015 - Allanbank Consulting, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package load;
+
+import java.util.Arrays;
+
+import com.allanbank.mongodb.bson.builder.ArrayBuilder;
+
+/**
+ * Groups the attributes and child elements of a single XML element by name so
+ * the conversion can tell which names repeat and must become arrays.
+ * <p>
+ * This is a reusable replacement for a pair of <code>HashMap</code>s. The
+ * names are kept in an open addressing hash table that is cleared, not
+ * reallocated, between elements so converting an element does not allocate
+ * once the table has grown to fit the widest element seen. Instances are not
+ * thread safe and are intended to be used by a single thread at a single depth
+ * of the document.
+ * </p>
+ *
+ * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+ */
+public final class SiblingGroups {
+
+    /** The slot for a sibling without a name, i.e., text. */
+    private static final int NO_SLOT = -1;
+
+    /** The array builder for each slot's name, once started. */
+    private ArrayBuilder[] myArrays;
+
+    /** The number of siblings with each slot's name. */
+    private int[] myCounts;
+
+    /** The mask to convert a hash code into a slot. */
+    private int myMask;
+
+    /** The name for each slot. */
+    private String[] myNames;
+
+    /** The number of siblings added. */
+    private int mySiblingCount;
+
+    /** The slot for each sibling. */
+    private int[] mySiblingSlots;
+
+    /** The number of slots in use. */
+    private int myUsedCount;
+
+    /** The slots in use, in the order they were first used. */
+    private int[] myUsedSlots;
+
+    /**
+     * Creates a new SiblingGroups.
+     */
+    public SiblingGroups() {
+        allocate(16);
+        mySiblingSlots = new int[16];
+        mySiblingCount = 0;
+    }
+
+    /**
+     * Adds a sibling with the name.
+     *
+     * @param name
+     *            The cleaned name of the sibling.
+     * @return The index of the sibling.
+     */
+    public int add(final String name) {
+        if (mySiblingCount == mySiblingSlots.length) {
+            mySiblingSlots = Arrays.copyOf(mySiblingSlots,
+                    mySiblingCount * 2);
+        }
+        if ((myUsedCount * 2) >= myNames.length) {
+            rehash();
+        }
+
+        final int slot = slot(name);
+        if (myNames[slot] == null) {
+            myNames[slot] = name;
+            myUsedSlots[myUsedCount] = slot;
+            myUsedCount += 1;
+        }
+        myCounts[slot] += 1;
+
+        mySiblingSlots[mySiblingCount] = slot;
+        return mySiblingCount++;
+    }
+
+    /**
+     * Adds a sibling without a name, i.e., text.
+     *
+     * @return The index of the sibling.
+     */
+    public int addText() {
+        if (mySiblingCount == mySiblingSlots.length) {
+            mySiblingSlots = Arrays.copyOf(mySiblingSlots,
+                    mySiblingCount * 2);
+        }
+
+        mySiblingSlots[mySiblingCount] = NO_SLOT;
+        return mySiblingCount++;
+    }
+
+    /**
+     * Returns the array builder for the sibling's name or <code>null</code> if
+     * it has not been set.
+     *
+     * @param sibling
+     *            The index of the sibling.
+     * @return The array builder for the sibling's name.
+     */
+    public ArrayBuilder getArray(final int sibling) {
+        return myArrays[mySiblingSlots[sibling]];
+    }
+
+    /**
+     * Returns the name of the sibling or <code>null</code> for text.
+     *
+     * @param sibling
+     *            The index of the sibling.
+     * @return The name of the sibling.
+     */
+    public String getName(final int sibling) {
+        final int slot = mySiblingSlots[sibling];
+        return (slot == NO_SLOT) ? null : myNames[slot];
+    }
+
+    /**
+     * Returns the number of siblings added.
+     *
+     * @return The number of siblings added.
+     */
+    public int getSiblingCount() {
+        return mySiblingCount;
+    }
+
+    /**
+     * Returns true if more than one sibling has the same name as the sibling.
+     *
+     * @param sibling
+     *            The index of the sibling.
+     * @return True if the sibling's name repeats.
+     */
+    public boolean isRepeated(final int sibling) {
+        final int slot = mySiblingSlots[sibling];
+        return (slot != NO_SLOT) && (myCounts[slot] > 1);
+    }
+
+    /**
+     * Clears the siblings so the groups can be reused for another element.
+     */
+    public void reset() {
+        for (int i = 0; i < myUsedCount; ++i) {
+            final int slot = myUsedSlots[i];
+            myNames[slot] = null;
+            myCounts[slot] = 0;
+            myArrays[slot] = null;
+        }
+        myUsedCount = 0;
+        mySiblingCount = 0;
+    }
+
+    /**
+     * Sets the array builder for the sibling's name.
+     *
+     * @param sibling
+     *            The index of the sibling.
+     * @param array
+     *            The array builder for the sibling's name.
+     */
+    public void setArray(final int sibling, final ArrayBuilder array) {
+        myArrays[mySiblingSlots[sibling]] = array;
+    }
+
+    /**
+     * Allocates the hash table.
+     *
+     * @param capacity
+     *            The number of slots. Must be a power of 2.
+     */
+    private void allocate(final int capacity) {
+        myNames = new String[capacity];
+        myCounts = new int[capacity];
+        myArrays = new ArrayBuilder[capacity];
+        myUsedSlots = new int[capacity];
+        myMask = capacity - 1;
+        myUsedCount = 0;
+    }
+
+    /**
+     * Doubles the size of the hash table, moving the existing names.
+     */
+    private void rehash() {
+        final String[] names = myNames;
+        final int[] counts = myCounts;
+        final ArrayBuilder[] arrays = myArrays;
+        final int[] used = Arrays.copyOf(myUsedSlots, myUsedCount);
+
+        allocate(names.length * 2);
+
+        final int[] moved = new int[names.length];
+        for (final int oldSlot : used) {
+            final int slot = slot(names[oldSlot]);
+            myNames[slot] = names[oldSlot];
+            myCounts[slot] = counts[oldSlot];
+            myArrays[slot] = arrays[oldSlot];
+            myUsedSlots[myUsedCount] = slot;
+            myUsedCount += 1;
+            moved[oldSlot] = slot;
+        }
+
+        for (int i = 0; i < mySiblingCount; ++i) {
+            final int oldSlot = mySiblingSlots[i];
+            if (oldSlot != NO_SLOT) {
+                mySiblingSlots[i] = moved[oldSlot];
+            }
+        }
+    }
+
+    /**
+     * Returns the slot for the name: either the slot already holding the name
+     * or the empty slot where it should be added.
+     *
+     * @param name
+     *            The name to find.
+     * @return The slot for the name.
+     */
+    private int slot(final String name) {
+        final int hash = name.hashCode();
+        int slot = (hash ^ (hash >>> 16)) & myMask;
+        while (true) {
+            final String existing = myNames[slot];
+            if ((existing == null) || (existing == name)
+                    || existing.equals(name)) {
+                return slot;
+            }
+            slot = (slot + 1) & myMask;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ *           Copyright 2015 - Allanbank Consulting, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package load;
+
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A set of per-worker deques where idle workers steal from the others.
+ * <p>
+ * Each worker adds the work it discovers to the head of its own deque and
+ * takes from the head, so a worker walking a directory tree proceeds depth
+ * first without contending with the other workers. A worker with an empty
+ * deque steals from the tail of another worker's deque, taking the oldest
+ * work which is usually the largest remaining sub-tree.
+ * </p>
+ * <p>
+ * The queue tracks the work that has been added but not yet completed. A
+ * worker must call {@link #done()} once it has finished each item it takes,
+ * after adding any work the item produced. {@link #take(int)} returns
+ * <code>null</code> once all of the work has been completed.
+ * </p>
+ *
+ * @param <T>
+ *            The type of work.
+ *
+ * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+ */
+public class WorkStealingQueue<T> {
+
+    /** The number of milliseconds an idle worker waits between steals. */
+    private static final long IDLE_MS = 1;
+
+    /** The deque for each worker. */
+    private final List<Deque<T>> myDeques;
+
+    /** The number of items added but not yet done. */
+    private final AtomicInteger myOutstanding;
+
+    /**
+     * Creates a new WorkStealingQueue.
+     *
+     * @param workers
+     *            The number of workers.
+     */
+    public WorkStealingQueue(final int workers) {
+        myDeques = new ArrayList<Deque<T>>(workers);
+        for (int i = 0; i < workers; ++i) {
+            myDeques.add(new ConcurrentLinkedDeque<T>());
+        }
+        myOutstanding = new AtomicInteger(0);
+    }
+
+    /**
+     * Adds work to the worker's deque.
+     *
+     * @param worker
+     *            The index of the worker adding the work.
+     * @param item
+     *            The work to add.
+     */
+    public void add(final int worker, final T item) {
+        myOutstanding.incrementAndGet();
+        myDeques.get(worker % myDeques.size()).addFirst(item);
+    }
+
+    /**
+     * Records that an item returned from {@link #take(int)} has been
+     * completed.
+     */
+    public void done() {
+        myOutstanding.decrementAndGet();
+    }
+
+    /**
+     * Returns the next item for the worker, stealing from the other workers
+     * if its own deque is empty. If there is no work but other workers are
+     * still processing items then this method waits for them to either add
+     * more work or finish.
+     *
+     * @param worker
+     *            The index of the worker.
+     * @return The next item or <code>null</code> if all of the work has been
+     *         completed.
+     * @throws InterruptedException
+     *             If the thread is interrupted while waiting.
+     */
+    public T take(final int worker) throws InterruptedException {
+        while (true) {
+            T item = myDeques.get(worker).pollFirst();
+            if (item == null) {
+                item = steal(worker);
+            }
+            if (item != null) {
+                return item;
+            }
+            if (myOutstanding.get() == 0) {
+                return null;
+            }
+
+            TimeUnit.MILLISECONDS.sleep(IDLE_MS);
+        }
+    }
+
+    /**
+     * Steals the oldest item from another worker's deque.
+     *
+     * @param worker
+     *            The index of the worker stealing.
+     * @return The stolen item or <code>null</code> if all of the other deques
+     *         are empty.
+     */
+    private T steal(final int worker) {
+        final int count = myDeques.size();
+        for (int i = 1; i < count; ++i) {
+            final T item = myDeques.get((worker + i) % count).pollLast();
+            if (item != null) {
+                return item;
+            }
+        }
+        return null;
+    }
+}
@@ -17,23 +17,50 @@ package load;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
-
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.management.JMException;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
-import org.w3c.dom.Document;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
@@ -41,19 +68,29 @@ import org.w3c.dom.Text;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
+import com.allanbank.mongodb.LambdaCallback;
 import com.allanbank.mongodb.MongoClient;
 import com.allanbank.mongodb.MongoClientConfiguration;
 import com.allanbank.mongodb.MongoCollection;
 import com.allanbank.mongodb.MongoDbUri;
 import com.allanbank.mongodb.MongoFactory;
+import com.allanbank.mongodb.bson.Document;
 import com.allanbank.mongodb.bson.DocumentAssignable;
 import com.allanbank.mongodb.bson.Element;
 import com.allanbank.mongodb.bson.builder.ArrayBuilder;
 import com.allanbank.mongodb.bson.builder.BuilderFactory;
 import com.allanbank.mongodb.bson.builder.DocumentBuilder;
+import com.allanbank.mongodb.bson.element.ArrayElement;
+import com.allanbank.mongodb.bson.element.DocumentElement;
 import com.allanbank.mongodb.bson.element.StringElement;
+import com.allanbank.mongodb.builder.BatchedWrite;
+import com.allanbank.mongodb.builder.BatchedWriteMode;
+import com.allanbank.mongodb.builder.write.WriteOperation;
+import com.allanbank.mongodb.error.BatchedWriteException;
 import com.allanbank.mongodb.util.IOUtils;
 
+import load.Checkpoint.Progress;
+
 /**
  * A sample utility program to load XML files into MongoDB.
  * <p>
@@ -74,6 +111,104 @@ import com.allanbank.mongodb.util.IOUtils;
  * are added to a single array named "_text" in the parent document.
  * </p>
  * <p>
+ * If the <b>--stream</b> option is provided then the DOM is skipped and the
+ * BSON document is built directly from the StAX parser's events. Only the
+ * sub-nodes of the element currently being parsed are held in memory so very
+ * large XML documents can be loaded without the DOM's memory overhead.
+ * Comments and processing instructions are ignored in this mode.
+ * </p>
+ * <p>
+ * Large exports often contain a single root element wrapping millions of
+ * repeated records. The <b>--split-element</b> option streams each file (or
+ * line) and creates a separate document for each element with the provided
+ * name, ignoring any content outside of those elements.
+ * </p>
+ * <p>
+ * In the <b>--lines</b> mode a single large file would normally be read by a
+ * single thread. The <b>--chunk-size</b> option splits files larger than the
+ * chunk size into byte ranges that are loaded by all of the threads. Each range
+ * is memory mapped and loads the lines that start within it so no line is
+ * split between two threads. The bytes for each line are passed directly to
+ * the XML parser which determines the line's encoding.
+ * </p>
+ * <p>
+ * Gzip compressed files are decompressed as they are read. The
+ * {@link Compression format} is detected from the first bytes of each file.
+ * BGZF files, gzip files made of independent blocks that record their size,
+ * are decompressed by <b>--inflate-threads</b> threads in parallel. Compressed
+ * files are never split into chunks.
+ * </p>
+ * <p>
+ * Documents are inserted using {@link BatchedWrite batched writes}. Each
+ * thread adds documents to its batch until the batch contains
+ * <b>--batch-size</b> documents, <b>--batch-bytes</b> bytes or has been open
+ * for <b>--flush-interval</b> milliseconds. By default a batch holds up to
+ * 1000 documents or 8 MB.
+ * </p>
+ * <p>
+ * The load is a pipeline of three stages connected by bounded queues of
+ * <b>--queue-size</b> entries:
+ * <ol>
+ * <li><b>Read</b> - Expands directories, splits files into chunks and reads
+ * the lines from each file. Uses <b>--read-threads</b> threads. Each thread
+ * has its own {@link WorkStealingQueue deque} of directory entries and chunks
+ * and steals from the other threads when its deque is empty.</li>
+ * <li><b>Parse</b> - Parses each file or line and converts it into BSON
+ * documents. Uses <b>--parse-threads</b> threads which defaults to the number
+ * of processors.</li>
+ * <li><b>Write</b> - Batches the documents and writes them to MongoDB. Uses
+ * <b>--write-threads</b> threads which defaults to the maximum number of
+ * connections for the MongoDB client.</li>
+ * </ol>
+ * Each stage can be sized independently so that the CPU bound parsing does not
+ * have to match the number of connections to MongoDB.
+ * </p>
+ * <p>
+ * The number of batched writes sent to MongoDB but not yet acknowledged is
+ * limited to <b>--max-pending</b>. A write thread takes a permit before each
+ * write and the write's callback returns it so no thread ever waits on a
+ * specific write to complete.
+ * </p>
+ * <p>
+ * The load's {@link LoadMetrics metrics} are registered with the platform
+ * MBean server while the load runs. With <b>--report-interval</b> they are
+ * also printed every interval so a slow stage can be seen as the load runs.
+ * </p>
+ * <p>
+ * By default all values are stored as strings. The <b>--types</b> option
+ * provides a file of <code>field.path=type</code> lines and the
+ * <b>--schema</b> option an XML Schema that are used to
+ * {@link FieldType coerce} values into integers, longs, doubles, booleans or
+ * dates. See {@link FieldPath} for details.
+ * </p>
+ * <p>
+ * The <b>--checkpoint</b> option records each file, or chunk of a file, in a
+ * {@link Checkpoint journal} once all of its documents have been acknowledged.
+ * After a failure the load can be restarted with the same arguments and
+ * <b>--resume</b> to skip the files and chunks that were already loaded.
+ * </p>
+ * <p>
+ * By default each document is inserted so loading the same files again
+ * duplicates their documents. The <b>--key</b> option names a field, as a
+ * <code>field.path</code> within the document or an XPath like
+ * <code>/root/element/@attribute</code> starting from the document's root (or
+ * split) element, whose value becomes each document's <code>_id</code>. The
+ * documents are then written as batched replacements that upsert on the
+ * <code>_id</code> so an incremental feed can be reloaded into an existing
+ * collection. A document without the field, or with repeated values for it,
+ * fails as if it could not be parsed. The writes in a batch are applied in
+ * order but if the same key is in two batches the last to be applied wins.
+ * </p>
+ * <p>
+ * By default the first record that cannot be parsed or write that fails stops
+ * the load. With <b>--dead-letter</b> each failed record, or each document of
+ * a failed write, is written to the {@link DeadLetters dead-letter file} with
+ * its file, line and offset and the load continues. The documents of a failed
+ * write are all written to the file even though the server may have inserted
+ * some of them. A file that fails part way through may also have had some of
+ * its documents inserted.
+ * </p>
+ * <p>
  * This class was inspired by a <a
  * href="https://groups.google.com/forum/#!topic/mongodb-user/L7SrInnYTus"
  * >MongoDB User's Group Question</a>.
@@ -84,6 +219,29 @@ import com.allanbank.mongodb.util.IOUtils;
 
 public class XmlLoader {
 
+    /**
+     * The cleaned field names keyed by the raw XML name. Bounded by
+     * {@link #MAX_CLEAN_NAMES}.
+     */
+    private static final ConcurrentMap<String, String> CLEAN_NAMES = new ConcurrentHashMap<String, String>();
+
+    /** The name of the MongoDB document identifier field. */
+    private static final String ID_FIELD = "_id";
+
+    /**
+     * The cleaned field names for prefixed XML names keyed by the prefix and
+     * then the local name, so a cached name is found without building the
+     * qualified name. Each map is bounded by {@link #MAX_CLEAN_NAMES}.
+     */
+    private static final ConcurrentMap<String, ConcurrentMap<String, String>> CLEAN_PREFIXED_NAMES = new ConcurrentHashMap<String, ConcurrentMap<String, String>>();
+
+    /**
+     * The maximum number of names to cache. Feeds normally have a few hundred
+     * distinct names; once the cache is full any new names are cleaned on
+     * every use.
+     */
+    private static final int MAX_CLEAN_NAMES = 8192;
+
     /**
      * Run the XML loader.
      *
@@ -98,43 +256,211 @@ public class XmlLoader {
         System.exit(-1);
     }
 
+    /** The maximum number of bytes of documents in a batch. */
+    private long myBatchBytes;
+
+    /** The maximum number of documents in a batch. */
+    private int myBatchSize;
+
+    /** The journal of completed files and chunks or null. */
+    private Checkpoint myCheckpoint;
+
+    /** The file for the checkpoint journal or null. */
+    private File myCheckpointFile;
+
     /** The MongoDB client connected to the MongoDB server. */
     private MongoClient myClient;
 
+    /** The dead-letter file for failed records and writes or null. */
+    private File myDeadLetterFile;
+
+    /** The failed records and writes or null to stop on the first failure. */
+    private DeadLetters myDeadLetters;
+
+    /**
+     * The path to the field used as each document's <code>_id</code> or null
+     * to insert the documents.
+     */
+    private String[] myKey;
+
+    /**
+     * The size of the chunks to split large files into when loading lines. If
+     * zero or less then files are not split.
+     */
+    private long myChunkSize;
+
     /** The MongoDB collection to add the documents to. */
     private MongoCollection myCollection;
 
     /** The factory for the XML parsers. */
     private final DocumentBuilderFactory myDocumentBuilderFactory;
 
+    /** The threads decompressing BGZF files. */
+    private ExecutorService myInflaters;
+
+    /** The number of threads decompressing BGZF files. */
+    private int myInflateThreads;
+
+    /** The root of the tree of field paths to the type for each value. */
+    private final FieldPath myFieldTypes;
+
+    /**
+     * The factory for the StAX parsers. The factories are not thread safe so
+     * each thread gets its own.
+     */
+    private final ThreadLocal<XMLInputFactory> myInputFactory;
+
+    /**
+     * The maximum number of milliseconds a batch is open before it is
+     * written.
+     */
+    private long myFlushInterval;
+
     /** If true then each XML document is a single line in the file. */
     private Boolean myParseLine;
 
-    /** The futures for the pending inserts. */
-    private BlockingQueue<Future<Integer>> myPendingInserts;
+    /** The number of parse threads that have not completed. */
+    private final AtomicInteger myParsing;
+
+    /** The number of threads parsing and converting the XML documents. */
+    private int myParseThreads;
+
+    /** The permits for the batched writes that have not been acknowledged. */
+    private Semaphore myInFlight;
+
+    /**
+     * The maximum number of batched writes that have not been acknowledged.
+     * If zero or less then the limit is based on the maximum number of
+     * connections.
+     */
+    private int myMaxPending;
+
+    /** The metrics for the load. */
+    private final LoadMetrics myMetrics;
+
+    /** The size of the queues between each stage. */
+    private int myQueueSize;
+
+    /** The number of read threads that have not completed. */
+    private final AtomicInteger myReading;
+
+    /** The number of threads reading the files. */
+    private int myReadThreads;
 
     /** The files/directories provided on the command line that we should load. */
     private final List<File> myToLoad;
 
-    /** The queue of files to be processed. */
-    private final BlockingQueue<File> myToProcess;
+    /** If true then the files and chunks in the checkpoint are skipped. */
+    private boolean myResume;
+
+    /** The XML Schema for the documents. */
+    private File mySchema;
+
+    /**
+     * The scratch space for converting documents. The scratch space is reused
+     * for every document a thread converts so each thread gets its own.
+     */
+    private final ThreadLocal<Scratch> myScratch;
+
+    /**
+     * The number of seconds between progress reports. If zero or less then
+     * progress is not reported.
+     */
+    private long myReportInterval;
+
+    /** The queue of records to be parsed. */
+    private BlockingQueue<Record> myToParse;
+
+    /** The deques of segments to be read, one for each read thread. */
+    private WorkStealingQueue<Segment> myToRead;
+
+    /** The queue of documents to be written. */
+    private BlockingQueue<Converted> myToWrite;
+
+    /**
+     * The name of the element to create a document for each instance of. If
+     * null then the root element is the document.
+     */
+    private String mySplitElement;
+
+    /** If true then the documents are converted from StAX events, not a DOM. */
+    private boolean myStreaming;
 
     /** The MongoDB URL to use when connecting to MongoDB. */
     private String myUrl;
 
+    /** The first error writing to MongoDB. */
+    private final AtomicReference<Throwable> myWriteError;
+
+    /** The number of write threads that have not completed. */
+    private final AtomicInteger myWriting;
+
+    /**
+     * The number of threads writing to MongoDB. If zero or less then the
+     * maximum number of connections is used.
+     */
+    private int myWriteThreads;
+
     /**
      * Creates a new XmlLoader.
      */
     public XmlLoader() {
         myParseLine = null;
-        myPendingInserts = null;
+        myInFlight = null;
+        myMaxPending = 0;
+        myWriteError = new AtomicReference<Throwable>(null);
+        myStreaming = false;
+        mySplitElement = null;
 
         myUrl = "mongodb://localhost:27017/db.test";
 
         myToLoad = new ArrayList<File>();
-        myToProcess = new LinkedBlockingQueue<File>();
+        myToRead = null;
+        myChunkSize = 0;
+        myCheckpoint = null;
+        myCheckpointFile = null;
+        myResume = false;
+        myDeadLetters = null;
+        myDeadLetterFile = null;
+        myKey = null;
+
+        myBatchSize = 1000;
+        myBatchBytes = 8 * 1024 * 1024;
+        myFlushInterval = 1000;
+
+        myReadThreads = 1;
+        myParseThreads = Runtime.getRuntime().availableProcessors();
+        myInflateThreads = Runtime.getRuntime().availableProcessors();
+        myInflaters = null;
+        myMetrics = new LoadMetrics();
+        myReportInterval = 0;
+        myWriteThreads = 0;
+        myQueueSize = 1000;
+        myReading = new AtomicInteger(0);
+        myParsing = new AtomicInteger(0);
+        myWriting = new AtomicInteger(0);
+        myToParse = null;
+        myToWrite = null;
+
+        myFieldTypes = new FieldPath();
+        mySchema = null;
 
         myDocumentBuilderFactory = DocumentBuilderFactory.newInstance();
+        myInputFactory = new ThreadLocal<XMLInputFactory>() {
+            @Override
+            protected XMLInputFactory initialValue() {
+                final XMLInputFactory factory = XMLInputFactory.newInstance();
+                factory.setProperty(XMLInputFactory.IS_COALESCING,
+                        Boolean.TRUE);
+                return factory;
+            }
+        };
+        myScratch = new ThreadLocal<Scratch>() {
+            @Override
+            protected Scratch initialValue() {
+                return new Scratch();
+            }
+        };
     }
 
     /**
@@ -180,6 +506,232 @@ public class XmlLoader {
                     return error("Cannot mix parsing --lines and --files.");
                 }
             }
+            else if ("--stream".equalsIgnoreCase(arg)) {
+                myStreaming = true;
+            }
+            else if ("--split-element".equalsIgnoreCase(arg)) {
+                i += 1;
+                if (i < args.length) {
+                    mySplitElement = args[i];
+                }
+                else {
+                    return error("Unmatched --split-element argument.");
+                }
+
+                // Splitting requires streaming.
+                myStreaming = true;
+            }
+            else if ("--chunk-size".equalsIgnoreCase(arg)) {
+                i += 1;
+                if (i < args.length) {
+                    try {
+                        myChunkSize = parseSize(args[i]);
+                    }
+                    catch (final NumberFormatException nfe) {
+                        return error("Invalid --chunk-size: " + args[i]);
+                    }
+                }
+                else {
+                    return error("Unmatched --chunk-size argument.");
+                }
+            }
+            else if ("--batch-size".equalsIgnoreCase(arg)) {
+                i += 1;
+                if (i < args.length) {
+                    try {
+                        myBatchSize = Integer.parseInt(args[i]);
+                    }
+                    catch (final NumberFormatException nfe) {
+                        return error("Invalid --batch-size: " + args[i]);
+                    }
+                }
+                else {
+                    return error("Unmatched --batch-size argument.");
+                }
+            }
+            else if ("--batch-bytes".equalsIgnoreCase(arg)) {
+                i += 1;
+                if (i < args.length) {
+                    try {
+                        myBatchBytes = parseSize(args[i]);
+                    }
+                    catch (final NumberFormatException nfe) {
+                        return error("Invalid --batch-bytes: " + args[i]);
+                    }
+                }
+                else {
+                    return error("Unmatched --batch-bytes argument.");
+                }
+            }
+            else if ("--flush-interval".equalsIgnoreCase(arg)) {
+                i += 1;
+                if (i < args.length) {
+                    try {
+                        myFlushInterval = Long.parseLong(args[i]);
+                    }
+                    catch (final NumberFormatException nfe) {
+                        return error("Invalid --flush-interval: " + args[i]);
+                    }
+                }
+                else {
+                    return error("Unmatched --flush-interval argument.");
+                }
+            }
+            else if ("--read-threads".equalsIgnoreCase(arg)) {
+                i += 1;
+                if (i < args.length) {
+                    try {
+                        myReadThreads = Integer.parseInt(args[i]);
+                    }
+                    catch (final NumberFormatException nfe) {
+                        return error("Invalid --read-threads: " + args[i]);
+                    }
+                }
+                else {
+                    return error("Unmatched --read-threads argument.");
+                }
+            }
+            else if ("--parse-threads".equalsIgnoreCase(arg)) {
+                i += 1;
+                if (i < args.length) {
+                    try {
+                        myParseThreads = Integer.parseInt(args[i]);
+                    }
+                    catch (final NumberFormatException nfe) {
+                        return error("Invalid --parse-threads: " + args[i]);
+                    }
+                }
+                else {
+                    return error("Unmatched --parse-threads argument.");
+                }
+            }
+            else if ("--inflate-threads".equalsIgnoreCase(arg)) {
+                i += 1;
+                if (i < args.length) {
+                    try {
+                        myInflateThreads = Integer.parseInt(args[i]);
+                    }
+                    catch (final NumberFormatException nfe) {
+                        return error("Invalid --inflate-threads: " + args[i]);
+                    }
+                }
+                else {
+                    return error("Unmatched --inflate-threads argument.");
+                }
+            }
+            else if ("--write-threads".equalsIgnoreCase(arg)) {
+                i += 1;
+                if (i < args.length) {
+                    try {
+                        myWriteThreads = Integer.parseInt(args[i]);
+                    }
+                    catch (final NumberFormatException nfe) {
+                        return error("Invalid --write-threads: " + args[i]);
+                    }
+                }
+                else {
+                    return error("Unmatched --write-threads argument.");
+                }
+            }
+            else if ("--queue-size".equalsIgnoreCase(arg)) {
+                i += 1;
+                if (i < args.length) {
+                    try {
+                        myQueueSize = Integer.parseInt(args[i]);
+                    }
+                    catch (final NumberFormatException nfe) {
+                        return error("Invalid --queue-size: " + args[i]);
+                    }
+                }
+                else {
+                    return error("Unmatched --queue-size argument.");
+                }
+            }
+            else if ("--report-interval".equalsIgnoreCase(arg)) {
+                i += 1;
+                if (i < args.length) {
+                    try {
+                        myReportInterval = Long.parseLong(args[i]);
+                    }
+                    catch (final NumberFormatException nfe) {
+                        return error("Invalid --report-interval: " + args[i]);
+                    }
+                }
+                else {
+                    return error("Unmatched --report-interval argument.");
+                }
+            }
+            else if ("--max-pending".equalsIgnoreCase(arg)) {
+                i += 1;
+                if (i < args.length) {
+                    try {
+                        myMaxPending = Integer.parseInt(args[i]);
+                    }
+                    catch (final NumberFormatException nfe) {
+                        return error("Invalid --max-pending: " + args[i]);
+                    }
+                }
+                else {
+                    return error("Unmatched --max-pending argument.");
+                }
+            }
+            else if ("--types".equalsIgnoreCase(arg)) {
+                i += 1;
+                if (i < args.length) {
+                    try {
+                        myFieldTypes.addTypes(new File(args[i]));
+                    }
+                    catch (final IOException | IllegalArgumentException bad) {
+                        return error("Invalid --types file '" + args[i]
+                                + "': " + bad.getMessage());
+                    }
+                }
+                else {
+                    return error("Unmatched --types argument.");
+                }
+            }
+            else if ("--schema".equalsIgnoreCase(arg)) {
+                i += 1;
+                if (i < args.length) {
+                    mySchema = new File(args[i]);
+                }
+                else {
+                    return error("Unmatched --schema argument.");
+                }
+            }
+            else if ("--checkpoint".equalsIgnoreCase(arg)) {
+                i += 1;
+                if (i < args.length) {
+                    myCheckpointFile = new File(args[i]);
+                }
+                else {
+                    return error("Unmatched --checkpoint argument.");
+                }
+            }
+            else if ("--resume".equalsIgnoreCase(arg)) {
+                myResume = true;
+            }
+            else if ("--key".equalsIgnoreCase(arg)) {
+                i += 1;
+                if (i < args.length) {
+                    myKey = keyPath(args[i]);
+                    if (myKey.length == 0) {
+                        return error("Invalid --key: " + args[i]);
+                    }
+                }
+                else {
+                    return error("Unmatched --key argument.");
+                }
+            }
+            else if ("--dead-letter".equalsIgnoreCase(arg)) {
+                i += 1;
+                if (i < args.length) {
+                    myDeadLetterFile = new File(args[i]);
+                }
+                else {
+                    return error("Unmatched --dead-letter argument.");
+                }
+            }
             else if ("--url".equalsIgnoreCase(arg)) {
                 i += 1;
                 if (i < args.length) {
@@ -194,6 +746,26 @@ public class XmlLoader {
         if (myToLoad.isEmpty()) {
             return error("Must supply at least 1 file or directory to load.");
         }
+        if ((myBatchSize < 1) || (myBatchBytes < 1)) {
+            return error("The --batch-size and --batch-bytes must be positive.");
+        }
+        if ((myReadThreads < 1) || (myParseThreads < 1)
+                || (myInflateThreads < 1) || (myQueueSize < 1)) {
+            return error("The --read-threads, --parse-threads, --inflate-threads and --queue-size must be positive.");
+        }
+        if (myResume && (myCheckpointFile == null)) {
+            return error("The --resume option requires a --checkpoint file.");
+        }
+        if (mySchema != null) {
+            // The split element is the root of each document.
+            try {
+                myFieldTypes.addSchema(mySchema, mySplitElement);
+            }
+            catch (final IOException | IllegalArgumentException bad) {
+                return error("Invalid --schema '" + mySchema + "': "
+                        + bad.getMessage());
+            }
+        }
 
         return true;
     }
@@ -219,48 +791,177 @@ public class XmlLoader {
             return error("You must specify the database and collection in the MongoDB URI.");
         }
 
-        // Seed the set of files to process.
-        myToProcess.addAll(myToLoad);
+        if (myCheckpointFile != null) {
+            try {
+                myCheckpoint = new Checkpoint(myCheckpointFile, myResume);
+            }
+            catch (final IOException ioe) {
+                return error("Could not open the --checkpoint file '"
+                        + myCheckpointFile + "': " + ioe.getMessage());
+            }
+        }
+        if (myDeadLetterFile != null) {
+            try {
+                // Keep the previous failures when resuming since their
+                // files and chunks will be skipped.
+                myDeadLetters = new DeadLetters(myDeadLetterFile, myResume);
+            }
+            catch (final IOException ioe) {
+                return error("Could not open the --dead-letter file '"
+                        + myDeadLetterFile + "': " + ioe.getMessage());
+            }
+        }
+
+        // Seed the read threads with the files to process.
+        myToRead = new WorkStealingQueue<Segment>(myReadThreads);
+        for (int i = 0; i < myToLoad.size(); ++i) {
+            myToRead.add(i, new Segment(myToLoad.get(i)));
+        }
 
         final MongoClientConfiguration config = myClient.getConfig();
-        final int threads = config.getMaxConnectionCount();
+        final int connections = config.getMaxConnectionCount();
+        final int writeThreads = (myWriteThreads > 0) ? myWriteThreads
+                : connections;
+
+        // By default bound the number of pending documents, not batches.
+        final int maxPending = (myMaxPending > 0) ? myMaxPending : Math.max(
+                1, Math.min(4096, connections * 1000) / myBatchSize);
+        myInFlight = new Semaphore(maxPending);
+        myToParse = new ArrayBlockingQueue<Record>(myQueueSize);
+        myToWrite = new ArrayBlockingQueue<Converted>(myQueueSize);
+
+        myMetrics.setWindow(myInFlight, maxPending);
+        myMetrics.setQueues(myToParse, myToWrite);
+        try {
+            myMetrics.register();
+        }
+        catch (final JMException | RuntimeException jmxError) {
+            System.err.println("Could not register the load's MBean: "
+                    + jmxError.getMessage());
+        }
+
+        ScheduledExecutorService reporter = null;
+        if (0 < myReportInterval) {
+            reporter = Executors
+                    .newSingleThreadScheduledExecutor(new DaemonThreadFactory(
+                            "Report Thread"));
+            reporter.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    System.err.println(myMetrics.report());
+                }
+            }, myReportInterval, myReportInterval, TimeUnit.SECONDS);
+        }
 
-        myPendingInserts = new ArrayBlockingQueue<Future<Integer>>(Math.min(
-                4096, threads * 1000));
+        // Set the running counts before any thread can complete.
+        myReading.set(myReadThreads);
+        myParsing.set(myParseThreads);
+        myWriting.set(writeThreads);
 
-        final Loader[] loaders = new Loader[threads];
-        final Thread[] loadThreads = new Thread[threads];
-        for (int i = 0; i < loaders.length; ++i) {
-            loaders[i] = new Loader();
-            loadThreads[i] = new Thread(loaders[i], "Load Thread - " + i);
+        final List<Stage> stages = new ArrayList<Stage>();
+        myInflaters = Executors.newFixedThreadPool(myInflateThreads,
+                new DaemonThreadFactory("Inflate Thread"));
 
-            loadThreads[i].start();
+        for (int i = 0; i < myReadThreads; ++i) {
+            stages.add(new ReadStage(i));
+        }
+        for (int i = 0; i < myParseThreads; ++i) {
+            stages.add(new ParseStage());
+        }
+        for (int i = 0; i < writeThreads; ++i) {
+            stages.add(new WriteStage());
+        }
+
+        final List<Thread> threads = new ArrayList<Thread>(stages.size());
+        for (final Stage stage : stages) {
+            final Thread thread = new Thread(stage, stage.getName() + " - "
+                    + threads.size());
+            threads.add(thread);
+
+            thread.start();
         }
 
-        for (int i = 0; i < loaders.length; ++i) {
+        for (final Thread thread : threads) {
             try {
-                loadThreads[i].join();
+                thread.join();
             }
             catch (final InterruptedException e) {
                 return error("Interrupted while waiting for the load threads: "
                         + e.getMessage());
             }
         }
+        myInflaters.shutdownNow();
 
-        boolean success = true;
-        for (final Loader loader : loaders) {
-            final Throwable error = loader.getError();
-
-            if (error != null) {
-                success = false;
-                System.err.println(error.getMessage());
-            }
+        // Wait for all of the writes to be acknowledged.
+        try {
+            myInFlight.acquire(maxPending);
+            myInFlight.release(maxPending);
         }
-        if (!success) {
-            printUsage();
+        catch (final InterruptedException e) {
+            return error("Interrupted while waiting for the pending writes: "
+                    + e.getMessage());
         }
-        return success;
-    }
+
+        if (reporter != null) {
+            reporter.shutdownNow();
+            System.err.println(myMetrics.report());
+        }
+        try {
+            myMetrics.unregister();
+        }
+        catch (final JMException | RuntimeException jmxError) {
+            // Already reported the failure to register.
+        }
+
+        boolean success = true;
+        if (myWriteError.get() != null) {
+            success = false;
+            System.err.println(myWriteError.get().getMessage());
+        }
+        if (myCheckpoint != null) {
+            try {
+                myCheckpoint.close();
+            }
+            catch (final IOException ioe) {
+                success = false;
+                System.err.println("Could not close the --checkpoint file '"
+                        + myCheckpoint + "': " + ioe.getMessage());
+            }
+            if (myCheckpoint.getError() != null) {
+                success = false;
+                System.err.println("Could not write the --checkpoint file '"
+                        + myCheckpoint + "': "
+                        + myCheckpoint.getError().getMessage());
+            }
+        }
+        if (myDeadLetters != null) {
+            try {
+                myDeadLetters.close();
+            }
+            catch (final IOException ioe) {
+                success = false;
+                System.err.println("Could not close the --dead-letter file '"
+                        + myDeadLetters + "': " + ioe.getMessage());
+            }
+            if (myDeadLetters.getCount() > 0) {
+                System.err.println("Wrote " + myDeadLetters.getCount()
+                        + " failed records and documents to the --dead-letter file '"
+                        + myDeadLetters + "'.");
+            }
+        }
+        for (final Stage stage : stages) {
+            final Throwable error = stage.getError();
+
+            if (error != null) {
+                success = false;
+                System.err.println(error.getMessage());
+            }
+        }
+        if (!success) {
+            printUsage();
+        }
+        return success;
+    }
 
     /**
      * Coerces the name/value into an element.
@@ -276,24 +977,120 @@ public class XmlLoader {
     }
 
     /**
-     * Converts the XML {@link Document} into a BSON {@link DocumentAssignable
-     * document}.
+     * Coerces the name/value into an element of the type configured for the
+     * value's field path. String values are coerced by
+     * {@link #coerce(String, String)}.
+     *
+     * @param nodeName
+     *            The name for the element.
+     * @param nodeValue
+     *            The value for the element.
+     * @param type
+     *            The type for the value.
+     * @return The element.
+     */
+    protected Element coerce(final String nodeName, final String nodeValue,
+            final FieldType type) {
+        if (type == FieldType.STRING) {
+            return coerce(nodeName, nodeValue);
+        }
+        return type.coerce(nodeName, nodeValue);
+    }
+
+    /**
+     * Converts the XML {@link org.w3c.dom.Document} into a BSON
+     * {@link DocumentAssignable document}.
      *
      * @param xmlDocument
      *            The SML document.
      * @return The BSON document.
      */
-    protected DocumentAssignable convert(final Document xmlDocument) {
+    protected DocumentAssignable convert(final org.w3c.dom.Document xmlDocument) {
+        final long start = System.nanoTime();
         final DocumentBuilder builder = BuilderFactory.start();
 
-        convert(builder, xmlDocument.getDocumentElement());
+        convert(builder, xmlDocument.getDocumentElement(), myFieldTypes,
+                myScratch.get(), 0);
 
+        myMetrics.converted(System.nanoTime() - start);
         return builder;
     }
 
     /**
-     * Processes all of the files in the {@link #myToProcess} queue until the
-     * queue is empty. This method is run by multiple threads.
+     * Converts the next XML element from the {@link XMLStreamReader} into a
+     * BSON {@link DocumentAssignable document} without building a DOM.
+     * <p>
+     * The reader is advanced to the next start element if it is not already
+     * positioned on one. On return the reader is positioned on the matching
+     * end element.
+     * </p>
+     *
+     * @param reader
+     *            The reader for the XML document.
+     * @return The BSON document.
+     * @throws XMLStreamException
+     *             On a failure to parse the XML document.
+     */
+    protected DocumentAssignable convert(final XMLStreamReader reader)
+            throws XMLStreamException {
+        while (!reader.isStartElement()) {
+            reader.next();
+        }
+
+        final long start = System.nanoTime();
+        final Scratch scratch = myScratch.get();
+        int depth = 0;
+        StreamFrame frame = startFrame(reader, scratch.frame(depth), null);
+        while (true) {
+            switch (reader.next()) {
+            case XMLStreamConstants.START_ELEMENT: {
+                frame.myChildCount += 1;
+                depth += 1;
+                frame = startFrame(reader, scratch.frame(depth), frame.myPath);
+                break;
+            }
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+            case XMLStreamConstants.SPACE: {
+                frame.text(reader.getText());
+                break;
+            }
+            case XMLStreamConstants.END_ELEMENT: {
+                if (depth == 0) {
+                    final DocumentBuilder builder = BuilderFactory.start();
+                    append(builder, frame, scratch.groups(depth));
+
+                    myMetrics.converted(System.nanoTime() - start);
+                    return builder;
+                }
+
+                depth -= 1;
+                final StreamFrame parent = scratch.frame(depth);
+                if (frame.isText()) {
+                    parent.myElements.add(coerce(frame.myName,
+                            frame.myFirstText, frame.myPath.getType()));
+                }
+                else {
+                    final DocumentBuilder builder = BuilderFactory.start();
+                    append(builder, frame, scratch.groups(depth));
+                    parent.myElements.add(new DocumentElement(frame.myName,
+                            builder.build()));
+                }
+                frame = parent;
+                break;
+            }
+            default: {
+                // Comments, processing instructions, etc. are skipped.
+                break;
+            }
+            }
+        }
+    }
+
+    /**
+     * Parses and converts all of the records in the {@link #myToParse} queue
+     * until the queue is empty and all of the read threads have completed.
+     * This method is run by multiple threads.
      *
      * @throws InterruptedException
      *             If the thread is interrupted.
@@ -303,128 +1100,555 @@ public class XmlLoader {
      *             On a failure to create an XML parser.
      * @throws SAXException
      *             On a failure to parse the XML document.
-     * @throws ExecutionException
-     *             On a failure to insert a document.
+     * @throws XMLStreamException
+     *             On a failure to stream the XML document.
      */
-    protected void doLoad() throws IOException, InterruptedException,
-            ParserConfigurationException, SAXException, ExecutionException {
-        File file = myToProcess.poll();
-        while (file != null) {
+    protected void doParse() throws IOException, InterruptedException,
+            ParserConfigurationException, SAXException, XMLStreamException {
+
+        // Using factory get an instance of document builder
+        final javax.xml.parsers.DocumentBuilder db = myDocumentBuilderFactory
+                .newDocumentBuilder();
 
-            if (file.isDirectory()) {
-                for (final String name : file.list()) {
-                    myToProcess.put(new File(file, name));
+        Record record = take(myToParse, myReading);
+        while (record != null) {
+            try {
+                if (record.isFile()) {
+                    loadFile(record);
+                }
+                else {
+                    loadRecord(db, record);
+                }
+            }
+            catch (final IOException | SAXException | XMLStreamException
+                    | RuntimeException error) {
+                if (myDeadLetters == null) {
+                    throw error;
                 }
+                myDeadLetters.parseFailed(record.getFile(),
+                        record.getLineNumber(), record.getOffset(),
+                        record.getText(), error);
             }
-            else if (file.isFile()) {
-                if (myParseLine) {
-                    loadLines(file);
+            record.getProgress().release();
+
+            record = take(myToParse, myReading);
+        }
+    }
+
+    /**
+     * Processes all of the segments in the {@link #myToRead} queue until all
+     * of the segments have been processed. The files and lines read are
+     * handed off to the parse threads. This method is run by multiple threads.
+     * <p>
+     * The entries of a directory and the chunks of a file are added to this
+     * thread's deque for it, or an idle thread, to process. Each entry's
+     * attributes are read once, when it is processed.
+     * </p>
+     *
+     * @param worker
+     *            The index of the read thread.
+     * @throws InterruptedException
+     *             If the thread is interrupted.
+     * @throws IOException
+     *             On a failure reading a file.
+     */
+    protected void doRead(final int worker) throws IOException,
+            InterruptedException {
+        Segment segment = myToRead.take(worker);
+        while (segment != null) {
+            try {
+                final File file = segment.getFile();
+                final BasicFileAttributes attributes = segment.isChunk() ? null
+                        : readAttributes(file);
+                if (segment.isChunk()) {
+                    if (!isComplete(segment)) {
+                        final Progress progress = start(segment);
+                        readLines(file, segment.getStart(), segment.getEnd(),
+                                progress);
+                        progress.release();
+                        myMetrics.fileRead(segment.getEnd()
+                                - segment.getStart());
+                    }
+                }
+                else if (attributes == null) {
+                    System.err.println("Cannot read '" + file + "'.");
+                }
+                else if (attributes.isDirectory()) {
+                    readDirectory(worker, file);
+                }
+                else if (attributes.isRegularFile()) {
+                    if (myParseLine) {
+                        final long length = attributes.size();
+                        if ((0 < myChunkSize) && (myChunkSize < length)
+                                && (Compression.detect(file) == Compression.NONE)) {
+                            for (long start = 0; start < length; start += myChunkSize) {
+                                myToRead.add(worker, new Segment(file, start,
+                                        Math.min(length, start + myChunkSize)));
+                            }
+                        }
+                        else if (!isComplete(segment)) {
+                            final Progress progress = start(segment);
+                            readLines(file, progress);
+                            progress.release();
+                            myMetrics.fileRead(length);
+                        }
+                    }
+                    else if (!isComplete(segment)) {
+                        // The file's record takes over our reference.
+                        handOff(myToParse, new Record(file, start(segment)),
+                                myParsing);
+                        myMetrics.fileRead(attributes.size());
+                    }
                 }
                 else {
-                    loadFile(file);
+                    System.err.println("Cannot read '" + file + "'.");
                 }
             }
-            else {
-                System.err.println("Cannot read '" + file + "'.");
+            finally {
+                myToRead.done();
             }
 
-            file = myToProcess.poll();
+            segment = myToRead.take(worker);
         }
+    }
+
+    /**
+     * Batches and writes all of the documents in the {@link #myToWrite} queue
+     * until the queue is empty and all of the parse threads have completed.
+     * This method is run by multiple threads.
+     *
+     * @throws InterruptedException
+     *             If the thread is interrupted.
+     * @throws ExecutionException
+     *             On a failure to insert a document.
+     */
+    protected void doWrite() throws InterruptedException, ExecutionException {
+        final Batch batch = new Batch(myKey != null);
+
+        Converted converted = myToWrite.poll(10, TimeUnit.MILLISECONDS);
+        while ((converted != null) || (myParsing.get() > 0)
+                || !myToWrite.isEmpty()) {
+            if (converted != null) {
+                write(batch, converted);
+            }
+            else if (!batch.isEmpty()
+                    && (myFlushInterval <= (System.currentTimeMillis() - batch
+                            .getStarted()))) {
+                flush(batch);
+            }
 
-        // Read the rest of the results.
-        Future<Integer> pend = null;
-        while ((pend = myPendingInserts.poll()) != null) {
-            pend.get();
+            converted = myToWrite.poll(10, TimeUnit.MILLISECONDS);
         }
+
+        // Send the last batch. The run() waits for the acknowledgements.
+        flush(batch);
     }
 
     /**
-     * Loads the single file into the MongoDB database.
+     * Writes the batch to the MongoDB collection, waiting for a permit if
+     * there are too many pending writes. Empty batches are ignored.
      *
-     * @param file
-     *            The file to be loaded.
-     * @throws IOException
-     *             On a failure reading the file.
-     * @throws ParserConfigurationException
-     *             On a failure to create an XML parser.
-     * @throws SAXException
-     *             On a failure to parse the XML document.
+     * @param batch
+     *            The batch to write.
+     * @throws ExecutionException
+     *             If a previous write has failed.
+     * @throws InterruptedException
+     *             On a failure to wait for a permit.
+     */
+    protected void flush(final Batch batch) throws InterruptedException,
+            ExecutionException {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        final Throwable error = myWriteError.get();
+        if (error != null) {
+            throw new ExecutionException(error);
+        }
+
+        final BatchedWrite write = batch.build();
+        myInFlight.acquire();
+        try {
+            myCollection.writeAsync(new WriteCallback(batch.getConverted(),
+                    write, System.nanoTime()), write);
+        }
+        catch (final RuntimeException sendError) {
+            myInFlight.release();
+            throw sendError;
+        }
+        batch.reset();
+    }
+
+    /**
+     * Adds the document to the batch, writing the batch to the MongoDB
+     * collection once it is full or has been open for the flush interval.
+     *
+     * @param batch
+     *            The write thread's batch.
+     * @param converted
+     *            The document to insert and the record it came from.
      * @throws ExecutionException
      *             On a failure to insert a document.
      * @throws InterruptedException
      *             On a failure to wait for the results on the insert.
      */
-    protected void loadFile(final File file) throws IOException,
-            ParserConfigurationException, SAXException, InterruptedException,
-            ExecutionException {
+    protected void write(final Batch batch, final Converted converted)
+            throws InterruptedException, ExecutionException {
+        final long size = converted.getDocument().size();
+        if (myBatchBytes < (batch.getBytes() + size)) {
+            flush(batch);
+        }
 
-        // Using factory get an instance of document builder
-        final javax.xml.parsers.DocumentBuilder db = myDocumentBuilderFactory
-                .newDocumentBuilder();
-        final Document xmlDocument = db.parse(file);
+        batch.add(converted, size);
+        if ((myBatchSize <= batch.getCount())
+                || (myBatchBytes <= batch.getBytes())
+                || (myFlushInterval <= (System.currentTimeMillis() - batch
+                        .getStarted()))) {
+            flush(batch);
+        }
+    }
+
+    /**
+     * Hands the converted document off to the write threads.
+     *
+     * @param document
+     *            The document to insert.
+     * @param record
+     *            The record the document came from.
+     * @throws InterruptedException
+     *             On a failure to wait for space in the write queue.
+     */
+    protected void insert(final DocumentAssignable document,
+            final Record record) throws InterruptedException {
+        final Document converted = (myKey == null) ? document.asDocument()
+                : keyed(document.asDocument());
+
+        record.getProgress().add();
+        handOff(myToWrite, new Converted(converted, record), myWriting);
+    }
+
+    /**
+     * Returns the document with the value of the {@link #myKey key} field as
+     * its <code>_id</code>. The <code>_id</code> is the first field.
+     *
+     * @param document
+     *            The converted document.
+     * @return The document with the <code>_id</code> field.
+     * @throws IllegalArgumentException
+     *             If the document does not have a single value for the key.
+     */
+    protected Document keyed(final Document document)
+            throws IllegalArgumentException {
+        Document parent = document;
+        Element key = null;
+        for (final String name : myKey) {
+            key = (parent == null) ? null : parent.get(name);
+            parent = (key instanceof Document) ? (Document) key : null;
+        }
+
+        if (key == null) {
+            throw new IllegalArgumentException("The document does not have a '"
+                    + join(myKey) + "' field for its _id.");
+        }
+        else if (key instanceof ArrayElement) {
+            throw new IllegalArgumentException("The document has more than "
+                    + "one '" + join(myKey) + "' field for its _id.");
+        }
+
+        final DocumentBuilder builder = BuilderFactory.start();
+        builder.add(key.withName(ID_FIELD));
+        for (final Element element : document) {
+            if (!ID_FIELD.equals(element.getName())) {
+                builder.add(element);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Loads the document(s) from the {@link XMLStreamReader} into the MongoDB
+     * database. If a {@link #mySplitElement split element} has been provided
+     * then a document is inserted for each matching element. Otherwise the
+     * root element is inserted as a single document.
+     * <p>
+     * With a dead-letter file, a split element without a usable key is
+     * dead-lettered and the remaining elements are still loaded. A parse
+     * error is dead-lettered with the line it occurred on and ends the
+     * record: the streaming parser cannot resume after malformed XML, but the
+     * elements before the error have already been loaded.
+     * </p>
+     *
+     * @param reader
+     *            The reader for the XML document.
+     * @param record
+     *            The record the XML document is from.
+     * @throws IOException
+     *             On a failure to write the dead-letter file.
+     * @throws XMLStreamException
+     *             On a failure to stream the XML document.
+     * @throws InterruptedException
+     *             On a failure to wait for space in the write queue.
+     */
+    protected void load(final XMLStreamReader reader, final Record record)
+            throws IOException, XMLStreamException, InterruptedException {
+        if (mySplitElement == null) {
+            insert(convert(reader), record);
+            return;
+        }
 
-        final Future<Integer> future = myCollection
-                .insertAsync(convert(xmlDocument));
-        while (!myPendingInserts.offer(future)) {
-            final Future<Integer> pend = myPendingInserts.poll();
-            if (pend != null) {
-                pend.get();
+        try {
+            while (reader.hasNext()) {
+                if ((reader.next() == XMLStreamConstants.START_ELEMENT)
+                        && isSplitElement(reader)) {
+                    final long line = lineNumber(record, reader.getLocation());
+                    final Document document = convert(reader).asDocument();
+                    try {
+                        insert(document, record);
+                    }
+                    catch (final IllegalArgumentException noKey) {
+                        if (myDeadLetters == null) {
+                            throw noKey;
+                        }
+                        myDeadLetters.keyFailed(record.getFile(), line,
+                                record.getOffset(), document, noKey);
+                    }
+                }
+            }
+        }
+        catch (final XMLStreamException error) {
+            if (myDeadLetters == null) {
+                throw error;
             }
+            myDeadLetters.parseFailed(record.getFile(),
+                    lineNumber(record, error.getLocation()),
+                    record.getOffset(), record.getText(), error);
         }
     }
 
     /**
      * Loads the single file into the MongoDB database.
      *
-     * @param file
-     *            The file to be loaded.
+     * @param record
+     *            The record for the file to be loaded.
      * @throws IOException
      *             On a failure reading the file.
      * @throws ParserConfigurationException
      *             On a failure to create an XML parser.
      * @throws SAXException
      *             On a failure to parse the XML document.
-     * @throws ExecutionException
-     *             On a failure to insert a document.
      * @throws InterruptedException
-     *             On a failure to wait for the results on the insert.
+     *             On a failure to wait for space in the write queue.
+     * @throws XMLStreamException
+     *             On a failure to stream the XML document.
      */
-    protected void loadLines(final File file) throws IOException,
+    protected void loadFile(final Record record) throws IOException,
             ParserConfigurationException, SAXException, InterruptedException,
-            ExecutionException {
+            XMLStreamException {
+        final File file = record.getFile();
 
-        FileReader reader = null;
-        BufferedReader bReader = null;
-        try {
-            reader = new FileReader(file);
-            bReader = new BufferedReader(reader);
+        if (myStreaming) {
+            InputStream in = null;
+            XMLStreamReader reader = null;
+            try {
+                in = Compression.open(file, myInflaters);
+                reader = myInputFactory.get().createXMLStreamReader(in);
 
+                load(reader, record);
+            }
+            finally {
+                close(reader);
+                IOUtils.close(in);
+            }
+        }
+        else {
             // Using factory get an instance of document builder
             final javax.xml.parsers.DocumentBuilder db = myDocumentBuilderFactory
                     .newDocumentBuilder();
+            final InputStream in = Compression.open(file, myInflaters);
+            try {
+                final InputSource source = new InputSource(in);
+                source.setSystemId(file.toURI().toString());
+
+                insert(convert(parse(db, source)), record);
+            }
+            finally {
+                IOUtils.close(in);
+            }
+        }
+    }
 
+    /**
+     * Reads each line of the file and hands it off to the parse threads.
+     *
+     * @param file
+     *            The file to be read.
+     * @param progress
+     *            The progress for the file.
+     * @throws IOException
+     *             On a failure reading the file.
+     * @throws InterruptedException
+     *             On a failure to wait for space in the parse queue.
+     */
+    protected void readLines(final File file, final Progress progress)
+            throws IOException, InterruptedException {
+
+        Reader reader = null;
+        BufferedReader bReader = null;
+        try {
+            reader = new InputStreamReader(Compression.open(file, myInflaters));
+            bReader = new BufferedReader(reader);
+
+            long lineNumber = 0;
             String line = null;
             while ((line = bReader.readLine()) != null) {
-                final Document xmlDocument = db.parse(new InputSource(
-                        new StringReader(line)));
+                lineNumber += 1;
+                progress.add();
+                handOff(myToParse, new Record(file, line, lineNumber,
+                        progress), myParsing);
+            }
+        }
+        finally {
+            IOUtils.close(bReader);
+            IOUtils.close(reader);
+        }
+    }
 
-                final Future<Integer> future = myCollection
-                        .insertAsync(convert(xmlDocument));
+    /**
+     * Reads the lines that start within the range of the file and hands them
+     * off to the parse threads. A line starts at the beginning of the file or
+     * just after a newline. The range is memory mapped and each line's bytes
+     * are passed directly to the XML parser.
+     *
+     * @param file
+     *            The file to be read.
+     * @param start
+     *            The offset of the first byte in the range.
+     * @param end
+     *            The offset just past the last byte in the range.
+     * @param progress
+     *            The progress for the range.
+     * @throws IOException
+     *             On a failure reading the file.
+     * @throws InterruptedException
+     *             On a failure to wait for space in the parse queue.
+     */
+    protected void readLines(final File file, final long start,
+            final long end, final Progress progress) throws IOException,
+            InterruptedException {
+
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+
+            // Map from the byte before the range so we can tell if the first
+            // line starts at the beginning of the range. The last line may
+            // extend past the end of the range.
+            final long fileSize = channel.size();
+            final long mapStart = Math.max(0, start - 1);
+            final long mapEnd = Math.min(fileSize, mapStart
+                    + Integer.MAX_VALUE);
+            final MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY,
+                    mapStart, mapEnd - mapStart);
+            final int limit = buffer.limit();
+            final int rangeEnd = (int) Math.min(limit, end - mapStart);
+
+            // Skip the partial line owned by the previous range.
+            int lineStart = 0;
+            if (start > 0) {
+                lineStart = indexOf(buffer, (byte) '\n', 0, limit) + 1;
+                if (lineStart == 0) {
+                    return;
+                }
+            }
 
-                while (!myPendingInserts.offer(future)) {
-                    final Future<Integer> pend = myPendingInserts.poll();
-                    if (pend != null) {
-                        pend.get();
+            while (lineStart < rangeEnd) {
+                int lineEnd = indexOf(buffer, (byte) '\n', lineStart, limit);
+                if (lineEnd < 0) {
+                    if (mapEnd < fileSize) {
+                        throw new IOException("Line at offset "
+                                + (mapStart + lineStart) + " in '" + file
+                                + "' is too long.");
                     }
+                    lineEnd = limit;
                 }
+
+                final int next = lineEnd + 1;
+                if ((lineStart < lineEnd)
+                        && (buffer.get(lineEnd - 1) == (byte) '\r')) {
+                    lineEnd -= 1;
+                }
+
+                final ByteBuffer line = buffer.duplicate();
+                line.limit(lineEnd).position(lineStart);
+                progress.add();
+                handOff(myToParse, new Record(file, line.slice(), mapStart
+                        + lineStart, progress), myParsing);
+
+                lineStart = next;
             }
         }
-        finally {
-            IOUtils.close(bReader);
-            IOUtils.close(reader);
+    }
+
+    /**
+     * Loads the document(s) from a single record (file or line) into the
+     * MongoDB database using either the DOM or streaming parser.
+     *
+     * @param db
+     *            The DOM parser.
+     * @param record
+     *            The record to load.
+     * @throws IOException
+     *             On a failure reading the record.
+     * @throws SAXException
+     *             On a failure to parse the XML document.
+     * @throws InterruptedException
+     *             On a failure to wait for space in the write queue.
+     * @throws XMLStreamException
+     *             On a failure to stream the XML document.
+     */
+    protected void loadRecord(final javax.xml.parsers.DocumentBuilder db,
+            final Record record) throws IOException, SAXException,
+            InterruptedException, XMLStreamException {
+        final InputSource source = record.getSource();
+        if (myStreaming) {
+            final XMLInputFactory factory = myInputFactory.get();
+            final XMLStreamReader reader = (source.getByteStream() != null) ? factory
+                    .createXMLStreamReader(source.getByteStream()) : factory
+                    .createXMLStreamReader(source.getCharacterStream());
+            try {
+                load(reader, record);
+            }
+            finally {
+                close(reader);
+            }
+        }
+        else {
+            insert(convert(parse(db, source)), record);
         }
     }
 
+    /**
+     * Parses the XML document with the DOM parser, recording the time taken.
+     *
+     * @param db
+     *            The DOM parser.
+     * @param source
+     *            The source for the XML document.
+     * @return The parsed XML document.
+     * @throws IOException
+     *             On a failure reading the document.
+     * @throws SAXException
+     *             On a failure to parse the XML document.
+     */
+    protected org.w3c.dom.Document parse(
+            final javax.xml.parsers.DocumentBuilder db,
+            final InputSource source) throws IOException, SAXException {
+        final long start = System.nanoTime();
+        final org.w3c.dom.Document xmlDocument = db.parse(source);
+        myMetrics.parsed(System.nanoTime() - start);
+
+        return xmlDocument;
+    }
+
     /**
      * Prints a usage statement.
      */
@@ -432,7 +1656,13 @@ public class XmlLoader {
         System.err
                 .println("Usage: java "
                         + XmlLoader.class.getName()
-                        + " [--url <mongodb_uri>]"
+                        + " [--url <mongodb_uri>] [--stream] [--split-element <name>] [--chunk-size <bytes>]"
+                        + " [--batch-size <count>] [--batch-bytes <bytes>] [--flush-interval <ms>]"
+                        + " [--read-threads <count>] [--parse-threads <count>] [--inflate-threads <count>]"
+                        + " [--write-threads <count>]"
+                        + " [--queue-size <count>] [--max-pending <count>] [--report-interval <seconds>]"
+                        + " [--types <file>] [--schema <xsd>]"
+                        + " [--checkpoint <file> [--resume]] [--dead-letter <file>] [--key <path>]"
                         + " ( [--files <file|directory>]+ | [--lines <file|directory>]+ ) ");
 
         System.err.println();
@@ -444,26 +1674,234 @@ public class XmlLoader {
                 .println("                               This adds the documents to the 'test' collection in the 'db' database.");
         System.err.println();
         System.err
-                .println("  --files <file|directory>]+ : The file or directory of the files to parse.");
+                .println("  --stream                   : Convert the XML parser's events directly to BSON");
         System.err
-                .println("                               One XML document per file.");
+                .println("                               without building a DOM for each XML document.");
         System.err.println();
         System.err
-                .println("  --lines <file|directory>]+ : The file or directory of the files to parse.");
+                .println("  --split-element <name>     : Create a document for each element with the name.");
         System.err
-                .println("                               One XML document per line in each file.");
+                .println("                               Implies --stream.");
         System.err.println();
-        System.err.println("Note: You cannot mix --lines and --files.");
-    }
-
+        System.err
+                .println("  --chunk-size <bytes>       : Split files larger than the chunk size into chunks");
+        System.err
+                .println("                               loaded in parallel. Only applies to --lines.");
+        System.err
+                .println("                               Supports a k, m or g suffix, e.g., 64m.");
+        System.err.println();
+        System.err
+                .println("  --batch-size <count>       : The maximum number of documents in each write.");
+        System.err
+                .println("                               Defaults to 1000.");
+        System.err.println();
+        System.err
+                .println("  --batch-bytes <bytes>      : The maximum size of the documents in each write.");
+        System.err
+                .println("                               Defaults to 8m.");
+        System.err.println();
+        System.err
+                .println("  --flush-interval <ms>      : The maximum time a partial batch is held.");
+        System.err
+                .println("                               Defaults to 1000 ms.");
+        System.err.println();
+        System.err
+                .println("  --read-threads <count>     : The number of threads reading files. Defaults to 1.");
+        System.err.println();
+        System.err
+                .println("  --parse-threads <count>    : The number of threads parsing XML documents.");
+        System.err
+                .println("                               Defaults to the number of processors.");
+        System.err.println();
+        System.err
+                .println("  --inflate-threads <count>  : The number of threads decompressing BGZF files.");
+        System.err
+                .println("                               Defaults to the number of processors.");
+        System.err.println();
+        System.err
+                .println("  --write-threads <count>    : The number of threads writing to MongoDB.");
+        System.err
+                .println("                               Defaults to the maximum number of connections.");
+        System.err.println();
+        System.err
+                .println("  --queue-size <count>       : The size of the queues between the stages.");
+        System.err
+                .println("                               Defaults to 1000.");
+        System.err.println();
+        System.err
+                .println("  --max-pending <count>      : The maximum number of unacknowledged writes.");
+        System.err
+                .println("                               Defaults to about 4096 documents worth of batches.");
+        System.err.println();
+        System.err
+                .println("  --report-interval <seconds>: Print the load's progress and metrics periodically.");
+        System.err
+                .println("                               The metrics are always available via JMX.");
+        System.err.println();
+        System.err
+                .println("  --types <file>             : A file of 'field.path=type' lines. The types are:");
+        System.err
+                .println("                               string, int, long, double, boolean and date.");
+        System.err.println();
+        System.err
+                .println("  --schema <xsd>             : An XML Schema used to determine the type of values.");
+        System.err.println();
+        System.err
+                .println("  --checkpoint <file>        : Journal each file or chunk once it is completely loaded.");
+        System.err.println();
+        System.err
+                .println("  --resume                   : Skip the files and chunks in the --checkpoint journal.");
+        System.err
+                .println("                               Use the same files and --chunk-size as the failed load.");
+        System.err.println();
+        System.err
+                .println("  --dead-letter <file>       : Write records that fail to parse or insert to the file and");
+        System.err
+                .println("                               continue. Otherwise the first failure stops the load.");
+        System.err.println();
+        System.err
+                .println("  --key <path>               : Use the field, e.g. 'sku' or '/item/@sku', as the _id");
+        System.err
+                .println("                               and replace any existing document with the same _id.");
+        System.err.println();
+        System.err
+                .println("  --files <file|directory>]+ : The file or directory of the files to parse.");
+        System.err
+                .println("                               One XML document per file.");
+        System.err.println();
+        System.err
+                .println("  --lines <file|directory>]+ : The file or directory of the files to parse.");
+        System.err
+                .println("                               One XML document per line in each file.");
+        System.err.println();
+        System.err.println("Note: You cannot mix --lines and --files.");
+    }
+
+    /**
+     * Joins the field path with periods.
+     *
+     * @param path
+     *            The field path.
+     * @return The field path as a string.
+     */
+    static String join(final String[] path) {
+        final StringBuilder builder = new StringBuilder();
+        for (final String name : path) {
+            if (builder.length() > 0) {
+                builder.append('.');
+            }
+            builder.append(name);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Splits the path for the <b>--key</b> into the field names. The path is
+     * either a <code>field.path</code> within the document or an XPath like
+     * <code>/root/element/@attribute</code> that starts with the document's
+     * root element.
+     *
+     * @param path
+     *            The path to split.
+     * @return The field names.
+     */
+    static String[] keyPath(final String path) {
+        final List<String> names = new ArrayList<String>();
+        final String relative = path.startsWith("/") ? path.replaceFirst(
+                "^/+[^/]*", "") : path;
+        for (String name : relative.split("[./]")) {
+            if (name.startsWith("@")) {
+                name = name.substring(1);
+            }
+            if (!name.isEmpty()) {
+                names.add(cleanName(name));
+            }
+        }
+        return names.toArray(new String[names.size()]);
+    }
+
     /**
      * Make sure the name is a valid MongoDB document field name.
+     * <p>
+     * Each distinct name is cleaned once and the same {@link String} instance
+     * is returned for every later use of the name.
+     * </p>
+     *
+     * @param name
+     *            The name to cleanup.
+     * @return The cleaned name.
+     */
+    static String cleanName(final String name) {
+        final String cached = CLEAN_NAMES.get(name);
+        if (cached != null) {
+            return cached;
+        }
+
+        final String result = clean(name);
+        if (CLEAN_NAMES.size() < MAX_CLEAN_NAMES) {
+            final String existing = CLEAN_NAMES.putIfAbsent(name, result);
+            if (existing != null) {
+                return existing;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Make sure the qualified name for the prefix and local name is a valid
+     * MongoDB document field name.
+     * <p>
+     * Like {@link #cleanName(String)} but the cache is keyed on the prefix and
+     * local name so the qualified name is only built the first time it is
+     * seen.
+     * </p>
+     *
+     * @param prefix
+     *            The namespace prefix. May be <code>null</code> or empty.
+     * @param localName
+     *            The local name.
+     * @return The cleaned qualified name.
+     */
+    static String cleanName(final String prefix, final String localName) {
+        if ((prefix == null) || prefix.isEmpty()) {
+            return cleanName(localName);
+        }
+
+        ConcurrentMap<String, String> names = CLEAN_PREFIXED_NAMES.get(prefix);
+        if (names != null) {
+            final String cached = names.get(localName);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        else if (CLEAN_PREFIXED_NAMES.size() < MAX_CLEAN_NAMES) {
+            names = new ConcurrentHashMap<String, String>();
+            final ConcurrentMap<String, String> existing = CLEAN_PREFIXED_NAMES
+                    .putIfAbsent(prefix, names);
+            if (existing != null) {
+                names = existing;
+            }
+        }
+
+        final String result = clean(prefix + ":" + localName);
+        if ((names != null) && (names.size() < MAX_CLEAN_NAMES)) {
+            final String existing = names.putIfAbsent(localName, result);
+            if (existing != null) {
+                return existing;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Replaces the leading <code>$</code> and any <code>.</code> characters
+     * that are not allowed in a MongoDB document field name.
      *
      * @param name
      *            The name to cleanup.
      * @return The cleaned name.
      */
-    private String cleanName(final String name) {
+    private static String clean(final String name) {
         String result = name;
         if (name.startsWith("$")) {
             result = "_" + name;
@@ -473,81 +1911,183 @@ public class XmlLoader {
     }
 
     /**
-     * Appends the {@link Node}'s attributes and children to the document.
+     * Parses a size in bytes with an optional <code>k</code>, <code>m</code> or
+     * <code>g</code> suffix.
      *
-     * @param builder
-     *            The builder for the document.
-     * @param xmlNode
-     *            The XML node to convert.
+     * @param value
+     *            The value to parse.
+     * @return The size in bytes.
+     * @throws NumberFormatException
+     *             If the value is not a valid size.
      */
-    private void convert(final DocumentBuilder builder, final Node xmlNode) {
-        final NamedNodeMap attributes = xmlNode.getAttributes();
-        final NodeList children = xmlNode.getChildNodes();
-
-        Map<String, Integer> nameCount = new HashMap<String, Integer>();
-        Map<String, ArrayBuilder> duplicates = new HashMap<String, ArrayBuilder>();
-
-        // Two passes through the structures.
+    protected static long parseSize(final String value)
+            throws NumberFormatException {
+        final String trimmed = value.trim().toLowerCase();
+
+        long multiplier = 1;
+        String number = trimmed;
+        if (trimmed.endsWith("k")) {
+            multiplier = 1024L;
+        }
+        else if (trimmed.endsWith("m")) {
+            multiplier = 1024L * 1024L;
+        }
+        else if (trimmed.endsWith("g")) {
+            multiplier = 1024L * 1024L * 1024L;
+        }
+        if (multiplier > 1) {
+            number = trimmed.substring(0, trimmed.length() - 1);
+        }
 
-        // First time we just count names.
-        if (attributes != null) {
-            for (int i = 0; i < attributes.getLength(); ++i) {
-                final Node attr = attributes.item(i);
-                final String name = cleanName(attr.getNodeName());
+        return Long.parseLong(number) * multiplier;
+    }
 
-                if (nameCount.containsKey(name)) {
-                    nameCount.put(name, nameCount.get(name) + 1);
-                }
-                else {
-                    nameCount.put(name, 1);
-                }
+    /**
+     * Returns the index of the first occurrence of the byte in the buffer
+     * between the start (inclusive) and end (exclusive).
+     *
+     * @param buffer
+     *            The buffer to search.
+     * @param b
+     *            The byte to look for.
+     * @param start
+     *            The index to start the search.
+     * @param end
+     *            The index to end the search.
+     * @return The index of the byte or -1 if not found.
+     */
+    private static int indexOf(final ByteBuffer buffer, final byte b,
+            final int start, final int end) {
+        for (int i = start; i < end; ++i) {
+            if (buffer.get(i) == b) {
+                return i;
             }
         }
-        for (int i = 0; i < children.getLength(); ++i) {
-            final Node child = children.item(i);
+        return -1;
+    }
 
-            if (child instanceof Text) {
-                // skip.
+    /**
+     * Closes the {@link XMLStreamReader}, ignoring any errors.
+     *
+     * @param reader
+     *            The reader to close. May be <code>null</code>.
+     */
+    private void close(final XMLStreamReader reader) {
+        if (reader != null) {
+            try {
+                reader.close();
             }
-            else {
-                final String name = cleanName(child.getNodeName());
-                if (nameCount.containsKey(name)) {
-                    nameCount.put(name, nameCount.get(name) + 1);
-                }
-                else {
-                    nameCount.put(name, 1);
-                }
+            catch (final XMLStreamException ignore) {
+                // Ignored.
             }
         }
+    }
+
+    /**
+     * Appends the {@link StreamFrame}'s elements and text to the document. The
+     * elements are grouped the same way as for the DOM based
+     * {@link #convert(DocumentBuilder, Node, FieldPath, Scratch, int)}.
+     *
+     * @param builder
+     *            The builder for the document.
+     * @param frame
+     *            The completed frame to append.
+     * @param groups
+     *            The scratch groups for the frame's elements.
+     */
+    private void append(final DocumentBuilder builder, final StreamFrame frame,
+            final SiblingGroups groups) {
+        final List<Element> elements = frame.myElements;
+        final int count = elements.size();
+
+        for (int i = 0; i < count; ++i) {
+            groups.add(elements.get(i).getName());
+        }
 
-        // Second pass we build the documents.
-        if (attributes != null) {
-            for (int i = 0; i < attributes.getLength(); ++i) {
-                final Node attr = attributes.item(i);
-                final String name = cleanName(attr.getNodeName());
+        for (int i = 0; i <= count; ++i) {
+            if (i == frame.myTextIndex) {
+                final ArrayBuilder textSegments = builder.pushArray("_text");
+                for (final String text : frame.myTextSegments) {
+                    textSegments.add(text);
+                }
+            }
 
-                if (nameCount.containsKey(name) && nameCount.get(name) > 1) {
-                    ArrayBuilder arrayBuilder = duplicates.get(name);
+            if (i < count) {
+                final Element element = elements.get(i);
+                if (groups.isRepeated(i)) {
+                    ArrayBuilder arrayBuilder = groups.getArray(i);
                     if (arrayBuilder == null) {
-                        arrayBuilder = builder.pushArray(name);
-                        duplicates.put(name, arrayBuilder);
+                        arrayBuilder = builder.pushArray(element.getName());
+                        groups.setArray(i, arrayBuilder);
                     }
 
-                    arrayBuilder.add(coerce(name, attr.getNodeValue()));
+                    arrayBuilder.add(element);
                 }
                 else {
-                    builder.add(coerce(name, attr.getNodeValue()));
+                    builder.add(element);
                 }
             }
         }
 
-        ArrayBuilder textSegments = null;
-        for (int i = 0; i < children.getLength(); ++i) {
-            final Node child = children.item(i);
+        groups.reset();
+    }
 
+    /**
+     * Appends the {@link Node}'s attributes and children to the document.
+     * <p>
+     * The attributes and children are walked once, grouping them by name in
+     * the thread's scratch space. The document is then built from the
+     * gathered nodes with repeated names collected into arrays.
+     * </p>
+     *
+     * @param builder
+     *            The builder for the document.
+     * @param xmlNode
+     *            The XML node to convert.
+     * @param path
+     *            The field path for the node.
+     * @param scratch
+     *            The thread's scratch space.
+     * @param depth
+     *            The depth of the node within the document.
+     */
+    private void convert(final DocumentBuilder builder, final Node xmlNode,
+            final FieldPath path, final Scratch scratch, final int depth) {
+        final NamedNodeMap attributes = xmlNode.getAttributes();
+        final NodeList children = xmlNode.getChildNodes();
+        final int attributeCount = (attributes == null) ? 0 : attributes
+                .getLength();
+        final int childCount = children.getLength();
+
+        // Gather the attributes and children, counting names.
+        final SiblingGroups groups = scratch.groups(depth);
+        final Node[] nodes = scratch.nodes(depth, attributeCount + childCount);
+        for (int i = 0; i < attributeCount; ++i) {
+            final Node attr = attributes.item(i);
+            nodes[groups.add(cleanName(attr.getNodeName()))] = attr;
+        }
+        for (int i = 0; i < childCount; ++i) {
+            final Node child = children.item(i);
             if (child instanceof Text) {
-                final Text textNode = (Text) child;
-                final String text = textNode.getData().trim();
+                nodes[groups.addText()] = child;
+            }
+            else {
+                nodes[groups.add(cleanName(child.getNodeName()))] = child;
+            }
+        }
+
+        // Build the document from the gathered nodes.
+        ArrayBuilder textSegments = null;
+        final int count = groups.getSiblingCount();
+        for (int i = 0; i < count; ++i) {
+            final Node node = nodes[i];
+            final String name = groups.getName(i);
+
+            // Release the node so the scratch does not hold the DOM.
+            nodes[i] = null;
+
+            if (name == null) {
+                final String text = ((Text) node).getData().trim();
 
                 // Skip whitespace.
                 if (text.length() > 0) {
@@ -556,39 +2096,156 @@ public class XmlLoader {
                     }
                     textSegments.add(text);
                 }
+                continue;
             }
-            else {
-                final String name = cleanName(child.getNodeName());
-                if (textNode(child)) {
-                    if (nameCount.containsKey(name) && nameCount.get(name) > 1) {
-                        ArrayBuilder arrayBuilder = duplicates.get(name);
-                        if (arrayBuilder == null) {
-                            arrayBuilder = builder.pushArray(name);
-                            duplicates.put(name, arrayBuilder);
-                        }
 
-                        arrayBuilder.add(coerce(name, convertToText(child)));
-                    }
-                    else {
-                        builder.add(coerce(name, convertToText(child)));
-                    }
+            ArrayBuilder arrayBuilder = null;
+            if (groups.isRepeated(i)) {
+                arrayBuilder = groups.getArray(i);
+                if (arrayBuilder == null) {
+                    arrayBuilder = builder.pushArray(name);
+                    groups.setArray(i, arrayBuilder);
                 }
-                else {
-                    if (nameCount.containsKey(name) && nameCount.get(name) > 1) {
-                        ArrayBuilder arrayBuilder = duplicates.get(name);
-                        if (arrayBuilder == null) {
-                            arrayBuilder = builder.pushArray(name);
-                            duplicates.put(name, arrayBuilder);
-                        }
+            }
 
-                        convert(arrayBuilder.push(), child);
-                    }
-                    else {
-                        convert(builder.push(name), child);
-                    }
+            final FieldPath childPath = path.child(name);
+            if ((i < attributeCount) || textNode(node)) {
+                final String value = (i < attributeCount) ? node
+                        .getNodeValue() : convertToText(node);
+                final Element element = coerce(name, value,
+                        childPath.getType());
+                if (arrayBuilder == null) {
+                    builder.add(element);
                 }
+                else {
+                    arrayBuilder.add(element);
+                }
+            }
+            else if (arrayBuilder == null) {
+                convert(builder.push(name), node, childPath, scratch,
+                        depth + 1);
+            }
+            else {
+                convert(arrayBuilder.push(), node, childPath, scratch,
+                        depth + 1);
             }
         }
+
+        groups.reset();
+    }
+
+    /**
+     * Returns true if the segment is recorded as complete in the checkpoint
+     * journal being resumed.
+     *
+     * @param segment
+     *            The file or chunk to check.
+     * @return True if the segment has already been loaded.
+     */
+    private boolean isComplete(final Segment segment) {
+        return myResume
+                && myCheckpoint.isComplete(segment.getFile(),
+                        segment.getStart(), segment.getEnd());
+    }
+
+    /**
+     * Returns true if the element the reader is positioned on is the
+     * {@link #mySplitElement split element}. The element's local or qualified
+     * name may match.
+     *
+     * @param reader
+     *            The reader positioned on a start element.
+     * @return True if the element is a split element.
+     */
+    private boolean isSplitElement(final XMLStreamReader reader) {
+        final String localName = reader.getLocalName();
+        if (mySplitElement.equals(localName)) {
+            return true;
+        }
+
+        // Match prefix:localName without building the qualified name.
+        final String prefix = reader.getPrefix();
+        final int colon = mySplitElement.length() - localName.length() - 1;
+        return (prefix != null) && !prefix.isEmpty()
+                && (colon == prefix.length())
+                && (mySplitElement.charAt(colon) == ':')
+                && mySplitElement.startsWith(prefix)
+                && mySplitElement.endsWith(localName);
+    }
+
+    /**
+     * Returns the line number to report for a location in the record. The
+     * parser's line is only meaningful when the record is an entire file.
+     *
+     * @param record
+     *            The record being parsed.
+     * @param location
+     *            The parser's location or null if not known.
+     * @return The line number or -1 if not known.
+     */
+    private long lineNumber(final Record record, final Location location) {
+        if (record.isFile() && (location != null)
+                && (0 < location.getLineNumber())) {
+            return location.getLineNumber();
+        }
+        return record.getLineNumber();
+    }
+
+    /**
+     * Starts tracking the progress of loading the file or chunk. The caller
+     * holds the progress's first reference.
+     *
+     * @param segment
+     *            The file or chunk being loaded.
+     * @return The progress for the segment.
+     */
+    private Progress start(final Segment segment) {
+        if (myCheckpoint == null) {
+            return new Progress(null, null);
+        }
+        return myCheckpoint.start(segment.getFile(), segment.getStart(),
+                segment.getEnd());
+    }
+
+    /**
+     * Starts a new {@link StreamFrame} for the element the reader is positioned
+     * on. The element's namespace declarations and attributes are added to the
+     * frame as they would be in a DOM.
+     *
+     * @param reader
+     *            The reader positioned on a start element.
+     * @param frame
+     *            The frame to reuse for the element.
+     * @param parentPath
+     *            The field path for the parent element or <code>null</code>
+     *            for the document's root element.
+     * @return The frame for the element.
+     */
+    private StreamFrame startFrame(final XMLStreamReader reader,
+            final StreamFrame frame, final FieldPath parentPath) {
+        final String elementName = cleanName(reader.getPrefix(),
+                reader.getLocalName());
+        final FieldPath path = (parentPath == null) ? myFieldTypes
+                : parentPath.child(elementName);
+        frame.start(elementName, path);
+
+        for (int i = 0; i < reader.getNamespaceCount(); ++i) {
+            final String prefix = reader.getNamespacePrefix(i);
+            final String name = ((prefix == null) || prefix.isEmpty()) ? "xmlns"
+                    : cleanName("xmlns", prefix);
+
+            frame.myElements.add(coerce(name, reader.getNamespaceURI(i)));
+        }
+        for (int i = 0; i < reader.getAttributeCount(); ++i) {
+            final String name = cleanName(reader.getAttributePrefix(i),
+                    reader.getAttributeLocalName(i));
+
+            frame.myElements.add(coerce(name, reader.getAttributeValue(i),
+                    path.child(name).getType()));
+        }
+        frame.myAttributeCount = frame.myElements.size();
+
+        return frame;
     }
 
     /**
@@ -606,6 +2263,106 @@ public class XmlLoader {
         return "";
     }
 
+    /**
+     * Adds the item to the queue for the next stage. If the queue is full
+     * then waits for space as long as at least one of the next stage's threads
+     * is still running.
+     *
+     * @param <T>
+     *            The type of item.
+     * @param queue
+     *            The queue for the next stage.
+     * @param item
+     *            The item to add.
+     * @param consumers
+     *            The number of running threads for the next stage.
+     * @throws InterruptedException
+     *             If the thread is interrupted while waiting.
+     * @throws IllegalStateException
+     *             If all of the next stage's threads have stopped.
+     */
+    private <T> void handOff(final BlockingQueue<T> queue, final T item,
+            final AtomicInteger consumers) throws InterruptedException,
+            IllegalStateException {
+        while (!queue.offer(item, 10, TimeUnit.MILLISECONDS)) {
+            if (consumers.get() <= 0) {
+                throw new IllegalStateException(
+                        "All of the threads for the next stage have stopped.");
+            }
+        }
+    }
+
+    /**
+     * Returns the next item from the queue. If the queue is empty then waits
+     * for the previous stage to add an item as long as at least one of the
+     * previous stage's threads is still running.
+     *
+     * @param <T>
+     *            The type of item.
+     * @param queue
+     *            The queue for this stage.
+     * @param producers
+     *            The number of running threads for the previous stage.
+     * @return The next item or <code>null</code> if the previous stage has
+     *         completed and the queue is empty.
+     * @throws InterruptedException
+     *             If the thread is interrupted while waiting.
+     */
+    private <T> T take(final BlockingQueue<T> queue,
+            final AtomicInteger producers) throws InterruptedException {
+        T item = queue.poll();
+        while ((item == null) && (producers.get() > 0)) {
+            item = queue.poll(10, TimeUnit.MILLISECONDS);
+        }
+
+        // The previous stage may have added the last item just before
+        // completing.
+        if (item == null) {
+            item = queue.poll();
+        }
+        return item;
+    }
+
+    /**
+     * Returns the file's attributes, following symbolic links, or
+     * <code>null</code> if they cannot be read.
+     *
+     * @param file
+     *            The file to inspect.
+     * @return The file's attributes.
+     */
+    private BasicFileAttributes readAttributes(final File file) {
+        try {
+            return Files.readAttributes(file.toPath(),
+                    BasicFileAttributes.class);
+        }
+        catch (final IOException cannotRead) {
+            return null;
+        }
+    }
+
+    /**
+     * Adds a segment for each of the directory's entries to the read thread's
+     * deque.
+     *
+     * @param worker
+     *            The index of the read thread.
+     * @param directory
+     *            The directory to read.
+     */
+    private void readDirectory(final int worker, final File directory) {
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory
+                .toPath())) {
+            for (final Path entry : entries) {
+                myToRead.add(worker, new Segment(entry.toFile()));
+            }
+        }
+        catch (final IOException | DirectoryIteratorException cannotRead) {
+            System.err.println("Cannot read '" + directory + "': "
+                    + cannotRead.getMessage());
+        }
+    }
+
     /**
      * Reports the error and prints a usage statement.
      *
@@ -640,16 +2397,879 @@ public class XmlLoader {
     }
 
     /**
-     * Runnable to load documents.
+     * A batch of documents being collected by a single thread. The documents
+     * are either inserted or, if they have been {@link XmlLoader#keyed keyed},
+     * replace the document with the same <code>_id</code>.
      *
-     * @copyright 2014, Allanbank Consulting, Inc., All Rights Reserved
+     * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
      */
-    protected class Loader
-            implements Runnable {
+    protected static final class Batch {
 
-        /** Any error encountered. */
+        /** The size of the documents in the batch. */
+        private long myBytes;
+
+        /** The number of documents in the batch. */
+        private int myCount;
+
+        /** The documents in the batch. */
+        private List<Converted> myConverted;
+
+        /** The mode for the write. */
+        private final BatchedWriteMode myMode;
+
+        /** The time the first document was added to the batch. */
+        private long myStarted;
+
+        /** If true then the documents are upserted by their _id. */
+        private final boolean myUpsert;
+
+        /** The write being built. */
+        private final BatchedWrite.Builder myWrite;
+
+        /**
+         * Creates a new, empty Batch.
+         *
+         * @param upsert
+         *            If true then the documents replace, or are inserted as,
+         *            the document with the same _id. The replacements are
+         *            applied in order.
+         */
+        public Batch(final boolean upsert) {
+            myUpsert = upsert;
+            myMode = upsert ? BatchedWriteMode.SERIALIZE_AND_CONTINUE
+                    : BatchedWriteMode.REORDERED;
+            myWrite = BatchedWrite.builder().mode(myMode);
+            reset();
+        }
+
+        /**
+         * Adds the document to the batch.
+         *
+         * @param converted
+         *            The document to add and the record it came from.
+         * @param size
+         *            The size of the document in bytes.
+         */
+        public void add(final Converted converted, final long size) {
+            if (myCount == 0) {
+                myStarted = System.currentTimeMillis();
+            }
+
+            final Document document = converted.getDocument();
+            if (myUpsert) {
+                myWrite.update(BuilderFactory.start().add(
+                        document.get(ID_FIELD)), document, false, true);
+            }
+            else {
+                myWrite.insert(document);
+            }
+            myConverted.add(converted);
+            myCount += 1;
+            myBytes += size;
+        }
+
+        /**
+         * Returns the write for the documents in the batch.
+         *
+         * @return The write for the documents in the batch.
+         */
+        public BatchedWrite build() {
+            return myWrite.build();
+        }
+
+        /**
+         * Returns the size of the documents in the batch.
+         *
+         * @return The size of the documents in the batch.
+         */
+        public long getBytes() {
+            return myBytes;
+        }
+
+        /**
+         * Returns the documents in the batch.
+         *
+         * @return The documents in the batch.
+         */
+        public List<Converted> getConverted() {
+            return myConverted;
+        }
+
+        /**
+         * Returns the number of documents in the batch.
+         *
+         * @return The number of documents in the batch.
+         */
+        public int getCount() {
+            return myCount;
+        }
+
+        /**
+         * Returns the time the first document was added to the batch.
+         *
+         * @return The time the first document was added to the batch.
+         */
+        public long getStarted() {
+            return myStarted;
+        }
+
+        /**
+         * Returns true if the batch has no documents.
+         *
+         * @return True if the batch has no documents.
+         */
+        public boolean isEmpty() {
+            return myCount == 0;
+        }
+
+        /**
+         * Removes all of the documents from the batch.
+         */
+        public void reset() {
+            myWrite.reset().mode(myMode);
+            myConverted = new ArrayList<Converted>();
+            myCount = 0;
+            myBytes = 0;
+            myStarted = 0;
+        }
+    }
+
+    /**
+     * A converted document and where it came from.
+     * <p>
+     * Only the record's location is kept, not the record, so a queued or
+     * in-flight document does not hold on to its line's text.
+     * </p>
+     *
+     * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+     */
+    protected static final class Converted {
+
+        /** The converted document. */
+        private final Document myDocument;
+
+        /** The file the document came from. */
+        private final File myFile;
+
+        /** The line number of the document's record or -1 if not known. */
+        private final long myLineNumber;
+
+        /** The byte offset of the document's record or -1 if not known. */
+        private final long myOffset;
+
+        /** The progress for the document's file or chunk. */
+        private final Progress myProgress;
+
+        /**
+         * Creates a new Converted.
+         *
+         * @param document
+         *            The converted document.
+         * @param record
+         *            The record the document came from.
+         */
+        public Converted(final Document document, final Record record) {
+            myDocument = document;
+            myFile = record.getFile();
+            myLineNumber = record.getLineNumber();
+            myOffset = record.getOffset();
+            myProgress = record.getProgress();
+        }
+
+        /**
+         * Returns the converted document.
+         *
+         * @return The converted document.
+         */
+        public Document getDocument() {
+            return myDocument;
+        }
+
+        /**
+         * Returns the file the document came from.
+         *
+         * @return The file the document came from.
+         */
+        public File getFile() {
+            return myFile;
+        }
+
+        /**
+         * Returns the line number of the document's record or -1 if not
+         * known.
+         *
+         * @return The line number of the document's record.
+         */
+        public long getLineNumber() {
+            return myLineNumber;
+        }
+
+        /**
+         * Returns the byte offset of the document's record or -1 if not
+         * known.
+         *
+         * @return The byte offset of the document's record.
+         */
+        public long getOffset() {
+            return myOffset;
+        }
+
+        /**
+         * Returns the progress for the document's file or chunk.
+         *
+         * @return The progress for the document's file or chunk.
+         */
+        public Progress getProgress() {
+            return myProgress;
+        }
+    }
+
+    /**
+     * Creates named daemon threads for the helper executors.
+     *
+     * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+     */
+    protected static final class DaemonThreadFactory
+            implements ThreadFactory {
+
+        /** The number of threads created. */
+        private final AtomicInteger myCount;
+
+        /** The base name for the threads. */
+        private final String myName;
+
+        /**
+         * Creates a new DaemonThreadFactory.
+         *
+         * @param name
+         *            The base name for the threads.
+         */
+        public DaemonThreadFactory(final String name) {
+            myName = name;
+            myCount = new AtomicInteger(0);
+        }
+
+        /**
+         * {@inheritDoc}
+         * <p>
+         * Overridden to create a named daemon thread.
+         * </p>
+         */
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, myName + " - "
+                    + myCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    /**
+     * An {@link InputStream} reading from a {@link ByteBuffer}.
+     *
+     * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+     */
+    protected static final class ByteBufferInputStream
+            extends InputStream {
+
+        /** The buffer to read from. */
+        private final ByteBuffer myBuffer;
+
+        /**
+         * Creates a new ByteBufferInputStream.
+         *
+         * @param buffer
+         *            The buffer to read from. The buffer's position is
+         *            advanced as bytes are read.
+         */
+        public ByteBufferInputStream(final ByteBuffer buffer) {
+            myBuffer = buffer;
+        }
+
+        /**
+         * {@inheritDoc}
+         * <p>
+         * Overridden to return the bytes remaining in the buffer.
+         * </p>
+         */
+        @Override
+        public int available() {
+            return myBuffer.remaining();
+        }
+
+        /**
+         * {@inheritDoc}
+         * <p>
+         * Overridden to read the next byte from the buffer.
+         * </p>
+         */
+        @Override
+        public int read() {
+            if (myBuffer.hasRemaining()) {
+                return myBuffer.get() & 0xFF;
+            }
+            return -1;
+        }
+
+        /**
+         * {@inheritDoc}
+         * <p>
+         * Overridden to read the bytes from the buffer.
+         * </p>
+         */
+        @Override
+        public int read(final byte[] b, final int off, final int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!myBuffer.hasRemaining()) {
+                return -1;
+            }
+
+            final int count = Math.min(len, myBuffer.remaining());
+            myBuffer.get(b, off, count);
+            return count;
+        }
+    }
+
+    /**
+     * A file, or a range of bytes within a file, to be processed.
+     *
+     * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+     */
+    protected static final class Segment {
+
+        /** The offset just past the last byte of the range or -1. */
+        private final long myEnd;
+
+        /** The file (or directory). */
+        private final File myFile;
+
+        /** The offset of the first byte of the range. */
+        private final long myStart;
+
+        /**
+         * Creates a new Segment for the entire file or directory.
+         *
+         * @param file
+         *            The file (or directory).
+         */
+        public Segment(final File file) {
+            this(file, 0, -1);
+        }
+
+        /**
+         * Creates a new Segment for a range of bytes within the file.
+         *
+         * @param file
+         *            The file.
+         * @param start
+         *            The offset of the first byte of the range.
+         * @param end
+         *            The offset just past the last byte of the range.
+         */
+        public Segment(final File file, final long start, final long end) {
+            myFile = file;
+            myStart = start;
+            myEnd = end;
+        }
+
+        /**
+         * Returns the offset just past the last byte of the range.
+         *
+         * @return The offset just past the last byte of the range.
+         */
+        public long getEnd() {
+            return myEnd;
+        }
+
+        /**
+         * Returns the file (or directory).
+         *
+         * @return The file (or directory).
+         */
+        public File getFile() {
+            return myFile;
+        }
+
+        /**
+         * Returns the offset of the first byte of the range.
+         *
+         * @return The offset of the first byte of the range.
+         */
+        public long getStart() {
+            return myStart;
+        }
+
+        /**
+         * Returns true if the segment is a range within a file.
+         *
+         * @return True if the segment is a range within a file.
+         */
+        public boolean isChunk() {
+            return myEnd >= 0;
+        }
+    }
+
+    /**
+     * The scratch space a single thread reuses to convert documents. There is
+     * one set of structures for each depth in the document so converting an
+     * element does not disturb the structures of its ancestors.
+     *
+     * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+     */
+    private static final class Scratch {
+
+        /** The stream frames for each depth. */
+        private StreamFrame[] myFrames;
+
+        /** The sibling groups for each depth. */
+        private SiblingGroups[] myGroups;
+
+        /** The DOM nodes for each depth. */
+        private Node[][] myNodes;
+
+        /**
+         * Creates a new Scratch.
+         */
+        public Scratch() {
+            myFrames = new StreamFrame[0];
+            myGroups = new SiblingGroups[0];
+            myNodes = new Node[0][];
+        }
+
+        /**
+         * Returns the stream frame for the depth.
+         *
+         * @param depth
+         *            The depth in the document.
+         * @return The stream frame for the depth.
+         */
+        public StreamFrame frame(final int depth) {
+            if (myFrames.length <= depth) {
+                myFrames = Arrays.copyOf(myFrames, depth + 8);
+            }
+            if (myFrames[depth] == null) {
+                myFrames[depth] = new StreamFrame();
+            }
+            return myFrames[depth];
+        }
+
+        /**
+         * Returns the empty sibling groups for the depth.
+         *
+         * @param depth
+         *            The depth in the document.
+         * @return The sibling groups for the depth.
+         */
+        public SiblingGroups groups(final int depth) {
+            if (myGroups.length <= depth) {
+                myGroups = Arrays.copyOf(myGroups, depth + 8);
+            }
+            if (myGroups[depth] == null) {
+                myGroups[depth] = new SiblingGroups();
+            }
+
+            // Clear anything left by a failed conversion.
+            myGroups[depth].reset();
+            return myGroups[depth];
+        }
+
+        /**
+         * Returns the nodes for the depth with room for at least the
+         * requested number of nodes.
+         *
+         * @param depth
+         *            The depth in the document.
+         * @param size
+         *            The number of nodes needed.
+         * @return The nodes for the depth.
+         */
+        public Node[] nodes(final int depth, final int size) {
+            if (myNodes.length <= depth) {
+                myNodes = Arrays.copyOf(myNodes, depth + 8);
+            }
+            if ((myNodes[depth] == null) || (myNodes[depth].length < size)) {
+                myNodes[depth] = new Node[Math.max(size, 16)];
+            }
+            return myNodes[depth];
+        }
+    }
+
+    /**
+     * The state for an element while it is being streamed. Frames are reused
+     * via {@link #start(String, FieldPath)}.
+     *
+     * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+     */
+    private static final class StreamFrame {
+
+        /** The number of attributes (and namespace declarations). */
+        protected int myAttributeCount;
+
+        /** The number of child elements and text segments. */
+        protected int myChildCount;
+
+        /** The attributes and completed child elements, in document order. */
+        protected final List<Element> myElements;
+
+        /** The text when the first child is a text segment. */
+        protected String myFirstText;
+
+        /** The cleaned name of the element. */
+        protected String myName;
+
+        /** The field path for the element. */
+        protected FieldPath myPath;
+
+        /**
+         * The index in {@link #myElements} for the "_text" array or -1 if
+         * there are no text segments.
+         */
+        protected int myTextIndex;
+
+        /** The non-whitespace text segments. */
+        protected final List<String> myTextSegments;
+
+        /**
+         * Creates a new StreamFrame.
+         */
+        public StreamFrame() {
+            myElements = new ArrayList<Element>();
+            myTextSegments = new ArrayList<String>();
+            myTextIndex = -1;
+        }
+
+        /**
+         * Returns true if the element has no attributes and only a single
+         * child text segment.
+         *
+         * @return True if the element has no attributes and only a single
+         *         child text segment.
+         */
+        public boolean isText() {
+            return (myAttributeCount == 0) && (myChildCount == 1)
+                    && (myFirstText != null);
+        }
+
+        /**
+         * Starts the frame for a new element, discarding any previous state.
+         *
+         * @param name
+         *            The cleaned name of the element.
+         * @param path
+         *            The field path for the element.
+         */
+        public void start(final String name, final FieldPath path) {
+            myName = name;
+            myPath = path;
+            myAttributeCount = 0;
+            myChildCount = 0;
+            myElements.clear();
+            myFirstText = null;
+            myTextIndex = -1;
+            myTextSegments.clear();
+        }
+
+        /**
+         * Adds a text segment to the element.
+         *
+         * @param data
+         *            The text segment.
+         */
+        public void text(final String data) {
+            final String text = data.trim();
+
+            myChildCount += 1;
+            if (myChildCount == 1) {
+                myFirstText = text;
+            }
+
+            // Skip whitespace.
+            if (text.length() > 0) {
+                if (myTextIndex < 0) {
+                    myTextIndex = myElements.size();
+                }
+                myTextSegments.add(text);
+            }
+        }
+    }
+
+    /**
+     * Runnable to parse and convert documents.
+     *
+     * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+     */
+    protected class ParseStage
+            extends Stage {
+
+        /**
+         * Creates a new ParseStage.
+         */
+        public ParseStage() {
+            super("Parse Thread", myParsing);
+        }
+
+        /**
+         * {@inheritDoc}
+         * <p>
+         * Overridden to parse and convert documents.
+         * </p>
+         */
+        @Override
+        protected void doStage() throws InterruptedException, IOException,
+                ParserConfigurationException, SAXException, XMLStreamException {
+            doParse();
+        }
+    }
+
+    /**
+     * Runnable to read files.
+     *
+     * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+     */
+    protected class ReadStage
+            extends Stage {
+
+        /** The index of the read thread. */
+        private final int myWorker;
+
+        /**
+         * Creates a new ReadStage.
+         *
+         * @param worker
+         *            The index of the read thread.
+         */
+        public ReadStage(final int worker) {
+            super("Read Thread", myReading);
+            myWorker = worker;
+        }
+
+        /**
+         * {@inheritDoc}
+         * <p>
+         * Overridden to read files.
+         * </p>
+         */
+        @Override
+        protected void doStage() throws InterruptedException, IOException {
+            doRead(myWorker);
+        }
+    }
+
+    /**
+     * A file or line to be parsed.
+     *
+     * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+     */
+    protected static final class Record {
+
+        /** The bytes of a line mapped from the file or null. */
+        private final ByteBuffer myBytes;
+
+        /** The file the record is from. */
+        private final File myFile;
+
+        /** The line number of the record or -1 if not known. */
+        private final long myLineNumber;
+
+        /** The byte offset of the record in the file or -1 if not known. */
+        private final long myOffset;
+
+        /** The progress for the record's file or chunk. */
+        private final Progress myProgress;
+
+        /** The text of a line read from the file or null. */
+        private final String myText;
+
+        /**
+         * Creates a new Record for a line mapped from the file.
+         *
+         * @param file
+         *            The file the record is from.
+         * @param bytes
+         *            The line's bytes.
+         * @param offset
+         *            The byte offset of the line in the file.
+         * @param progress
+         *            The progress for the record's file or chunk. The record
+         *            holds one reference.
+         */
+        public Record(final File file, final ByteBuffer bytes,
+                final long offset, final Progress progress) {
+            this(file, bytes, null, -1, offset, progress);
+        }
+
+        /**
+         * Creates a new Record for an entire file.
+         *
+         * @param file
+         *            The file.
+         * @param progress
+         *            The progress for the file. The record holds one
+         *            reference.
+         */
+        public Record(final File file, final Progress progress) {
+            this(file, null, null, -1, -1, progress);
+        }
+
+        /**
+         * Creates a new Record for a line read from the file.
+         *
+         * @param file
+         *            The file the record is from.
+         * @param text
+         *            The line's text.
+         * @param lineNumber
+         *            The line number, starting at 1.
+         * @param progress
+         *            The progress for the record's file or chunk. The record
+         *            holds one reference.
+         */
+        public Record(final File file, final String text,
+                final long lineNumber, final Progress progress) {
+            this(file, null, text, lineNumber, -1, progress);
+        }
+
+        /**
+         * Creates a new Record.
+         *
+         * @param file
+         *            The file the record is from.
+         * @param bytes
+         *            The bytes of a line mapped from the file or null.
+         * @param text
+         *            The text of a line read from the file or null.
+         * @param lineNumber
+         *            The line number of the record or -1 if not known.
+         * @param offset
+         *            The byte offset of the record or -1 if not known.
+         * @param progress
+         *            The progress for the record's file or chunk.
+         */
+        private Record(final File file, final ByteBuffer bytes,
+                final String text, final long lineNumber, final long offset,
+                final Progress progress) {
+            myFile = file;
+            myBytes = bytes;
+            myText = text;
+            myLineNumber = lineNumber;
+            myOffset = offset;
+            myProgress = progress;
+        }
+
+        /**
+         * Returns the file the record is from.
+         *
+         * @return The file the record is from.
+         */
+        public File getFile() {
+            return myFile;
+        }
+
+        /**
+         * Returns the line number of the record or -1 if not known.
+         *
+         * @return The line number of the record or -1 if not known.
+         */
+        public long getLineNumber() {
+            return myLineNumber;
+        }
+
+        /**
+         * Returns the byte offset of the record in the file or -1 if not
+         * known.
+         *
+         * @return The byte offset of the record in the file or -1 if not
+         *         known.
+         */
+        public long getOffset() {
+            return myOffset;
+        }
+
+        /**
+         * Returns a new source for the line or null if the record is the
+         * entire file.
+         *
+         * @return A new source for the line or null if the record is the
+         *         entire file.
+         */
+        public InputSource getSource() {
+            if (myBytes != null) {
+                return new InputSource(new ByteBufferInputStream(
+                        myBytes.duplicate()));
+            }
+            else if (myText != null) {
+                return new InputSource(new StringReader(myText));
+            }
+            return null;
+        }
+
+        /**
+         * Returns the text of the line or null if the record is the entire
+         * file. Mapped lines are decoded as UTF-8.
+         *
+         * @return The text of the line or null if the record is the entire
+         *         file.
+         */
+        public String getText() {
+            if (myBytes != null) {
+                return StandardCharsets.UTF_8.decode(myBytes.duplicate())
+                        .toString();
+            }
+            return myText;
+        }
+
+        /**
+         * Returns true if the record is an entire file.
+         *
+         * @return True if the record is an entire file.
+         */
+        public boolean isFile() {
+            return (myBytes == null) && (myText == null);
+        }
+
+        /**
+         * Returns the progress for the record's file or chunk.
+         *
+         * @return The progress for the record's file or chunk.
+         */
+        public Progress getProgress() {
+            return myProgress;
+        }
+    }
+
+    /**
+     * Base class for the runnables for each stage of the load.
+     *
+     * @copyright 2014, Allanbank Consulting, Inc., All Rights Reserved
+     */
+    protected abstract class Stage
+            implements Runnable {
+
+        /** Any error encountered. */
         private Throwable myError = null;
 
+        /** The name for the stage's threads. */
+        private final String myName;
+
+        /** The number of running threads for the stage. */
+        private final AtomicInteger myRunning;
+
+        /**
+         * Creates a new Stage.
+         *
+         * @param name
+         *            The name for the stage's threads.
+         * @param running
+         *            The number of running threads for the stage. Decremented
+         *            when this runnable completes.
+         */
+        protected Stage(final String name, final AtomicInteger running) {
+            myName = name;
+            myRunning = running;
+        }
+
         /**
          * Returns the exception thrown, if any.
          *
@@ -659,10 +3279,19 @@ public class XmlLoader {
             return myError;
         }
 
+        /**
+         * Returns the name for the stage's threads.
+         *
+         * @return The name for the stage's threads.
+         */
+        public String getName() {
+            return myName;
+        }
+
         /**
          * {@inheritDoc}
          * <p>
-         * Overridden to load documents.
+         * Overridden to run the stage.
          * </p>
          *
          * @see java.lang.Runnable#run()
@@ -670,14 +3299,229 @@ public class XmlLoader {
         @Override
         public void run() {
             try {
-                doLoad();
+                doStage();
             }
             catch (InterruptedException | IOException
                     | ParserConfigurationException | SAXException
-                    | ExecutionException | RuntimeException error) {
+                    | ExecutionException | XMLStreamException
+                    | RuntimeException error) {
                 myError = error;
             }
+            finally {
+                myRunning.decrementAndGet();
+            }
+        }
+
+        /**
+         * Runs the stage's processing.
+         *
+         * @throws InterruptedException
+         *             If the thread is interrupted.
+         * @throws IOException
+         *             On a failure reading a file.
+         * @throws ParserConfigurationException
+         *             On a failure to create an XML parser.
+         * @throws SAXException
+         *             On a failure to parse the XML document.
+         * @throws ExecutionException
+         *             On a failure to insert a document.
+         * @throws XMLStreamException
+         *             On a failure to stream the XML document.
+         */
+        protected abstract void doStage() throws InterruptedException,
+                IOException, ParserConfigurationException, SAXException,
+                ExecutionException, XMLStreamException;
+    }
+
+    /**
+     * Callback for a batched write. Records any error, or writes the failed
+     * documents to the dead-letter file, and returns the write's permit. A
+     * successful or dead-lettered write releases each document's reference to
+     * its file or chunk's progress.
+     *
+     * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+     */
+    protected class WriteCallback
+            implements LambdaCallback<Long> {
+
+        /** The documents in the write. */
+        private final List<Converted> myConverted;
+
+        /** The time the write was sent. */
+        private final long mySent;
+
+        /** The write. */
+        private final BatchedWrite myWrite;
+
+        /**
+         * Creates a new WriteCallback.
+         *
+         * @param converted
+         *            The documents in the write, in the order of the write's
+         *            operations.
+         * @param write
+         *            The write.
+         * @param sent
+         *            The {@link System#nanoTime()} the write was sent.
+         */
+        public WriteCallback(final List<Converted> converted,
+                final BatchedWrite write, final long sent) {
+            myConverted = converted;
+            myWrite = write;
+            mySent = sent;
+        }
+
+        /**
+         * {@inheritDoc}
+         * <p>
+         * Overridden to record any error, release the documents' progress and
+         * return the write's permit. With a dead-letter file, only the
+         * operations a {@link BatchedWriteException} reports as failed or
+         * skipped are dead-lettered; the rest of the batch was written. Any
+         * other error dead-letters every document in the batch.
+         * </p>
+         */
+        @Override
+        public void accept(final Throwable thrown, final Long result) {
+            if (thrown == null) {
+                myMetrics.written(myConverted.size(), System.nanoTime()
+                        - mySent);
+                release();
+            }
+            else if (myDeadLetters != null) {
+                try {
+                    final BatchedWriteException batchError = batchError(thrown);
+                    if (batchError == null) {
+                        for (final Converted converted : myConverted) {
+                            deadLetter(converted, thrown);
+                        }
+                    }
+                    else {
+                        deadLetter(batchError);
+                    }
+                    release();
+                }
+                catch (final IOException ioe) {
+                    myWriteError.compareAndSet(null, ioe);
+                }
+            }
+            else {
+                myWriteError.compareAndSet(null, thrown);
+            }
+            myInFlight.release();
+        }
+
+        /**
+         * Returns the {@link BatchedWriteException} in the error's causes.
+         *
+         * @param thrown
+         *            The error for the write.
+         * @return The {@link BatchedWriteException} or null if the error did
+         *         not come from the batch's operations.
+         */
+        private BatchedWriteException batchError(final Throwable thrown) {
+            Throwable error = thrown;
+            while (error != null) {
+                if (error instanceof BatchedWriteException) {
+                    return (BatchedWriteException) error;
+                }
+                error = error.getCause();
+            }
+            return null;
         }
 
+        /**
+         * Writes the document to the dead-letter file.
+         *
+         * @param converted
+         *            The document that failed to be written.
+         * @param error
+         *            The error for the document.
+         * @throws IOException
+         *             On a failure to write the dead-letter file.
+         */
+        private void deadLetter(final Converted converted,
+                final Throwable error) throws IOException {
+            myDeadLetters.insertFailed(converted.getFile(),
+                    converted.getLineNumber(), converted.getOffset(),
+                    converted.getDocument(), error);
+        }
+
+        /**
+         * Writes the documents of the failed and skipped operations to the
+         * dead-letter file and records the written documents.
+         *
+         * @param batchError
+         *            The error for the write.
+         * @throws IOException
+         *             On a failure to write the dead-letter file.
+         */
+        private void deadLetter(final BatchedWriteException batchError)
+                throws IOException {
+            // The write's operations are in the order the documents were
+            // added.
+            final List<WriteOperation> operations = myWrite.getWrites();
+            final Map<WriteOperation, Converted> documents = new IdentityHashMap<WriteOperation, Converted>();
+            for (int i = 0; i < operations.size(); ++i) {
+                documents.put(operations.get(i), myConverted.get(i));
+            }
+
+            int failed = 0;
+            for (final Map.Entry<WriteOperation, Throwable> error : batchError
+                    .getErrors().entrySet()) {
+                final Converted converted = documents.remove(error.getKey());
+                if (converted != null) {
+                    deadLetter(converted, error.getValue());
+                    failed += 1;
+                }
+            }
+            for (final WriteOperation skipped : batchError.getSkipped()) {
+                final Converted converted = documents.remove(skipped);
+                if (converted != null) {
+                    deadLetter(converted, batchError);
+                    failed += 1;
+                }
+            }
+
+            myMetrics.written(myConverted.size() - failed, System.nanoTime()
+                    - mySent);
+        }
+
+        /**
+         * Releases each document's reference to its file or chunk's progress.
+         */
+        private void release() {
+            for (final Converted converted : myConverted) {
+                converted.getProgress().release();
+            }
+        }
+    }
+
+    /**
+     * Runnable to batch and write documents.
+     *
+     * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+     */
+    protected class WriteStage
+            extends Stage {
+
+        /**
+         * Creates a new WriteStage.
+         */
+        public WriteStage() {
+            super("Write Thread", myWriting);
+        }
+
+        /**
+         * {@inheritDoc}
+         * <p>
+         * Overridden to batch and write documents.
+         * </p>
+         */
+        @Override
+        protected void doStage() throws InterruptedException,
+                ExecutionException {
+            doWrite();
+        }
     }
 }
@@ -0,0 +1,384 @@
+/*
+ * #%L
+ * BatchWriter.java - mongodb-async-examples - Allanbank Consulting, Inc.
+ * %%
+ * Copyright (C) 2015 Allanbank Consulting, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+package migrate.mongodb_user20150830;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+import com.allanbank.mongodb.ListenableFuture;
+import com.allanbank.mongodb.MongoCollection;
+import com.allanbank.mongodb.bson.Document;
+import com.allanbank.mongodb.bson.Element;
+import com.allanbank.mongodb.bson.builder.BuilderFactory;
+import com.allanbank.mongodb.builder.BatchedWrite;
+import com.allanbank.mongodb.builder.BatchedWriteMode;
+import com.allanbank.mongodb.error.BatchedWriteException;
+
+/**
+ * Collects documents into {@link BatchedWrite batched writes} and tracks the
+ * acknowledgement of each batch.
+ * <p>
+ * A batch is sent once it holds the maximum number of documents or bytes. At
+ * most the maximum pending batches are waiting for an acknowledgement at any
+ * time; sending another first waits for the oldest. Each acknowledgement is
+ * checked against the number of documents in its batch. Deletes are not
+ * checked since the document may already have been removed.
+ * </p>
+ * <p>
+ * With a {@link Throttle} each batch waits for its share of the throttle's
+ * rate before it is sent and reports its acknowledgement latency back to the
+ * throttle.
+ * </p>
+ * <p>
+ * Instances are not thread safe. Each extract thread uses its own writer.
+ * </p>
+ *
+ * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+ */
+public class BatchWriter {
+
+    /** Runs the acknowledgement listeners on the driver's thread. */
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(final Runnable command) {
+            command.run();
+        }
+    };
+
+    /** The maximum number of bytes in a batch. */
+    private final long myBatchBytes;
+
+    /** The maximum number of documents in a batch. */
+    private final int myBatchSize;
+
+    /** The size of the documents in the current batch. */
+    private long myBytes;
+
+    /** The collection to write to. */
+    private final MongoCollection myCollection;
+
+    /** The number of documents in the current batch. */
+    private int myCount;
+
+    /** The number of deletes in the current batch. */
+    private int myDeletes;
+
+    /** The number of documents that failed to be written. */
+    private long myFailed;
+
+    /** The maximum number of batches waiting for an acknowledgement. */
+    private final int myMaxPending;
+
+    /** The batches waiting for an acknowledgement, oldest first. */
+    private final Deque<Pending> myPending;
+
+    /** The throttle for the writes or null to write as fast as possible. */
+    private final Throttle myThrottle;
+
+    /** The number of documents acknowledged. */
+    private long myWritten;
+
+    /** The number of batches sent. */
+    private long myWrites;
+
+    /** The batch being built. */
+    private final BatchedWrite.Builder myWrite;
+
+    /**
+     * Creates a new BatchWriter.
+     *
+     * @param collection
+     *            The collection to write to.
+     * @param batchSize
+     *            The maximum number of documents in a batch.
+     * @param batchBytes
+     *            The maximum number of bytes in a batch.
+     * @param maxPending
+     *            The maximum number of batches waiting for an
+     *            acknowledgement.
+     * @param throttle
+     *            The throttle for the writes or null to write as fast as
+     *            possible.
+     */
+    public BatchWriter(final MongoCollection collection, final int batchSize,
+            final long batchBytes, final int maxPending, final Throttle throttle) {
+        myCollection = collection;
+        myBatchSize = batchSize;
+        myBatchBytes = batchBytes;
+        myMaxPending = maxPending;
+        myThrottle = throttle;
+        myPending = new ArrayDeque<>(maxPending);
+        myWrite = BatchedWrite.builder().mode(BatchedWriteMode.REORDERED);
+        myCount = 0;
+        myDeletes = 0;
+        myBytes = 0;
+    }
+
+    /**
+     * Adds the document to the current batch, sending the batch once it is
+     * full.
+     *
+     * @param document
+     *            The document to insert.
+     */
+    public void add(final Document document) {
+        final long size = document.size();
+        reserve(size);
+        myWrite.insert(document);
+        added(size);
+    }
+
+    /**
+     * Adds a delete of the document with the <code>_id</code> to the current
+     * batch, sending the batch once it is full.
+     *
+     * @param id
+     *            The <code>_id</code> element of the document to delete.
+     */
+    public void delete(final Element id) {
+        final long size = id.size();
+        reserve(size);
+        myWrite.delete(BuilderFactory.start().add(id), true);
+        myDeletes += 1;
+        added(size);
+    }
+
+    /**
+     * Adds an upsert of the document, replacing any document with the same
+     * <code>_id</code>, to the current batch, sending the batch once it is
+     * full.
+     *
+     * @param document
+     *            The document to save. Must have an <code>_id</code>.
+     */
+    public void save(final Document document) {
+        final long size = document.size();
+        reserve(size);
+        myWrite.save(document);
+        added(size);
+    }
+
+    /**
+     * Sends the current batch and waits for all of the pending batches to be
+     * acknowledged.
+     */
+    public void close() {
+        flush();
+        while (!myPending.isEmpty()) {
+            acknowledge(myPending.removeFirst());
+        }
+    }
+
+    /**
+     * Sends the current batch, if it has any documents. Waits for the oldest
+     * pending batch first if there are too many pending batches.
+     */
+    public void flush() {
+        if (myCount == 0) {
+            return;
+        }
+
+        while (myMaxPending <= myPending.size()) {
+            acknowledge(myPending.removeFirst());
+        }
+
+        final ListenableFuture<Long> future;
+        if (myThrottle == null) {
+            future = myCollection.writeAsync(myWrite.build());
+        }
+        else {
+            myThrottle.acquire(myCount);
+
+            final int count = myCount;
+            final long sent = System.nanoTime();
+            future = myCollection.writeAsync(myWrite.build());
+            future.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    myThrottle.acknowledged(count, System.nanoTime() - sent);
+                }
+            }, DIRECT);
+        }
+        myPending.addLast(new Pending(future, myCount, myCount - myDeletes));
+        myWrites += 1;
+
+        myWrite.reset().mode(BatchedWriteMode.REORDERED);
+        myCount = 0;
+        myDeletes = 0;
+        myBytes = 0;
+    }
+
+    /**
+     * Returns the number of documents that failed to be written.
+     *
+     * @return The number of documents that failed to be written.
+     */
+    public long getFailed() {
+        return myFailed;
+    }
+
+    /**
+     * Returns the number of documents acknowledged.
+     *
+     * @return The number of documents acknowledged.
+     */
+    public long getWritten() {
+        return myWritten;
+    }
+
+    /**
+     * Returns the number of batches sent.
+     *
+     * @return The number of batches sent.
+     */
+    public long getWrites() {
+        return myWrites;
+    }
+
+    /**
+     * Waits for the batch's acknowledgement and records the result.
+     *
+     * @param pending
+     *            The batch to wait for.
+     */
+    private void acknowledge(final Pending pending) {
+        try {
+            final long written = pending.getFuture().get().longValue();
+            myWritten += written;
+            if (written < pending.getExpected()) {
+                myFailed += (pending.getExpected() - written);
+                System.err.println("Only " + written + " of the "
+                        + pending.getExpected()
+                        + " documents in a batch were written.");
+            }
+        }
+        catch (final ExecutionException error) {
+            final Throwable cause = error.getCause();
+            if (cause instanceof BatchedWriteException) {
+                // Only the failed and skipped operations were not written.
+                final BatchedWriteException batchError = (BatchedWriteException) cause;
+                myWritten += batchError.getN();
+                myFailed += batchError.getErrors().size()
+                        + batchError.getSkipped().size();
+            }
+            else {
+                myFailed += pending.getCount();
+            }
+            System.err.println(cause.getMessage());
+        }
+        catch (final InterruptedException error) {
+            myFailed += pending.getCount();
+            Thread.currentThread().interrupt();
+            System.err.println(error.getMessage());
+        }
+    }
+
+    /**
+     * Records a document added to the current batch and sends the batch if it
+     * is full.
+     *
+     * @param size
+     *            The size of the document.
+     */
+    private void added(final long size) {
+        myCount += 1;
+        myBytes += size;
+        if ((myBatchSize <= myCount) || (myBatchBytes <= myBytes)) {
+            flush();
+        }
+    }
+
+    /**
+     * Sends the current batch if the document would make it too large.
+     *
+     * @param size
+     *            The size of the document to add.
+     */
+    private void reserve(final long size) {
+        if ((myCount > 0) && (myBatchBytes < (myBytes + size))) {
+            flush();
+        }
+    }
+
+    /**
+     * A batch waiting for an acknowledgement.
+     *
+     * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+     */
+    private static final class Pending {
+
+        /** The number of documents in the batch. */
+        private final int myCount;
+
+        /** The minimum number of documents the batch should write. */
+        private final int myExpected;
+
+        /** The future for the batch's acknowledgement. */
+        private final Future<Long> myFuture;
+
+        /**
+         * Creates a new Pending.
+         *
+         * @param future
+         *            The future for the batch's acknowledgement.
+         * @param count
+         *            The number of documents in the batch.
+         * @param expected
+         *            The minimum number of documents the batch should write.
+         */
+        public Pending(final Future<Long> future, final int count,
+                final int expected) {
+            myFuture = future;
+            myCount = count;
+            myExpected = expected;
+        }
+
+        /**
+         * Returns the number of documents in the batch.
+         *
+         * @return The number of documents in the batch.
+         */
+        public int getCount() {
+            return myCount;
+        }
+
+        /**
+         * Returns the minimum number of documents the batch should write.
+         *
+         * @return The minimum number of documents the batch should write.
+         */
+        public int getExpected() {
+            return myExpected;
+        }
+
+        /**
+         * Returns the future for the batch's acknowledgement.
+         *
+         * @return The future for the batch's acknowledgement.
+         */
+        public Future<Long> getFuture() {
+            return myFuture;
+        }
+    }
+}
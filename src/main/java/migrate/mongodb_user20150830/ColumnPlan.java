@@ -0,0 +1,875 @@
+/*
+ * #%L
+ * ColumnPlan.java - mongodb-async-examples - Allanbank Consulting, Inc.
+ * %%
+ * Copyright (C) 2015 Allanbank Consulting, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+package migrate.mongodb_user20150830;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import com.allanbank.mongodb.bson.builder.DocumentBuilder;
+
+/**
+ * The plan for converting each row of a query's results into a document.
+ * <p>
+ * The plan is built once from the {@link ResultSetMetaData} with a
+ * {@link Column} for each column that holds the field name and reads the
+ * column with the typed {@link ResultSet} getter. Converting a row is then a
+ * single pass over the columns with no metadata lookups or type dispatch.
+ * </p>
+ * <p>
+ * <code>DECIMAL</code> and <code>NUMERIC</code> columns with a scale of zero
+ * and at most 18 digits are added as longs. Other decimal columns are added as
+ * selected by the {@link Decimals} mode. <code>CLOB</code> and
+ * <code>BLOB</code> columns are streamed through the {@link LobStore}.
+ * </p>
+ * <p>
+ * Date and time values are added as UTC dates with millisecond precision.
+ * <code>TIMESTAMP</code> values without a time zone are read as being in the
+ * plan's time zone. <code>DATE</code> values are midnight UTC and
+ * <code>TIME</code> values are on 1970-01-01 UTC so they do not shift with
+ * the time zone. Values with a time zone are already an instant and are read
+ * as is.
+ * </p>
+ *
+ * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+ */
+public class ColumnPlan {
+
+    /** The time zone for the <code>DATE</code> and <code>TIME</code> values. */
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    /**
+     * Creates the plan for the query's results.
+     *
+     * @param md
+     *            The metadata for the query's results.
+     * @param decimals
+     *            How to add the decimal columns.
+     * @param lobs
+     *            The store for the CLOB and BLOB columns.
+     * @param zone
+     *            The time zone of the <code>TIMESTAMP</code> values without a
+     *            time zone.
+     * @return The plan for the results.
+     * @throws SQLException
+     *             On a failure to read the metadata.
+     * @throws IllegalStateException
+     *             If a column's SQL type is not supported.
+     */
+    public static ColumnPlan create(final ResultSetMetaData md,
+            final Decimals decimals, final LobStore lobs, final TimeZone zone)
+            throws SQLException {
+        final Column[] columns = new Column[md.getColumnCount()];
+        for (int i = 0; i < columns.length; ++i) {
+            final int index = i + 1;
+            final int type = md.getColumnType(index);
+            final String name = md.getColumnName(index);
+            if ((type == Types.DECIMAL) || (type == Types.NUMERIC)) {
+                columns[i] = decimal(name, index, md.getPrecision(index),
+                        md.getScale(index), decimals);
+            }
+            else {
+                columns[i] = column(type, name, index, lobs, zone);
+            }
+        }
+        return new ColumnPlan(columns);
+    }
+
+    /**
+     * Creates the column for the SQL type.
+     *
+     * @param columnType
+     *            The type for the column.
+     * @param name
+     *            The name of the column and the document field.
+     * @param index
+     *            The index of the column.
+     * @param lobs
+     *            The store for the CLOB and BLOB columns.
+     * @param zone
+     *            The time zone of the <code>TIMESTAMP</code> values without a
+     *            time zone.
+     * @return The column.
+     * @throws IllegalStateException
+     *             If the SQL type is not supported.
+     */
+    private static Column column(final int columnType, final String name,
+            final int index, final LobStore lobs, final TimeZone zone) {
+        switch (columnType) {
+        // Boolean
+        case Types.BIT:
+        case Types.BOOLEAN:
+            return new BooleanColumn(name, index);
+
+            // String
+        case Types.CHAR:
+        case Types.LONGNVARCHAR:
+        case Types.VARCHAR:
+        case Types.LONGVARCHAR:
+        case Types.NCHAR:
+        case Types.NVARCHAR:
+            return new StringColumn(name, index);
+
+        case Types.CLOB:
+        case Types.NCLOB:
+            return new ClobColumn(name, index, lobs);
+
+            // Double
+        case Types.REAL:
+        case Types.DOUBLE:
+        case Types.FLOAT:
+            return new DoubleColumn(name, index);
+
+            // Integer/Long
+        case Types.INTEGER:
+        case Types.ROWID:
+        case Types.TINYINT:
+        case Types.SMALLINT:
+        case Types.BIGINT:
+            return new LongColumn(name, index);
+
+            // Date / Time
+        case Types.DATE:
+            return new DateColumn(name, index, UTC);
+        case Types.TIME:
+            return new TimeColumn(name, index, UTC);
+        case Types.TIME_WITH_TIMEZONE:
+            return new TimeColumn(name, index, null);
+        case Types.TIMESTAMP:
+            return new TimestampColumn(name, index, zone);
+        case Types.TIMESTAMP_WITH_TIMEZONE:
+            return new TimestampColumn(name, index, null);
+
+            // Bytes
+        case Types.VARBINARY:
+        case Types.LONGVARBINARY:
+        case Types.BINARY:
+            return new BinaryColumn(name, index);
+
+        case Types.BLOB:
+            return new BlobColumn(name, index, lobs);
+
+            // Unsupported types.
+        case Types.DATALINK:
+        case Types.DISTINCT:
+        case Types.OTHER:
+        case Types.REF:
+        case Types.REF_CURSOR:
+        case Types.SQLXML:
+        case Types.STRUCT:
+        case Types.ARRAY:
+            throw new IllegalStateException("Unsupported SQL Type: "
+                    + columnType);
+
+            // Null and any unknown types.
+        case Types.NULL:
+        default:
+            return new NullColumn(name, index);
+        }
+    }
+
+    /**
+     * Creates the column for a <code>DECIMAL</code> or <code>NUMERIC</code>
+     * column.
+     *
+     * @param name
+     *            The name of the column and the document field.
+     * @param index
+     *            The index of the column.
+     * @param precision
+     *            The number of digits in the column.
+     * @param scale
+     *            The number of digits after the decimal point.
+     * @param decimals
+     *            How to add the column if it is not an integer.
+     * @return The column.
+     */
+    private static Column decimal(final String name, final int index,
+            final int precision, final int scale, final Decimals decimals) {
+        // A long holds any 18 digit integer.
+        if ((scale == 0) && (0 < precision) && (precision <= 18)) {
+            return new LongColumn(name, index);
+        }
+
+        switch (decimals) {
+        case DOUBLE:
+            return new DoubleColumn(name, index);
+        case SCALED:
+            return new ScaledColumn(name, index, scale);
+        case STRING:
+        default:
+            return new DecimalStringColumn(name, index);
+        }
+    }
+
+    /** The columns in the order of the query's results. */
+    private final Column[] myColumns;
+
+    /**
+     * Creates a new ColumnPlan.
+     *
+     * @param columns
+     *            The columns in the order of the query's results.
+     */
+    private ColumnPlan(final Column[] columns) {
+        myColumns = columns;
+    }
+
+    /**
+     * Adds a field to the builder for each column of the current row.
+     *
+     * @param rs
+     *            The results positioned on the row.
+     * @param builder
+     *            The builder for the row's document.
+     * @throws SQLException
+     *             On a failure to read a column.
+     */
+    public void append(final ResultSet rs, final DocumentBuilder builder)
+            throws SQLException {
+        for (final Column column : myColumns) {
+            column.append(rs, builder);
+        }
+    }
+
+    /**
+     * Returns the number of columns.
+     *
+     * @return The number of columns.
+     */
+    public int getColumnCount() {
+        return myColumns.length;
+    }
+
+    /**
+     * Reads a column of the current row and adds it as a field.
+     *
+     * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+     */
+    protected static abstract class Column {
+
+        /** The index of the column. */
+        protected final int myIndex;
+
+        /** The name of the column and the document field. */
+        protected final String myName;
+
+        /**
+         * Creates a new Column.
+         *
+         * @param name
+         *            The name of the column and the document field.
+         * @param index
+         *            The index of the column.
+         */
+        protected Column(final String name, final int index) {
+            myName = name;
+            myIndex = index;
+        }
+
+        /**
+         * Reads the column of the current row and adds it to the builder.
+         *
+         * @param rs
+         *            The results positioned on the row.
+         * @param builder
+         *            The builder for the row's document.
+         * @throws SQLException
+         *             On a failure to read the column.
+         */
+        public abstract void append(ResultSet rs, DocumentBuilder builder)
+                throws SQLException;
+    }
+
+    /**
+     * How to add <code>DECIMAL</code> and <code>NUMERIC</code> values that are
+     * not integers.
+     *
+     * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+     */
+    public static enum Decimals {
+        /** Add the value as a double. May lose precision. */
+        DOUBLE,
+
+        /**
+         * Add the value times 10^scale of the column as a long. Exact but
+         * fails for values that do not fit in a long.
+         */
+        SCALED,
+
+        /** Add the value as its exact, plain, string. */
+        STRING;
+    }
+
+    /**
+     * A binary column.
+     *
+     * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+     */
+    private static final class BinaryColumn extends Column {
+
+        /**
+         * Creates a new BinaryColumn.
+         *
+         * @param name
+         *            The name of the column and the document field.
+         * @param index
+         *            The index of the column.
+         */
+        public BinaryColumn(final String name, final int index) {
+            super(name, index);
+        }
+
+        /**
+         * {@inheritDoc}
+         * <p>
+         * Overridden to add the column's bytes.
+         * </p>
+         */
+        @Override
+        public void append(final ResultSet rs, final DocumentBuilder builder)
+                throws SQLException {
+            final byte[] value = rs.getBytes(myIndex);
+            if (value == null) {
+                builder.addNull(myName);
+            }
+            else {
+                builder.addBinary(myName, value);
+            }
+        }
+    }
+
+    /**
+     * A BLOB column.
+     *
+     * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+     */
+    private static final class BlobColumn extends Column {
+
+        /** The store for the column's values. */
+        private final LobStore myLobs;
+
+        /**
+         * Creates a new BlobColumn.
+         *
+         * @param name
+         *            The name of the column and the document field.
+         * @param index
+         *            The index of the column.
+         * @param lobs
+         *            The store for the column's values.
+         */
+        public BlobColumn(final String name, final int index,
+                final LobStore lobs) {
+            super(name, index);
+            myLobs = lobs;
+        }
+
+        /**
+         * {@inheritDoc}
+         * <p>
+         * Overridden to stream the column's bytes to the {@link LobStore}.
+         * </p>
+         */
+        @Override
+        public void append(final ResultSet rs, final DocumentBuilder builder)
+                throws SQLException {
+            myLobs.addBlob(builder, myName, rs.getBinaryStream(myIndex));
+        }
+    }
+
+    /**
+     * A boolean column.
+     *
+     * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+     */
+    private static final class BooleanColumn extends Column {
+
+        /**
+         * Creates a new BooleanColumn.
+         *
+         * @param name
+         *            The name of the column and the document field.
+         * @param index
+         *            The index of the column.
+         */
+        public BooleanColumn(final String name, final int index) {
+            super(name, index);
+        }
+
+        /**
+         * {@inheritDoc}
+         * <p>
+         * Overridden to add the column as a boolean or a null.
+         * </p>
+         */
+        @Override
+        public void append(final ResultSet rs, final DocumentBuilder builder)
+                throws SQLException {
+            final boolean value = rs.getBoolean(myIndex);
+            if (rs.wasNull()) {
+                builder.addNull(myName);
+            }
+            else {
+                builder.addBoolean(myName, value);
+            }
+        }
+    }
+
+    /**
+     * A CLOB column.
+     *
+     * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+     */
+    private static final class ClobColumn extends Column {
+
+        /** The store for the column's values. */
+        private final LobStore myLobs;
+
+        /**
+         * Creates a new ClobColumn.
+         *
+         * @param name
+         *            The name of the column and the document field.
+         * @param index
+         *            The index of the column.
+         * @param lobs
+         *            The store for the column's values.
+         */
+        public ClobColumn(final String name, final int index,
+                final LobStore lobs) {
+            super(name, index);
+            myLobs = lobs;
+        }
+
+        /**
+         * {@inheritDoc}
+         * <p>
+         * Overridden to stream the column's characters to the
+         * {@link LobStore}.
+         * </p>
+         */
+        @Override
+        public void append(final ResultSet rs, final DocumentBuilder builder)
+                throws SQLException {
+            myLobs.addClob(builder, myName, rs.getCharacterStream(myIndex));
+        }
+    }
+
+    /**
+     * A date column.
+     *
+     * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+     */
+    private static final class DateColumn extends Column {
+
+        /**
+         * The calendar for the column's time zone. Each plan is used by a
+         * single thread so the calendar is not shared.
+         */
+        private final Calendar myCalendar;
+
+        /**
+         * Creates a new DateColumn.
+         *
+         * @param name
+         *            The name of the column and the document field.
+         * @param index
+         *            The index of the column.
+         * @param zone
+         *            The time zone for the dates.
+         */
+        public DateColumn(final String name, final int index,
+                final TimeZone zone) {
+            super(name, index);
+            myCalendar = Calendar.getInstance(zone);
+        }
+
+        /**
+         * {@inheritDoc}
+         * <p>
+         * Overridden to add the column as a date at midnight in the column's
+         * time zone.
+         * </p>
+         */
+        @Override
+        public void append(final ResultSet rs, final DocumentBuilder builder)
+                throws SQLException {
+            final java.sql.Date value = rs.getDate(myIndex, myCalendar);
+            if (value == null) {
+                builder.addNull(myName);
+            }
+            else {
+                builder.addTimestamp(myName, value.getTime());
+            }
+        }
+    }
+
+    /**
+     * A decimal column added as its exact string value.
+     *
+     * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+     */
+    private static final class DecimalStringColumn extends Column {
+
+        /**
+         * Creates a new DecimalStringColumn.
+         *
+         * @param name
+         *            The name of the column and the document field.
+         * @param index
+         *            The index of the column.
+         */
+        public DecimalStringColumn(final String name, final int index) {
+            super(name, index);
+        }
+
+        /**
+         * {@inheritDoc}
+         * <p>
+         * Overridden to add the column as a plain, non-exponent, string.
+         * </p>
+         */
+        @Override
+        public void append(final ResultSet rs, final DocumentBuilder builder)
+                throws SQLException {
+            final BigDecimal value = rs.getBigDecimal(myIndex);
+            if (value == null) {
+                builder.addNull(myName);
+            }
+            else {
+                builder.addString(myName, value.toPlainString());
+            }
+        }
+    }
+
+    /**
+     * A floating point column.
+     *
+     * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+     */
+    private static final class DoubleColumn extends Column {
+
+        /**
+         * Creates a new DoubleColumn.
+         *
+         * @param name
+         *            The name of the column and the document field.
+         * @param index
+         *            The index of the column.
+         */
+        public DoubleColumn(final String name, final int index) {
+            super(name, index);
+        }
+
+        /**
+         * {@inheritDoc}
+         * <p>
+         * Overridden to add the column as a double or a null.
+         * </p>
+         */
+        @Override
+        public void append(final ResultSet rs, final DocumentBuilder builder)
+                throws SQLException {
+            final double value = rs.getDouble(myIndex);
+            if (rs.wasNull()) {
+                builder.addNull(myName);
+            }
+            else {
+                builder.addDouble(myName, value);
+            }
+        }
+    }
+
+    /**
+     * An integer column.
+     *
+     * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+     */
+    private static final class LongColumn extends Column {
+
+        /**
+         * Creates a new LongColumn.
+         *
+         * @param name
+         *            The name of the column and the document field.
+         * @param index
+         *            The index of the column.
+         */
+        public LongColumn(final String name, final int index) {
+            super(name, index);
+        }
+
+        /**
+         * {@inheritDoc}
+         * <p>
+         * Overridden to add the column as a long or a null.
+         * </p>
+         */
+        @Override
+        public void append(final ResultSet rs, final DocumentBuilder builder)
+                throws SQLException {
+            final long value = rs.getLong(myIndex);
+            if (rs.wasNull()) {
+                builder.addNull(myName);
+            }
+            else {
+                builder.addLong(myName, value);
+            }
+        }
+    }
+
+    /**
+     * A column that is always added as a null.
+     *
+     * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+     */
+    private static final class NullColumn extends Column {
+
+        /**
+         * Creates a new NullColumn.
+         *
+         * @param name
+         *            The name of the column and the document field.
+         * @param index
+         *            The index of the column.
+         */
+        public NullColumn(final String name, final int index) {
+            super(name, index);
+        }
+
+        /**
+         * {@inheritDoc}
+         * <p>
+         * Overridden to add a null.
+         * </p>
+         */
+        @Override
+        public void append(final ResultSet rs, final DocumentBuilder builder) {
+            builder.addNull(myName);
+        }
+    }
+
+    /**
+     * A decimal column added as a long of the value times 10^scale.
+     *
+     * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+     */
+    private static final class ScaledColumn extends Column {
+
+        /** The number of digits after the decimal point. */
+        private final int myScale;
+
+        /**
+         * Creates a new ScaledColumn.
+         *
+         * @param name
+         *            The name of the column and the document field.
+         * @param index
+         *            The index of the column.
+         * @param scale
+         *            The number of digits after the decimal point.
+         */
+        public ScaledColumn(final String name, final int index,
+                final int scale) {
+            super(name, index);
+            myScale = scale;
+        }
+
+        /**
+         * {@inheritDoc}
+         * <p>
+         * Overridden to add the column as a scaled long.
+         * </p>
+         *
+         * @throws IllegalStateException
+         *             If the value has more digits after the decimal point
+         *             than the column's scale or does not fit in a long.
+         */
+        @Override
+        public void append(final ResultSet rs, final DocumentBuilder builder)
+                throws SQLException {
+            final BigDecimal value = rs.getBigDecimal(myIndex);
+            if (value == null) {
+                builder.addNull(myName);
+            }
+            else {
+                try {
+                    builder.addLong(myName, value.movePointRight(myScale)
+                            .longValueExact());
+                }
+                catch (final ArithmeticException error) {
+                    throw new IllegalStateException("The value " + value
+                            + " of '" + myName
+                            + "' cannot be scaled to a long.", error);
+                }
+            }
+        }
+    }
+
+    /**
+     * A character column.
+     *
+     * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+     */
+    private static final class StringColumn extends Column {
+
+        /**
+         * Creates a new StringColumn.
+         *
+         * @param name
+         *            The name of the column and the document field.
+         * @param index
+         *            The index of the column.
+         */
+        public StringColumn(final String name, final int index) {
+            super(name, index);
+        }
+
+        /**
+         * {@inheritDoc}
+         * <p>
+         * Overridden to add the column as a string.
+         * </p>
+         */
+        @Override
+        public void append(final ResultSet rs, final DocumentBuilder builder)
+                throws SQLException {
+            final String value = rs.getString(myIndex);
+            if (value == null) {
+                builder.addNull(myName);
+            }
+            else {
+                builder.addString(myName, value);
+            }
+        }
+    }
+
+    /**
+     * A time column.
+     *
+     * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+     */
+    private static final class TimeColumn extends Column {
+
+        /**
+         * The calendar for the column's time zone or null if the values have
+         * a time zone. Each plan is used by a single thread so the calendar
+         * is not shared.
+         */
+        private final Calendar myCalendar;
+
+        /**
+         * Creates a new TimeColumn.
+         *
+         * @param name
+         *            The name of the column and the document field.
+         * @param index
+         *            The index of the column.
+         * @param zone
+         *            The time zone for the times or null if the values have a
+         *            time zone.
+         */
+        public TimeColumn(final String name, final int index,
+                final TimeZone zone) {
+            super(name, index);
+            myCalendar = (zone == null) ? null : Calendar.getInstance(zone);
+        }
+
+        /**
+         * {@inheritDoc}
+         * <p>
+         * Overridden to add the column as a date on 1970-01-01.
+         * </p>
+         */
+        @Override
+        public void append(final ResultSet rs, final DocumentBuilder builder)
+                throws SQLException {
+            final Time value = (myCalendar == null) ? rs.getTime(myIndex) : rs
+                    .getTime(myIndex, myCalendar);
+            if (value == null) {
+                builder.addNull(myName);
+            }
+            else {
+                builder.addTimestamp(myName, value.getTime());
+            }
+        }
+    }
+
+    /**
+     * A timestamp column.
+     *
+     * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+     */
+    private static final class TimestampColumn extends Column {
+
+        /**
+         * The calendar for the column's time zone or null if the values have
+         * a time zone. Each plan is used by a single thread so the calendar
+         * is not shared.
+         */
+        private final Calendar myCalendar;
+
+        /**
+         * Creates a new TimestampColumn.
+         *
+         * @param name
+         *            The name of the column and the document field.
+         * @param index
+         *            The index of the column.
+         * @param zone
+         *            The time zone for the timestamps or null if the values
+         *            have a time zone.
+         */
+        public TimestampColumn(final String name, final int index,
+                final TimeZone zone) {
+            super(name, index);
+            myCalendar = (zone == null) ? null : Calendar.getInstance(zone);
+        }
+
+        /**
+         * {@inheritDoc}
+         * <p>
+         * Overridden to add the column as a date with millisecond precision.
+         * </p>
+         */
+        @Override
+        public void append(final ResultSet rs, final DocumentBuilder builder)
+                throws SQLException {
+            final Timestamp value = (myCalendar == null) ? rs
+                    .getTimestamp(myIndex) : rs.getTimestamp(myIndex,
+                    myCalendar);
+            if (value == null) {
+                builder.addNull(myName);
+            }
+            else {
+                // getTime() includes the milliseconds of the nanoseconds.
+                builder.addTimestamp(myName, value.getTime());
+            }
+        }
+    }
+}
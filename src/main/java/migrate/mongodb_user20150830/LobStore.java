@@ -0,0 +1,370 @@
+/*
+ * #%L
+ * LobStore.java - mongodb-async-examples - Allanbank Consulting, Inc.
+ * %%
+ * Copyright (C) 2015 Allanbank Consulting, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+package migrate.mongodb_user20150830;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Date;
+
+import com.allanbank.mongodb.MongoDatabase;
+import com.allanbank.mongodb.bson.builder.BuilderFactory;
+import com.allanbank.mongodb.bson.builder.DocumentBuilder;
+import com.allanbank.mongodb.bson.element.ObjectId;
+
+/**
+ * Streams CLOB and BLOB values into documents.
+ * <p>
+ * Values up to the inline limit are added to the row's document as a string
+ * or binary field. Larger values are written to a GridFS style bucket: the
+ * value is split into <code>&lt;bucket&gt;.chunks</code> documents of
+ * {@link #CHUNK_SIZE} bytes as it is read and a
+ * <code>&lt;bucket&gt;.files</code> document is written once the length is
+ * known. The row's field holds the <code>_id</code> of the files document.
+ * CLOBs are stored as UTF-8. At most the inline limit plus one chunk of a
+ * value is held in memory.
+ * </p>
+ * <p>
+ * A store created without a database reads and chunks the large values but
+ * discards them, e.g. to profile the conversion without writing.
+ * </p>
+ * <p>
+ * Instances are not thread safe. Each extract thread uses its own store.
+ * </p>
+ *
+ * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+ */
+public class LobStore {
+
+    /** The size of each chunk. The same as the GridFS default. */
+    public static final int CHUNK_SIZE = 255 * 1024;
+
+    /** The writer for the chunk documents or null to discard them. */
+    private final BatchWriter myChunks;
+
+    /** The writer for the files documents or null to discard them. */
+    private final BatchWriter myFiles;
+
+    /** The maximum number of bytes or characters to add inline. */
+    private final int myInlineLimit;
+
+    /**
+     * Creates a new LobStore that discards the large values.
+     *
+     * @param inlineLimit
+     *            The maximum number of bytes or characters to add inline.
+     */
+    public LobStore(final int inlineLimit) {
+        myInlineLimit = inlineLimit;
+        myChunks = null;
+        myFiles = null;
+    }
+
+    /**
+     * Creates a new LobStore.
+     *
+     * @param database
+     *            The database for the bucket.
+     * @param bucket
+     *            The name of the bucket for the large values.
+     * @param inlineLimit
+     *            The maximum number of bytes or characters to add inline.
+     * @param maxPending
+     *            The maximum number of chunk batches waiting for an
+     *            acknowledgement.
+     * @param throttle
+     *            The throttle for the writes or null to write as fast as
+     *            possible.
+     */
+    public LobStore(final MongoDatabase database, final String bucket,
+            final int inlineLimit, final int maxPending, final Throttle throttle) {
+        myInlineLimit = inlineLimit;
+        // Keep the chunk batches small so the pending chunks are bounded.
+        myChunks = new BatchWriter(database.getCollection(bucket + ".chunks"),
+                Integer.MAX_VALUE, 4L * CHUNK_SIZE, maxPending, throttle);
+        myFiles = new BatchWriter(database.getCollection(bucket + ".files"),
+                1000, 1024 * 1024, maxPending, throttle);
+    }
+
+    /**
+     * Adds the BLOB to the builder either inline or as a reference to the
+     * stored value.
+     *
+     * @param builder
+     *            The builder for the row's document.
+     * @param name
+     *            The name of the field.
+     * @param in
+     *            The stream for the BLOB or null if the value is null.
+     * @throws SQLException
+     *             On a failure to read the BLOB.
+     */
+    public void addBlob(final DocumentBuilder builder, final String name,
+            final InputStream in) throws SQLException {
+        if (in == null) {
+            builder.addNull(name);
+            return;
+        }
+
+        try {
+            byte[] buffer = new byte[Math.min(myInlineLimit, CHUNK_SIZE) + 1];
+            int length = 0;
+            int read = 0;
+            while ((length <= myInlineLimit)
+                    && ((read = in.read(buffer, length, buffer.length - length)) >= 0)) {
+                length += read;
+                if ((length == buffer.length) && (length <= myInlineLimit)) {
+                    buffer = Arrays.copyOf(buffer,
+                            Math.min(myInlineLimit + 1, buffer.length * 2));
+                }
+            }
+
+            if (length <= myInlineLimit) {
+                builder.addBinary(name, Arrays.copyOf(buffer, length));
+                return;
+            }
+
+            final Chunker chunker = new Chunker();
+            chunker.write(buffer, length);
+            final byte[] chunk = new byte[CHUNK_SIZE];
+            while ((read = in.read(chunk)) >= 0) {
+                chunker.write(chunk, read);
+            }
+            builder.add(name, chunker.finish("application/octet-stream"));
+        }
+        catch (final IOException ioe) {
+            throw new SQLException("Could not read the BLOB for '" + name
+                    + "'.", ioe);
+        }
+        finally {
+            close(in);
+        }
+    }
+
+    /**
+     * Adds the CLOB to the builder either inline or as a reference to the
+     * stored value.
+     *
+     * @param builder
+     *            The builder for the row's document.
+     * @param name
+     *            The name of the field.
+     * @param in
+     *            The reader for the CLOB or null if the value is null.
+     * @throws SQLException
+     *             On a failure to read the CLOB.
+     */
+    public void addClob(final DocumentBuilder builder, final String name,
+            final Reader in) throws SQLException {
+        if (in == null) {
+            builder.addNull(name);
+            return;
+        }
+
+        try {
+            final StringBuilder inline = new StringBuilder();
+            final char[] buffer = new char[Math.min(myInlineLimit + 1,
+                    CHUNK_SIZE)];
+            int read = 0;
+            while ((inline.length() <= myInlineLimit)
+                    && ((read = in.read(buffer)) >= 0)) {
+                inline.append(buffer, 0, read);
+            }
+
+            if (inline.length() <= myInlineLimit) {
+                builder.addString(name, inline.toString());
+                return;
+            }
+
+            final Chunker chunker = new Chunker();
+            String pending = inline.toString();
+            while (!pending.isEmpty()) {
+                // Never split a surrogate pair between two encodings. At the
+                // end a lone high surrogate is encoded (as a replacement).
+                int end = pending.length();
+                if ((read >= 0)
+                        && Character.isHighSurrogate(pending.charAt(end - 1))) {
+                    end -= 1;
+                }
+                final byte[] bytes = pending.substring(0, end).getBytes(
+                        StandardCharsets.UTF_8);
+                chunker.write(bytes, bytes.length);
+
+                pending = pending.substring(end);
+                if (read >= 0) {
+                    read = in.read(buffer);
+                    if (read > 0) {
+                        pending += new String(buffer, 0, read);
+                    }
+                }
+            }
+
+            builder.add(name, chunker.finish("text/plain; charset=UTF-8"));
+        }
+        catch (final IOException ioe) {
+            throw new SQLException("Could not read the CLOB for '" + name
+                    + "'.", ioe);
+        }
+        finally {
+            close(in);
+        }
+    }
+
+    /**
+     * Sends the pending chunks and files documents and waits for them to be
+     * acknowledged.
+     */
+    public void close() {
+        if (myChunks != null) {
+            myChunks.close();
+            myFiles.close();
+        }
+    }
+
+    /**
+     * Returns the number of chunk and files documents that failed to be
+     * written.
+     *
+     * @return The number of chunk and files documents that failed to be
+     *         written.
+     */
+    public long getFailed() {
+        return (myChunks == null) ? 0 : (myChunks.getFailed() + myFiles
+                .getFailed());
+    }
+
+    /**
+     * Closes the LOB's stream, ignoring any error.
+     *
+     * @param in
+     *            The stream to close.
+     */
+    private void close(final Closeable in) {
+        try {
+            in.close();
+        }
+        catch (final IOException ignore) {
+            // Nothing more to read.
+        }
+    }
+
+    /**
+     * Splits a value into chunk documents as its bytes are written.
+     *
+     * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+     */
+    private final class Chunker {
+
+        /** The bytes of the chunk being filled. */
+        private final byte[] myChunk;
+
+        /** The number of bytes in the current chunk. */
+        private int myFill;
+
+        /** The id of the files document. */
+        private final ObjectId myId;
+
+        /** The total number of bytes written. */
+        private long myLength;
+
+        /** The number of the next chunk. */
+        private int myNumber;
+
+        /**
+         * Creates a new Chunker.
+         */
+        public Chunker() {
+            myId = new ObjectId();
+            myChunk = new byte[CHUNK_SIZE];
+            myFill = 0;
+            myLength = 0;
+            myNumber = 0;
+        }
+
+        /**
+         * Writes the files document and returns its id.
+         *
+         * @param contentType
+         *            The type of the value.
+         * @return The id of the files document.
+         */
+        public ObjectId finish(final String contentType) {
+            if (myFill > 0) {
+                send();
+            }
+
+            final DocumentBuilder file = BuilderFactory.start();
+            file.add("_id", myId);
+            file.add("length", myLength);
+            file.add("chunkSize", CHUNK_SIZE);
+            file.add("uploadDate", new Date());
+            file.add("contentType", contentType);
+            if (myFiles != null) {
+                myFiles.add(file.build());
+            }
+
+            return myId;
+        }
+
+        /**
+         * Appends the bytes, sending each chunk as it is filled.
+         *
+         * @param bytes
+         *            The bytes to append.
+         * @param length
+         *            The number of bytes to append.
+         */
+        public void write(final byte[] bytes, final int length) {
+            int offset = 0;
+            while (offset < length) {
+                final int count = Math.min(length - offset, CHUNK_SIZE
+                        - myFill);
+                System.arraycopy(bytes, offset, myChunk, myFill, count);
+                myFill += count;
+                offset += count;
+                if (myFill == CHUNK_SIZE) {
+                    send();
+                }
+            }
+            myLength += length;
+        }
+
+        /**
+         * Sends the current chunk.
+         */
+        private void send() {
+            final DocumentBuilder chunk = BuilderFactory.start();
+            chunk.add("files_id", myId);
+            chunk.add("n", myNumber);
+            chunk.add("data", Arrays.copyOf(myChunk, myFill));
+            if (myChunks != null) {
+                myChunks.add(chunk.build());
+            }
+
+            myNumber += 1;
+            myFill = 0;
+        }
+    }
+}
@@ -20,19 +20,38 @@
 
 package migrate.mongodb_user20150830;
 
+import java.io.File;
 import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
-import java.sql.Types;
+import java.sql.Timestamp;
+import java.time.DateTimeException;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
 import java.util.Date;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.allanbank.mongodb.MongoClient;
 import com.allanbank.mongodb.MongoCollection;
@@ -40,13 +59,122 @@ import com.allanbank.mongodb.MongoDatabase;
 import com.allanbank.mongodb.MongoDbUri;
 import com.allanbank.mongodb.MongoFactory;
 import com.allanbank.mongodb.bson.Document;
+import com.allanbank.mongodb.bson.Element;
+import com.allanbank.mongodb.bson.builder.ArrayBuilder;
 import com.allanbank.mongodb.bson.builder.BuilderFactory;
 import com.allanbank.mongodb.bson.builder.DocumentBuilder;
+import com.allanbank.mongodb.bson.element.DocumentElement;
 import com.allanbank.mongodb.builder.Find;
 import com.allanbank.mongodb.builder.Sort;
 
 /**
  * Utility to migrate rows from a JDBC table into the MongoDB collection.
+ * <p>
+ * By default the table is read with a single query. With
+ * <code>--partition-column</code> the table is split into
+ * <code>--partitions</code> ranges of the column's values and each range is
+ * read by its own thread and JDBC connection. The column must be an integer or
+ * date/time column. The range is bounded by <code>--partition-min</code> and
+ * <code>--partition-max</code> or, if not provided, the column's minimum and
+ * maximum values. The first range also reads the rows below the minimum and
+ * with a <code>NULL</code> value and the last range the rows above the
+ * maximum so every row is read exactly once.
+ * </p>
+ * <p>
+ * The rows are inserted using {@link BatchWriter batched writes} of up to
+ * <code>--batch-size</code> rows or <code>--batch-bytes</code> bytes. Each
+ * extract thread has up to <code>--max-pending</code> batches waiting for an
+ * acknowledgement.
+ * </p>
+ * <p>
+ * <code>--max-rate</code> limits the documents written per second across all
+ * of the threads. <code>--target-latency</code> adapts the rate to keep the
+ * 99th percentile write acknowledgement latency, in milliseconds, at or below
+ * the target so the migration can run against a live cluster. See
+ * {@link Throttle}.
+ * </p>
+ * <p>
+ * The rows are streamed from the database using a forward only, read only
+ * cursor that fetches <code>--fetch-size</code> rows at a time so the
+ * driver does not buffer the whole table before returning the first row. The
+ * PostgreSQL driver only uses a cursor outside of auto-commit so auto-commit is
+ * disabled for it. The MySQL and MariaDB drivers stream row by row when the
+ * fetch size is {@link Integer#MIN_VALUE} unless <code>useCursorFetch</code>
+ * is enabled on the JDBC URI. A fetch size of zero uses the driver's default.
+ * </p>
+ * <p>
+ * <code>DECIMAL</code> and <code>NUMERIC</code> values that are not integers
+ * are added as exact strings by default. <code>--decimals=scaled</code> adds
+ * them as longs of the value times 10^scale and <code>--decimals=double</code>
+ * as doubles, which may lose precision. <code>CLOB</code> and
+ * <code>BLOB</code> values of up to <code>--lob-inline</code> characters or
+ * bytes are added to the row's document. Larger values are streamed in
+ * chunks to the <code>--lob-bucket</code> GridFS bucket and the row's field
+ * holds the <code>_id</code> of the value's files document.
+ * </p>
+ * <p>
+ * Date and time values are added with millisecond precision as UTC dates.
+ * <code>TIMESTAMP</code> values without a time zone are read as being in the
+ * <code>--timezone</code> zone, by default the JVM's zone. See
+ * {@link ColumnPlan}.
+ * </p>
+ * <p>
+ * With <code>--key</code> the key column(s) become the document's
+ * <code>_id</code> and the rows are saved (upserted) instead of inserted so
+ * the migration can be re-run without duplicating documents.
+ * </p>
+ * <p>
+ * <code>--sync</code> keeps the collection in sync with the table. The key
+ * defaults to the table's primary key. The first run loads the whole table;
+ * each later poll, every <code>--interval</code> seconds, applies the changes
+ * since the high-water mark and then saves the mark in the
+ * <code>--sync-state</code> collection once all of the writes are
+ * acknowledged. A poll with failed writes is retried from the same mark. The
+ * changes are found either by:
+ * <ul>
+ * <li><code>--changes=table</code>: a change table maintained by triggers on
+ * the table with an increasing <code>--change-column</code> (e.g. a sequence
+ * or identity) and the key column(s) of each inserted, updated or deleted
+ * row. Each changed key's current row is read and saved or, if the row no
+ * longer exists, the document deleted.</li>
+ * <li><code>--field=column</code>: an increasing last-modified column. The
+ * rows from the last mark, inclusive so rows sharing the mark's value are not
+ * missed, are saved. Deletes are not seen in this mode.</li>
+ * </ul>
+ * The mark is read with <code>MAX()</code> before each poll so the column(s)
+ * should be indexed.
+ * </p>
+ * <p>
+ * The mark assumes a change's value becomes visible no later than any higher
+ * value. A transaction that took a lower sequence value or timestamp but
+ * commits after the mark has passed it is otherwise missed.
+ * <code>--overlap=amount</code> re-reads that far behind the mark on every
+ * poll, in sequence values for a numeric column or seconds for a date column.
+ * Re-applying a change is harmless. A change that commits more than the
+ * overlap behind the mark is still missed, so the overlap should exceed the
+ * longest transaction that writes the table.
+ * </p>
+ * <p>
+ * <code>--plan=file</code> migrates the tables of a {@link MigrationPlan}
+ * instead of a single table. Up to <code>--threads</code> tables are migrated
+ * concurrently, each into its own collection. Child tables are embedded as an
+ * array in their parent's documents with a sorted merge join: the parent is
+ * read ordered by its key and each child, on its own connection, ordered by
+ * its join column so every child row is matched as the two streams advance
+ * together. The keys should be integer or date columns, or strings with a
+ * binary collation, so the database and Java agree on their order. Child
+ * rows without a parent are skipped and counted.
+ * </p>
+ * <p>
+ * <code>--profile</code> is a dry run that measures where the time goes. It
+ * reads up to <code>--sample</code> rows of the table three times: extract
+ * only, reading every column; convert only, building each document and then
+ * discarding it; and the full pipeline, writing to a scratch collection that is
+ * dropped afterwards. Each pass reports its rows/second, MB/second, average
+ * document size and the share of its time spent fetching from the database,
+ * converting and waiting on MongoDB. The first pass may also warm the
+ * database's cache.
+ * </p>
  *
  * @see <a href=
  *      "https://groups.google.com/d/msg/mongodb-user/iFzLQsxio7A/bafIHrpUBgAJ">
@@ -84,21 +212,189 @@ public class MigrateFromJdbc {
         }
     }
 
+    /** The default maximum number of bytes in a batch. */
+    public static final long DEFAULT_BATCH_BYTES = 8 * 1024 * 1024;
+
+    /** The default maximum number of rows in a batch. */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    /** The default change table column holding the order of the changes. */
+    public static final String DEFAULT_CHANGE_COLUMN = "change_id";
+
+    /** The default way to add decimal values. */
+    public static final ColumnPlan.Decimals DEFAULT_DECIMALS = ColumnPlan.Decimals.STRING;
+
+    /** The default number of rows to fetch from the database at a time. */
+    public static final int DEFAULT_FETCH_SIZE = 1000;
+
+    /** The default number of seconds between each sync poll. */
+    public static final int DEFAULT_INTERVAL = 5;
+
+    /** The default maximum size of a CLOB or BLOB added to the document. */
+    public static final int DEFAULT_LOB_INLINE = 1024 * 1024;
+
+    /** The default number of batches waiting for an acknowledgement. */
+    public static final int DEFAULT_MAX_PENDING = 8;
+
+    /** The default number of partitions to read concurrently. */
+    public static final int DEFAULT_PARTITIONS = 4;
+
+    /** The default number of rows read by each profiling pass. */
+    public static final int DEFAULT_SAMPLE = 100000;
+
+    /** The default collection for the sync high-water marks. */
+    public static final String DEFAULT_SYNC_STATE = "migrate_sync";
+
+    /** The default number of tables of a plan to migrate concurrently. */
+    public static final int DEFAULT_THREADS = 4;
+
+    /** The name of the MongoDB document identifier field. */
+    private static final String ID_FIELD = "_id";
+
+    /** The maximum size of a MongoDB document. */
+    private static final int MAX_DOCUMENT_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * The maximum number of parameters bound to a query. Below the limits of
+     * the common databases, e.g. SQL Server's 2100.
+     */
+    private static final int MAX_PARAMETERS = 1000;
+
+    /** The maximum number of bytes in a batch. */
+    private long myBatchBytes = DEFAULT_BATCH_BYTES;
+
+    /** The maximum number of rows in a batch. */
+    private int myBatchSize = DEFAULT_BATCH_SIZE;
+
+    /** The change table column holding the order of the changes. */
+    private String myChangeColumn = DEFAULT_CHANGE_COLUMN;
+
+    /** The trigger maintained change table or null to poll the table. */
+    private String myChangeTable;
+
+    /** The way to add decimal values. */
+    private ColumnPlan.Decimals myDecimals = DEFAULT_DECIMALS;
+
+    /** The number of documents deleted. */
+    private final AtomicLong myDeleted = new AtomicLong(0);
+
+    /** The number of child rows embedded in their parent's document. */
+    private final AtomicLong myEmbedded = new AtomicLong(0);
+
+    /** The number of rows in batches that failed. */
+    private final AtomicLong myFailed = new AtomicLong(0);
+
+    /**
+     * The number of rows to fetch from the database at a time or zero for the
+     * driver's default.
+     */
+    private int myFetchSize = DEFAULT_FETCH_SIZE;
+
+    /** The number of seconds between each sync poll. */
+    private int myInterval = DEFAULT_INTERVAL;
+
     /** The JDBC Class. */
     private String myJdbcClass;
 
     /** The JDBC URI. */
     private String myJdbcUri;
 
+    /**
+     * The key column(s) for the document's <code>_id</code> or null to insert
+     * the rows with a generated <code>_id</code>.
+     */
+    private String[] myKey;
+
+    /**
+     * The GridFS bucket for large CLOB and BLOB values or null to use
+     * <code>&lt;table&gt;_lobs</code>.
+     */
+    private String myLobBucket;
+
+    /** The maximum size of a CLOB or BLOB added to the document. */
+    private int myLobInline = DEFAULT_LOB_INLINE;
+
+    /** The number of CLOB and BLOB chunk and files documents that failed. */
+    private final AtomicLong myLobsFailed = new AtomicLong(0);
+
+    /**
+     * The maximum number of batches, per extract thread, waiting for an
+     * acknowledgement.
+     */
+    private int myMaxPending = DEFAULT_MAX_PENDING;
+
+    /** The maximum documents written per second or zero for no maximum. */
+    private int myMaxRate;
+
     /** The MongoDB URI. */
     private String myMongoDbUri;
 
+    /** The number of child rows without a parent that were skipped. */
+    private final AtomicLong myOrphans = new AtomicLong(0);
+
+    /**
+     * The amount the sync re-reads behind the high-water mark: sequence values
+     * for a numeric mark or seconds for a date mark.
+     */
+    private long myOverlap;
+
+    /**
+     * The column to partition the table on or null to read the table with a
+     * single query.
+     */
+    private String myPartitionColumn;
+
+    /** The maximum partition column value or null to query for it. */
+    private Object myPartitionMax;
+
+    /** The minimum partition column value or null to query for it. */
+    private Object myPartitionMin;
+
+    /** The number of partitions to read concurrently. */
+    private int myPartitions = DEFAULT_PARTITIONS;
+
+    /** The file with the plan of the tables to migrate or null. */
+    private File myPlan;
+
+    /** True to profile the migration instead of migrating. */
+    private boolean myProfile;
+
+    /** The number of rows read by each profiling pass or zero for all. */
+    private int mySample = DEFAULT_SAMPLE;
+
+    /** True to continuously sync the table's changes. */
+    private boolean mySync;
+
+    /** The collection for the sync high-water marks. */
+    private String mySyncState = DEFAULT_SYNC_STATE;
+
     /** The the name of the JDBC table. Used as the collection name too. */
     private String myTableName;
 
+    /**
+     * The target 99th percentile write latency in milliseconds or zero to not
+     * adapt the write rate.
+     */
+    private long myTargetLatency;
+
+    /** The number of tables of a plan to migrate concurrently. */
+    private int myThreads = DEFAULT_THREADS;
+
+    /** The throttle for the writes or null to write as fast as possible. */
+    private Throttle myThrottle;
+
+    /** The time zone of the <code>TIMESTAMP</code> values without a zone. */
+    private TimeZone myTimeZone = TimeZone.getDefault();
+
     /** The field used to determine if a document is "new". */
     private String myUpdateField;
 
+    /** The number of batches sent. */
+    private final AtomicLong myWrites = new AtomicLong(0);
+
+    /** The number of rows acknowledged. */
+    private final AtomicLong myWritten = new AtomicLong(0);
+
     /**
      * Creates a new MigrateFromJdbc.
      */
@@ -138,6 +434,175 @@ public class MigrateFromJdbc {
             else if (arg.startsWith("--field=")) {
                 myUpdateField = arg.substring("--field=".length());
             }
+            else if (arg.startsWith("--batch-size=")) {
+                try {
+                    myBatchSize = Integer.parseInt(arg
+                            .substring("--batch-size=".length()));
+                }
+                catch (final NumberFormatException nfe) {
+                    throw new IllegalStateException("Invalid batch size: "
+                            + arg);
+                }
+            }
+            else if (arg.startsWith("--batch-bytes=")) {
+                try {
+                    myBatchBytes = Long.parseLong(arg
+                            .substring("--batch-bytes=".length()));
+                }
+                catch (final NumberFormatException nfe) {
+                    throw new IllegalStateException("Invalid batch bytes: "
+                            + arg);
+                }
+            }
+            else if (arg.startsWith("--max-rate=")) {
+                try {
+                    myMaxRate = Integer.parseInt(arg.substring("--max-rate="
+                            .length()));
+                }
+                catch (final NumberFormatException nfe) {
+                    throw new IllegalStateException("Invalid max rate: " + arg);
+                }
+            }
+            else if (arg.startsWith("--target-latency=")) {
+                try {
+                    myTargetLatency = Long.parseLong(arg
+                            .substring("--target-latency=".length()));
+                }
+                catch (final NumberFormatException nfe) {
+                    throw new IllegalStateException("Invalid target latency: "
+                            + arg);
+                }
+            }
+            else if (arg.startsWith("--fetch-size=")) {
+                try {
+                    myFetchSize = Integer.parseInt(arg
+                            .substring("--fetch-size=".length()));
+                }
+                catch (final NumberFormatException nfe) {
+                    throw new IllegalStateException("Invalid fetch size: "
+                            + arg);
+                }
+            }
+            else if (arg.startsWith("--max-pending=")) {
+                try {
+                    myMaxPending = Integer.parseInt(arg
+                            .substring("--max-pending=".length()));
+                }
+                catch (final NumberFormatException nfe) {
+                    throw new IllegalStateException("Invalid max pending: "
+                            + arg);
+                }
+            }
+            else if (arg.startsWith("--decimals=")) {
+                try {
+                    myDecimals = ColumnPlan.Decimals.valueOf(arg.substring(
+                            "--decimals=".length()).toUpperCase(Locale.US));
+                }
+                catch (final IllegalArgumentException iae) {
+                    throw new IllegalStateException("Invalid decimals: " + arg);
+                }
+            }
+            else if (arg.startsWith("--timezone=")) {
+                try {
+                    myTimeZone = TimeZone.getTimeZone(ZoneId.of(arg
+                            .substring("--timezone=".length())));
+                }
+                catch (final DateTimeException dte) {
+                    throw new IllegalStateException("Invalid time zone: " + arg);
+                }
+            }
+            else if (arg.startsWith("--lob-bucket=")) {
+                myLobBucket = arg.substring("--lob-bucket=".length());
+            }
+            else if (arg.startsWith("--lob-inline=")) {
+                try {
+                    myLobInline = Integer.parseInt(arg
+                            .substring("--lob-inline=".length()));
+                }
+                catch (final NumberFormatException nfe) {
+                    throw new IllegalStateException("Invalid LOB inline size: "
+                            + arg);
+                }
+            }
+            else if (arg.startsWith("--key=")) {
+                myKey = arg.substring("--key=".length()).split("\\s*,\\s*");
+            }
+            else if (arg.equals("--sync")) {
+                mySync = true;
+            }
+            else if (arg.startsWith("--changes=")) {
+                myChangeTable = arg.substring("--changes=".length());
+            }
+            else if (arg.startsWith("--change-column=")) {
+                myChangeColumn = arg.substring("--change-column=".length());
+            }
+            else if (arg.startsWith("--interval=")) {
+                try {
+                    myInterval = Integer.parseInt(arg.substring("--interval="
+                            .length()));
+                }
+                catch (final NumberFormatException nfe) {
+                    throw new IllegalStateException("Invalid interval: " + arg);
+                }
+            }
+            else if (arg.startsWith("--overlap=")) {
+                try {
+                    myOverlap = Long.parseLong(arg.substring("--overlap="
+                            .length()));
+                }
+                catch (final NumberFormatException nfe) {
+                    throw new IllegalStateException("Invalid overlap: " + arg);
+                }
+            }
+            else if (arg.startsWith("--sync-state=")) {
+                mySyncState = arg.substring("--sync-state=".length());
+            }
+            else if (arg.equals("--profile")) {
+                myProfile = true;
+            }
+            else if (arg.startsWith("--sample=")) {
+                try {
+                    mySample = Integer.parseInt(arg.substring("--sample="
+                            .length()));
+                }
+                catch (final NumberFormatException nfe) {
+                    throw new IllegalStateException("Invalid sample: " + arg);
+                }
+            }
+            else if (arg.startsWith("--plan=")) {
+                myPlan = new File(arg.substring("--plan=".length()));
+            }
+            else if (arg.startsWith("--threads=")) {
+                try {
+                    myThreads = Integer.parseInt(arg.substring("--threads="
+                            .length()));
+                }
+                catch (final NumberFormatException nfe) {
+                    throw new IllegalStateException("Invalid threads: " + arg);
+                }
+            }
+            else if (arg.startsWith("--partition-column=")) {
+                myPartitionColumn = arg.substring("--partition-column="
+                        .length());
+            }
+            else if (arg.startsWith("--partitions=")) {
+                try {
+                    myPartitions = Integer.parseInt(arg
+                            .substring("--partitions=".length()));
+                }
+                catch (final NumberFormatException nfe) {
+                    throw new IllegalStateException("Invalid partitions: "
+                            + arg);
+                }
+            }
+            else if (arg.startsWith("--partition-min=")) {
+                myPartitionMin = parseBound(arg.substring("--partition-min="
+                        .length()));
+            }
+            else if (arg.startsWith("--partition-max=")) {
+                myPartitionMax = parseBound(arg.substring("--partition-max="
+                        .length()));
+            }
             else {
                 throw new IllegalStateException("Unknown arguments: " + arg);
             }
@@ -149,9 +614,70 @@ public class MigrateFromJdbc {
         if (myJdbcUri == null) {
             throw new IllegalStateException("You must specify a JDBC URI.");
         }
-        if (myTableName == null) {
+        if ((myTableName == null) && (myPlan == null)) {
+            throw new IllegalStateException(
+                    "You must specify a JDBC table name or a plan.");
+        }
+        if ((myPlan != null)
+                && ((myTableName != null) || (myUpdateField != null)
+                        || (myKey != null) || (myPartitionColumn != null) || mySync)) {
+            throw new IllegalStateException("The plan replaces the table, "
+                    + "field, key, partition and sync options.");
+        }
+        if (myProfile && ((myPlan != null) || mySync)) {
+            throw new IllegalStateException(
+                    "The profile cannot be used with a plan or the sync.");
+        }
+        if (mySample < 0) {
+            throw new IllegalStateException("The sample cannot be negative.");
+        }
+        if (myThreads < 1) {
+            throw new IllegalStateException(
+                    "The number of threads must be positive.");
+        }
+        if ((myBatchSize < 1) || (myBatchBytes < 1) || (myMaxPending < 1)) {
+            throw new IllegalStateException(
+                    "The batch size, batch bytes and max pending must be positive.");
+        }
+        if ((myMaxRate < 0) || (myTargetLatency < 0)) {
+            throw new IllegalStateException(
+                    "The max rate and target latency cannot be negative.");
+        }
+        if (myFetchSize < 0) {
+            throw new IllegalStateException(
+                    "The fetch size cannot be negative.");
+        }
+        if ((myLobInline < 0) || (myLobInline == Integer.MAX_VALUE)) {
+            throw new IllegalStateException(
+                    "The LOB inline size must be between 0 and "
+                            + (Integer.MAX_VALUE - 1) + ".");
+        }
+        if (myPartitions < 1) {
+            throw new IllegalStateException(
+                    "The number of partitions must be positive.");
+        }
+        if ((myPartitionColumn == null)
+                && ((myPartitionMin != null) || (myPartitionMax != null))) {
+            throw new IllegalStateException(
+                    "The partition range requires a partition column.");
+        }
+        if (mySync && (myChangeTable == null) && (myUpdateField == null)) {
+            throw new IllegalStateException(
+                    "The sync requires a change table or an update field.");
+        }
+        if (!mySync && (myChangeTable != null)) {
+            throw new IllegalStateException(
+                    "The change table is only used by the sync.");
+        }
+        if (myInterval < 1) {
+            throw new IllegalStateException("The interval must be positive.");
+        }
+        if (myOverlap < 0) {
+            throw new IllegalStateException("The overlap cannot be negative.");
+        }
+        if (!mySync && (myOverlap > 0)) {
             throw new IllegalStateException(
-                    "You must specify a JDBC table name.");
+                    "The overlap is only used by the sync.");
         }
 
         return true;
@@ -173,174 +699,1763 @@ public class MigrateFromJdbc {
             Class.forName(myJdbcClass);
         }
 
+        if ((myMaxRate > 0) || (myTargetLatency > 0)) {
+            myThrottle = new Throttle(myMaxRate, myTargetLatency, myBatchSize);
+        }
+
         MongoDbUri mongoUri = new MongoDbUri(myMongoDbUri);
         try (MongoClient client = MongoFactory.createClient(mongoUri)) {
             MongoDatabase database = client.getDatabase(mongoUri.getDatabase());
-            MongoCollection collection = database.getCollection(myTableName);
-            BlockingQueue<Future<Integer>> pendingInsert = new ArrayBlockingQueue<>(
-                    1024);
+            if (myPlan != null) {
+                migrate(database, MigrationPlan.load(myPlan));
+            }
+            else {
+                final MongoCollection collection = database
+                        .getCollection(myTableName);
 
-            Object from = null;
-            if (myUpdateField != null) {
-                // Use the _id (ObjectId) to find the last document added.
-                Document latest = collection.findOne(Find.builder()
-                        .projection(myUpdateField).sort(Sort.desc("_id")));
-                if (latest != null) {
-                    from = latest.get(myUpdateField).getValueAsObject();
+                if (mySync) {
+                    sync(database, collection);
+                    return;
+                }
+                if (myProfile) {
+                    profile(database);
+                    return;
                 }
-            }
 
-            try (Connection conn = DriverManager.getConnection(myJdbcUri);
-                    PreparedStatement statement = conn.prepareStatement(
-                            (from == null) ? "SELECT * FROM " + myTableName
-                                    : "SELECT * FROM " + myTableName + " where "
-                                            + myUpdateField + " > ?")) {
-                if (from != null) {
-                    if (from instanceof Date) {
-                        statement.setDate(1,
-                                new java.sql.Date(((Date) from).getTime()));
-                    }
-                    else {
-                        statement.setObject(1, from);
+                Object from = null;
+                if (myUpdateField != null) {
+                    // Sort on the field itself: with --key the _id is the
+                    // row's key and not an ObjectId in insertion order.
+                    Document latest = collection.findOne(Find.builder()
+                            .projection(myUpdateField)
+                            .sort(Sort.desc(myUpdateField)));
+                    if (latest != null) {
+                        from = latest.get(myUpdateField).getValueAsObject();
                     }
                 }
 
-                try (ResultSet rs = statement.executeQuery()) {
-                    final ResultSetMetaData md = rs.getMetaData();
-                    final int columnCount = md.getColumnCount();
-
-                    final DocumentBuilder b = BuilderFactory.start();
-                    while (rs.next()) {
-                        b.reset();
-                        for (int column = 1; column <= columnCount; ++column) {
-                            b.add(md.getColumnName(column),
-                                    map(md.getColumnType(column), column, rs));
-                        }
+                migrate(database, collection, from,
+                        (myPartitionColumn == null) ? null : partition(from));
+            }
+
+            System.out.println("Wrote " + myWritten.get() + " rows in "
+                    + myWrites.get() + " batches.");
+            if ((myEmbedded.get() > 0) || (myOrphans.get() > 0)) {
+                System.out.println("Embedded " + myEmbedded.get()
+                        + " child rows and skipped " + myOrphans.get()
+                        + " child rows without a parent.");
+            }
+            if (myFailed.get() > 0) {
+                System.out.println("Failed to write " + myFailed.get()
+                        + " rows.");
+            }
+            if (myLobsFailed.get() > 0) {
+                System.out.println("Failed to write " + myLobsFailed.get()
+                        + " CLOB/BLOB chunk and files documents.");
+            }
+            if (myThrottle != null) {
+                System.out.println("Finished at a rate of "
+                        + Math.round(myThrottle.getRate())
+                        + " documents/second.");
+            }
+        }
+    }
+
+    /**
+     * Prints a usage statement.
+     */
+    public void usage() {
+        System.out.println("Usage: java " + MigrateFromJdbc.class.getName()
+                + "--mongodb=uri --jdbc=uri --jdbc-class=driver-class"
+                + " (--table=name [--field=name] | --plan=file [--threads=count])"
+                + " [--batch-size=rows] [--batch-bytes=bytes] [--max-pending=batches]"
+                + " [--max-rate=docs/sec] [--target-latency=ms]"
+                + " [--fetch-size=rows] [--decimals=string|scaled|double]"
+                + " [--timezone=zone] [--lob-inline=size] [--lob-bucket=name] [--key=column[,column]]"
+                + " [--profile [--sample=rows]]"
+                + " [--sync [--changes=table [--change-column=name]]"
+                + " [--interval=seconds] [--overlap=amount]"
+                + " [--sync-state=collection]]"
+                + " [--partition-column=name [--partitions=count]"
+                + " [--partition-min=value] [--partition-max=value]]");
+    }
+
+    /**
+     * Applies the changes recorded in the change table after the mark up to,
+     * and including, the next mark. Each changed key's current row is saved
+     * or, if the row no longer exists, its document deleted.
+     *
+     * @param database
+     *            The database for the large CLOB and BLOB values.
+     * @param collection
+     *            The collection to write to.
+     * @param mark
+     *            The last change already applied or null to apply all of the
+     *            changes.
+     * @param next
+     *            The last change to apply.
+     * @throws SQLException
+     *             On a JDBC error.
+     */
+    private void applyChanges(final MongoDatabase database,
+            final MongoCollection collection, final Object mark,
+            final Object next) throws SQLException {
+        final List<Object> parameters = new ArrayList<>();
+        final StringBuilder sql = new StringBuilder("SELECT ");
+        for (int i = 0; i < myKey.length; ++i) {
+            sql.append((i == 0) ? "" : ", ").append(myKey[i]);
+        }
+        sql.append(" FROM ").append(myChangeTable).append(" WHERE ");
+        if (mark != null) {
+            sql.append(myChangeColumn).append(" > ? AND ");
+            parameters.add(mark);
+        }
+        sql.append(myChangeColumn).append(" <= ?");
+        parameters.add(next);
+
+        // Each key is applied once no matter how many times it changed.
+        final Map<Element, Object[]> changed = new LinkedHashMap<>();
+        try (Connection conn = DriverManager.getConnection(myJdbcUri);
+                PreparedStatement statement = stream(conn, sql.toString())) {
+            for (int i = 0; i < parameters.size(); ++i) {
+                bind(statement, i + 1, parameters.get(i));
+            }
+
+            try (ResultSet rs = statement.executeQuery()) {
+                final ColumnPlan plan = ColumnPlan.create(rs.getMetaData(),
+                        myDecimals, null, myTimeZone);
 
-                        Future<Integer> future = collection.insertAsync(b);
-                        while (!pendingInsert.offer(future)) {
-                            Future<Integer> oldest = pendingInsert.poll();
-                            try {
-                                if (oldest.get() != 1) {
-                                    // Handle write error.
-                                }
-                            }
-                            catch (InterruptedException
-                                    | ExecutionException error) {
-                                System.err.println(error.getMessage());
-                            }
+                final DocumentBuilder b = BuilderFactory.start();
+                while (rs.next()) {
+                    b.reset();
+                    plan.append(rs, b);
+
+                    final Element id = id(b.build(), myKey);
+                    if (!changed.containsKey(id)) {
+                        final Object[] values = new Object[myKey.length];
+                        for (int i = 0; i < values.length; ++i) {
+                            values[i] = rs.getObject(i + 1);
                         }
+                        changed.put(id, values);
                     }
                 }
+            }
+        }
 
-                Future<Integer> oldest;
-                while ((oldest = pendingInsert.poll()) != null) {
-                    try {
-                        if (oldest.get() != 1) {
-                            // Handle write error.
-                        }
-                    }
-                    catch (InterruptedException | ExecutionException error) {
-                        System.err.println(error.getMessage());
+        // Cap the parameters per query, not the rows, as a wide key
+        // multiplies them.
+        final int perQuery = Math.max(1, MAX_PARAMETERS / myKey.length);
+        final BatchWriter deletes = new BatchWriter(collection, myBatchSize,
+                myBatchBytes, myMaxPending, myThrottle);
+        try {
+            final List<Element> ids = new ArrayList<>(changed.keySet());
+            for (int start = 0; start < ids.size(); start += perQuery) {
+                final List<Element> chunk = ids.subList(start,
+                        Math.min(ids.size(), start + perQuery));
+
+                final StringBuilder rows = new StringBuilder("SELECT * FROM ")
+                        .append(myTableName).append(" WHERE ");
+                final List<Object> keys = new ArrayList<>();
+                for (final Element id : chunk) {
+                    rows.append((keys.isEmpty()) ? "(" : " OR (");
+                    for (int i = 0; i < myKey.length; ++i) {
+                        rows.append((i == 0) ? "" : " AND ").append(myKey[i])
+                                .append(" = ?");
                     }
+                    rows.append(")");
+                    keys.addAll(Arrays.asList(changed.get(id)));
+                }
+
+                final Map<List<Object>, Element> missing = new HashMap<>();
+                for (final Element id : chunk) {
+                    missing.put(key(changed.get(id)), id);
+                }
+                extract(database, collection, rows.toString(), keys, missing);
+                for (final Element id : missing.values()) {
+                    deletes.delete(id);
                 }
             }
         }
+        finally {
+            deletes.close();
+
+            myDeleted.addAndGet(deletes.getWritten());
+            myWrites.addAndGet(deletes.getWrites());
+            myFailed.addAndGet(deletes.getFailed());
+        }
     }
 
     /**
-     * Prints a usage statement.
+     * Saves the rows with an update field value from the mark, inclusive so
+     * rows sharing the mark's value are not missed, up to the next mark.
+     *
+     * @param database
+     *            The database for the large CLOB and BLOB values.
+     * @param collection
+     *            The collection to write to.
+     * @param mark
+     *            The update field value already applied or null to apply all
+     *            of the rows.
+     * @param next
+     *            The last update field value to apply.
+     * @throws SQLException
+     *             On a JDBC error.
      */
-    public void usage() {
-        System.out.println("Usage: java " + MigrateFromJdbc.class.getName()
-                + "--mongodb=uri --jdbc=uri --jdbc-class=driver-class --table=name [--field=name]");
+    private void applyUpdates(final MongoDatabase database,
+            final MongoCollection collection, final Object mark,
+            final Object next) throws SQLException {
+        final List<Object> parameters = new ArrayList<>();
+        final StringBuilder sql = new StringBuilder("SELECT * FROM ").append(
+                myTableName).append(" WHERE ");
+        if (mark != null) {
+            sql.append(myUpdateField).append(" >= ? AND ");
+            parameters.add(mark);
+        }
+        sql.append(myUpdateField).append(" <= ?");
+        parameters.add(next);
+
+        extract(database, collection, sql.toString(), parameters, null);
     }
 
     /**
-     * Maps the SQL column to a Java Type that MongoDB supports, if possible.
-     * 
-     * @param columnType
-     *            The type for the column.
-     * @param columnIndex
-     *            The index of the column.
-     * @param rs
-     *            The result to extract from.
-     * @return The mapped Java value.
+     * Waits for every task so all of the connections are closed before
+     * throwing the first failure.
+     *
+     * @param results
+     *            The results of the tasks.
      * @throws SQLException
-     *             On a failure to map the column.
+     *             If a task failed with a JDBC error.
      */
-    private Object map(int columnType, int columnIndex, ResultSet rs)
-            throws SQLException {
-        switch (columnType) {
-        // Boolean
-        case Types.BIT:
-        case Types.BOOLEAN:
-            return rs.getBoolean(columnIndex);
-
-        // String
-        case Types.CHAR:
-        case Types.LONGNVARCHAR:
-        case Types.VARCHAR:
-        case Types.LONGVARCHAR:
-        case Types.NCHAR:
-        case Types.NVARCHAR:
-            return rs.getString(columnIndex);
-
-        case Types.CLOB:
-        case Types.NCLOB:
-            throw new IllegalStateException(
-                    "CLOB SQL Type not supported: " + columnType);
+    private void await(final List<Future<Void>> results) throws SQLException {
+        Throwable error = null;
+        for (final Future<Void> result : results) {
+            try {
+                result.get();
+            }
+            catch (final ExecutionException failed) {
+                if (error == null) {
+                    error = failed.getCause();
+                }
+            }
+            catch (final InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(
+                        "Interrupted waiting for the migration.", interrupted);
+            }
+        }
 
-            // Null
-        case Types.NULL:
-            return null;
+        if (error instanceof SQLException) {
+            throw (SQLException) error;
+        }
+        else if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        }
+        else if (error != null) {
+            throw new IllegalStateException(error);
+        }
+    }
 
-        // Double
-        case Types.DECIMAL:
-        case Types.REAL:
-        case Types.DOUBLE:
-        case Types.FLOAT:
-        case Types.NUMERIC:
-            return rs.getDouble(columnIndex);
-
-        // Integer/Long
-        case Types.INTEGER:
-        case Types.ROWID:
-        case Types.TINYINT:
-        case Types.SMALLINT:
-        case Types.BIGINT:
-            return rs.getLong(columnIndex);
-
-        // Date / Time
-        case Types.DATE:
-        case Types.TIME:
-        case Types.TIME_WITH_TIMEZONE:
-        case Types.TIMESTAMP:
-        case Types.TIMESTAMP_WITH_TIMEZONE:
-            return new Date(rs.getDate(columnIndex).getTime());
-
-        // Bytes
-        case Types.VARBINARY:
-        case Types.LONGVARBINARY:
-        case Types.BINARY:
-            return rs.getBytes(columnIndex);
-
-        case Types.BLOB:
-            throw new IllegalStateException(
-                    "BLOB SQL Type not supported: " + columnType);
-
-            // Unsupported types.
-        case Types.DATALINK:
-        case Types.DISTINCT:
-        case Types.OTHER:
-        case Types.REF:
-        case Types.REF_CURSOR:
-        case Types.SQLXML:
-        case Types.STRUCT:
-        case Types.ARRAY:
-            throw new IllegalStateException(
-                    "Unsupported SQL Type: " + columnType);
+    /**
+     * Returns the value {@link #myOverlap} behind the high-water mark.
+     *
+     * @param mark
+     *            The high-water mark or null if there is none.
+     * @return The value behind the mark.
+     * @throws IllegalStateException
+     *             If the mark is not a number or date.
+     */
+    private Object behind(final Object mark) {
+        if ((mark == null) || (myOverlap == 0)) {
+            return mark;
+        }
+        else if (mark instanceof Timestamp) {
+            return new Timestamp(((Timestamp) mark).getTime()
+                    - TimeUnit.SECONDS.toMillis(myOverlap));
+        }
+        else if (mark instanceof java.sql.Date) {
+            return new java.sql.Date(((java.sql.Date) mark).getTime()
+                    - TimeUnit.SECONDS.toMillis(myOverlap));
+        }
+        else if (mark instanceof Date) {
+            return new Date(((Date) mark).getTime()
+                    - TimeUnit.SECONDS.toMillis(myOverlap));
         }
-        return null;
+        else if (mark instanceof BigDecimal) {
+            return ((BigDecimal) mark).subtract(BigDecimal.valueOf(myOverlap));
+        }
+        else if (mark instanceof BigInteger) {
+            return ((BigInteger) mark).subtract(BigInteger.valueOf(myOverlap));
+        }
+        else if ((mark instanceof Long) || (mark instanceof Integer)
+                || (mark instanceof Short) || (mark instanceof Byte)) {
+            return Long.valueOf(((Number) mark).longValue() - myOverlap);
+        }
+        throw new IllegalStateException("The overlap requires a numeric or "
+                + "date high-water mark: " + mark.getClass().getName());
+    }
+
+    /**
+     * Binds the value to the statement's parameter.
+     *
+     * @param statement
+     *            The statement to bind the value to.
+     * @param index
+     *            The index of the parameter.
+     * @param value
+     *            The value to bind.
+     * @throws SQLException
+     *             On a failure to bind the value.
+     */
+    private void bind(final PreparedStatement statement, final int index,
+            final Object value) throws SQLException {
+        if (value instanceof Timestamp) {
+            statement.setTimestamp(index, (Timestamp) value);
+        }
+        else if (value instanceof java.sql.Date) {
+            statement.setDate(index, (java.sql.Date) value);
+        }
+        else if (value instanceof Date) {
+            // A MongoDB date: keep the time and use the time zone it was
+            // read with.
+            statement.setTimestamp(index, new Timestamp(((Date) value)
+                    .getTime()), Calendar.getInstance(myTimeZone));
+        }
+        else {
+            statement.setObject(index, value);
+        }
+    }
+
+    /**
+     * Compares two key values in the database's order for integer and date
+     * keys and the natural Java order for anything else.
+     *
+     * @param left
+     *            The first value.
+     * @param right
+     *            The second value.
+     * @return A negative value, zero or a positive value as the first value
+     *         is less than, equal to or greater than the second.
+     * @throws IllegalStateException
+     *             If the values cannot be compared.
+     */
+    @SuppressWarnings("unchecked")
+    private int compare(final Object left, final Object right) {
+        if (((left instanceof Long) || (left instanceof Integer)
+                || (left instanceof Short) || (left instanceof Byte))
+                && ((right instanceof Long) || (right instanceof Integer)
+                        || (right instanceof Short) || (right instanceof Byte))) {
+            return Long.compare(((Number) left).longValue(),
+                    ((Number) right).longValue());
+        }
+        else if ((left instanceof Number) && (right instanceof Number)) {
+            return new BigDecimal(left.toString()).compareTo(new BigDecimal(
+                    right.toString()));
+        }
+        else if ((left instanceof Date) && (right instanceof Date)) {
+            return ((Date) left).compareTo((Date) right);
+        }
+        else if ((left instanceof Comparable)
+                && left.getClass().isInstance(right)) {
+            return ((Comparable<Object>) left).compareTo(right);
+        }
+        throw new IllegalStateException("Cannot compare the join key values "
+                + left + " and " + right + ".");
+    }
+
+    /**
+     * Reads the rows of the plan's table, embeds the child rows, and inserts
+     * or saves them into the table's collection.
+     *
+     * @param database
+     *            The database for the collection.
+     * @param table
+     *            The table to migrate.
+     * @throws SQLException
+     *             On a JDBC error.
+     */
+    private void extract(final MongoDatabase database,
+            final MigrationPlan.Table table) throws SQLException {
+        final String[] key = table.getKey();
+        final List<MigrationPlan.Child> children = table.getChildren();
+        final String sql = "SELECT * FROM " + table.getName()
+                + (children.isEmpty() ? "" : (" ORDER BY " + key[0]));
+
+        final Output output = output(
+                database.getCollection(table.getCollection()),
+                lobs(database, table.getName()));
+        final BatchWriter writer = output.getWriter();
+        final LobStore lobs = output.getLobs();
+        final List<ChildCursor> cursors = new ArrayList<>(children.size());
+        try (Connection conn = DriverManager.getConnection(myJdbcUri);
+                PreparedStatement statement = stream(conn, sql);
+                ResultSet rs = statement.executeQuery()) {
+            for (final MigrationPlan.Child child : children) {
+                cursors.add(new ChildCursor(child, lobs));
+            }
+
+            final ColumnPlan plan = ColumnPlan.create(rs.getMetaData(),
+                    myDecimals, lobs, myTimeZone);
+            final int keyIndex = children.isEmpty() ? 0 : rs.findColumn(key[0]);
+
+            final DocumentBuilder b = BuilderFactory.start();
+            Object previous = null;
+            long row = 0;
+            while (rs.next()) {
+                row += 1;
+                b.reset();
+                plan.append(rs, b);
+
+                if (!cursors.isEmpty()) {
+                    final Object parent = rs.getObject(keyIndex);
+                    if (parent != null) {
+                        ordered(previous, parent, table.getName(), key[0]);
+                        previous = parent;
+                    }
+                    for (final ChildCursor cursor : cursors) {
+                        cursor.embed(parent, b);
+                    }
+                }
+
+                final Document document = (key == null) ? b.build() : keyed(
+                        b.build(), key);
+                if (MAX_DOCUMENT_SIZE < document.size()) {
+                    // Too many embedded children. Report the parent rather
+                    // than failing the whole batch.
+                    myFailed.incrementAndGet();
+                    System.err.println("Skipped "
+                            + ((key == null) ? ("row " + row)
+                                    : ("the row with _id "
+                                            + document.get(ID_FIELD)
+                                                    .getValueAsObject()))
+                            + " of " + table.getName() + ": its document is "
+                            + document.size() + " bytes, more than the "
+                            + MAX_DOCUMENT_SIZE + " byte limit.");
+                }
+                else if (key == null) {
+                    writer.add(document);
+                }
+                else {
+                    writer.save(document);
+                }
+            }
+
+            for (final ChildCursor cursor : cursors) {
+                cursor.finish();
+            }
+        }
+        finally {
+            for (final ChildCursor cursor : cursors) {
+                cursor.close();
+            }
+            output.close();
+        }
+
+        System.out.println("Migrated " + writer.getWritten() + " rows from "
+                + table.getName() + " into "
+                + table.getCollection() + ".");
+    }
+
+    /**
+     * Reads the rows from the table matching the partition and inserts them
+     * into the collection.
+     *
+     * @param database
+     *            The database for the large CLOB and BLOB values.
+     * @param collection
+     *            The collection to insert into.
+     * @param from
+     *            The last value of the update field already migrated or
+     *            null to read all of the rows.
+     * @param partition
+     *            The partition to read or null to read the entire table.
+     * @throws SQLException
+     *             On a JDBC error.
+     */
+    private void extract(final MongoDatabase database,
+            final MongoCollection collection, final Object from,
+            final Partition partition) throws SQLException {
+        final List<Object> parameters = new ArrayList<>();
+        final String sql = "SELECT * FROM " + myTableName
+                + where(from, partition, parameters);
+
+        extract(database, collection, sql, parameters, null);
+    }
+
+    /**
+     * Reads the rows returned by the query and inserts them into the
+     * collection or, with a {@link #myKey key}, saves them.
+     *
+     * @param database
+     *            The database for the large CLOB and BLOB values.
+     * @param collection
+     *            The collection to write to.
+     * @param sql
+     *            The query for the rows.
+     * @param parameters
+     *            The query's parameter values.
+     * @param keys
+     *            The <code>_id</code> of each row's {@link #key(Object[])
+     *            normalized} key column values, removed as the rows are read,
+     *            or null. The values are compared with the rows' values, not
+     *            their <code>_id</code>, as the key columns of the change
+     *            table may be declared with different types.
+     * @throws SQLException
+     *             On a JDBC error.
+     */
+    private void extract(final MongoDatabase database,
+            final MongoCollection collection, final String sql,
+            final List<Object> parameters,
+            final Map<List<Object>, Element> keys) throws SQLException {
+        final Output output = output(collection, lobs(database, myTableName));
+        final BatchWriter writer = output.getWriter();
+        final LobStore lobs = output.getLobs();
+        try (Connection conn = DriverManager.getConnection(myJdbcUri);
+                PreparedStatement statement = stream(conn, sql)) {
+            for (int i = 0; i < parameters.size(); ++i) {
+                bind(statement, i + 1, parameters.get(i));
+            }
+
+            try (ResultSet rs = statement.executeQuery()) {
+                final ColumnPlan plan = ColumnPlan.create(rs.getMetaData(),
+                        myDecimals, lobs, myTimeZone);
+                final int[] columns = new int[(keys == null) ? 0
+                        : myKey.length];
+                for (int i = 0; i < columns.length; ++i) {
+                    columns[i] = rs.findColumn(myKey[i]);
+                }
+
+                final DocumentBuilder b = BuilderFactory.start();
+                while (rs.next()) {
+                    b.reset();
+                    plan.append(rs, b);
+
+                    if (myKey == null) {
+                        writer.add(b.build());
+                    }
+                    else {
+                        writer.save(keyed(b.build(), myKey));
+                        if (keys != null) {
+                            found(rs, columns, keys);
+                        }
+                    }
+                }
+            }
+        }
+        finally {
+            output.close();
+        }
+    }
+
+    /**
+     * Returns the value of the field for the key column. The column name is
+     * matched ignoring case if there is no exact match.
+     *
+     * @param row
+     *            The row's document.
+     * @param column
+     *            The name of the key column.
+     * @return The key column's field.
+     * @throws IllegalStateException
+     *             If the row does not have the key column.
+     */
+    private Element field(final Document row, final String column) {
+        final Element field = row.get(column);
+        if (field != null) {
+            return field;
+        }
+        for (final Element element : row) {
+            if (element.getName().equalsIgnoreCase(column)) {
+                return element;
+            }
+        }
+        throw new IllegalStateException("The row does not have the key column '"
+                + column + "'.");
+    }
+
+    /**
+     * Removes the key matching the current row's key columns.
+     *
+     * @param rs
+     *            The rows, positioned on the current row.
+     * @param columns
+     *            The indexes of the key columns.
+     * @param keys
+     *            The {@link #key(Object[]) normalized} keys still to be found.
+     * @throws SQLException
+     *             On a failure to read the key columns.
+     */
+    private void found(final ResultSet rs, final int[] columns,
+            final Map<List<Object>, Element> keys) throws SQLException {
+        final Object[] row = new Object[columns.length];
+        for (int i = 0; i < columns.length; ++i) {
+            row[i] = rs.getObject(columns[i]);
+        }
+        keys.remove(key(row));
+    }
+
+    /**
+     * Queries for the current high-water mark: the maximum change column
+     * value in the change table or the maximum update field value in the
+     * table.
+     *
+     * @return The high-water mark or null if there are no rows.
+     * @throws SQLException
+     *             On a JDBC error.
+     */
+    private Object highWaterMark() throws SQLException {
+        final String sql = (myChangeTable != null) ? ("SELECT MAX("
+                + myChangeColumn + ") FROM " + myChangeTable) : ("SELECT MAX("
+                + myUpdateField + ") FROM " + myTableName);
+
+        try (Connection conn = DriverManager.getConnection(myJdbcUri);
+                PreparedStatement statement = conn.prepareStatement(sql);
+                ResultSet rs = statement.executeQuery()) {
+            return rs.next() ? rs.getObject(1) : null;
+        }
+    }
+
+    /**
+     * Returns the <code>_id</code> element for the row: the key column's
+     * value or, for a compound key, a document of the key columns' values.
+     *
+     * @param row
+     *            The row's document.
+     * @param key
+     *            The key column(s).
+     * @return The <code>_id</code> element.
+     */
+    private Element id(final Document row, final String[] key) {
+        if (key.length == 1) {
+            return field(row, key[0]).withName(ID_FIELD);
+        }
+
+        final List<Element> fields = new ArrayList<>(key.length);
+        for (final String column : key) {
+            fields.add(field(row, column));
+        }
+        return new DocumentElement(ID_FIELD, fields);
+    }
+
+    /**
+     * Returns the key column values {@link #normalize(Object) normalized} so
+     * equal keys are equal lists, even when the columns are declared with
+     * different types.
+     *
+     * @param values
+     *            The key column values.
+     * @return The normalized key.
+     */
+    private List<Object> key(final Object[] values) {
+        final Object[] key = new Object[values.length];
+        for (int i = 0; i < values.length; ++i) {
+            key[i] = normalize(values[i]);
+        }
+        return Arrays.asList(key);
+    }
+
+    /**
+     * Returns the row's document with the {@link #id(Document, String[]) key}
+     * as its first field.
+     *
+     * @param row
+     *            The row's document.
+     * @param key
+     *            The key column(s).
+     * @return The document with the <code>_id</code> field.
+     */
+    private Document keyed(final Document row, final String[] key) {
+        final DocumentBuilder builder = BuilderFactory.start();
+        builder.add(id(row, key));
+        for (final Element element : row) {
+            if (!ID_FIELD.equals(element.getName())) {
+                builder.add(element);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Creates the store for the table's large CLOB and BLOB values.
+     *
+     * @param database
+     *            The database for the values.
+     * @param table
+     *            The name of the table.
+     * @return The store for the values.
+     */
+    private LobStore lobs(final MongoDatabase database, final String table) {
+        return new LobStore(database, (myLobBucket == null) ? (table + "_lobs")
+                : myLobBucket, myLobInline, myMaxPending, myThrottle);
+    }
+
+    /**
+     * Returns the high-water mark value stored for the element.
+     *
+     * @param element
+     *            The stored mark.
+     * @return The mark to bind to the queries.
+     */
+    private Object mark(final Element element) {
+        final Object value = (element == null) ? null : element
+                .getValueAsObject();
+        if (value instanceof Date) {
+            return new Timestamp(((Date) value).getTime());
+        }
+        return value;
+    }
+
+    /**
+     * Reads each partition of the table on its own thread and inserts the
+     * rows into the collection.
+     *
+     * @param database
+     *            The database for the large CLOB and BLOB values.
+     * @param collection
+     *            The collection to insert into.
+     * @param from
+     *            The last value of the update field already migrated or
+     *            null to read all of the rows.
+     * @param partitions
+     *            The partitions to read or null to read the entire table with
+     *            a single query.
+     * @throws SQLException
+     *             On a JDBC error.
+     */
+    private void migrate(final MongoDatabase database,
+            final MongoCollection collection, final Object from,
+            final List<Partition> partitions) throws SQLException {
+        if (partitions == null) {
+            extract(database, collection, from, null);
+            return;
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(partitions
+                .size());
+        try {
+            final List<Future<Void>> results = new ArrayList<>();
+            for (final Partition partition : partitions) {
+                results.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws SQLException {
+                        extract(database, collection, from, partition);
+                        return null;
+                    }
+                }));
+            }
+
+            await(results);
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Migrates each of the plan's tables on a shared pool of
+     * {@link #myThreads} threads.
+     *
+     * @param database
+     *            The database for the collections.
+     * @param plan
+     *            The tables to migrate.
+     * @throws SQLException
+     *             On a JDBC error.
+     */
+    private void migrate(final MongoDatabase database, final MigrationPlan plan)
+            throws SQLException {
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(
+                myThreads, plan.getTables().size()));
+        try {
+            final List<Future<Void>> results = new ArrayList<>();
+            for (final MigrationPlan.Table table : plan.getTables()) {
+                results.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws SQLException {
+                        extract(database, table);
+                        return null;
+                    }
+                }));
+            }
+
+            await(results);
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Returns the key value in a form with value equality. Strings lose the
+     * trailing spaces a CHAR column pads them with, numbers become
+     * {@link BigDecimal}s without trailing zeros so, e.g., an INTEGER matches
+     * a NUMERIC, dates become plain {@link Date}s, bytes are wrapped in a
+     * {@link ByteBuffer} and anything else is compared as its string.
+     *
+     * @param value
+     *            The key value.
+     * @return The normalized value.
+     */
+    private Object normalize(final Object value) {
+        if (value == null) {
+            return null;
+        }
+        else if (value instanceof String) {
+            return stripTrailing((String) value);
+        }
+        else if ((value instanceof Long) || (value instanceof Integer)
+                || (value instanceof Short) || (value instanceof Byte)) {
+            return BigDecimal.valueOf(((Number) value).longValue())
+                    .stripTrailingZeros();
+        }
+        else if (value instanceof BigDecimal) {
+            return ((BigDecimal) value).stripTrailingZeros();
+        }
+        else if (value instanceof Number) {
+            return new BigDecimal(value.toString()).stripTrailingZeros();
+        }
+        else if (value instanceof Date) {
+            return new Date(((Date) value).getTime());
+        }
+        else if (value instanceof byte[]) {
+            return ByteBuffer.wrap((byte[]) value);
+        }
+        return value.toString();
+    }
+
+    /**
+     * Checks that the database returned the rows in the order the merge join
+     * compares the keys in. A case insensitive or locale specific collation on
+     * a string key orders the rows differently and the child rows would be
+     * silently skipped as having no parent.
+     *
+     * @param previous
+     *            The previous row's key value or null for the first row.
+     * @param value
+     *            The current row's key value.
+     * @param table
+     *            The name of the table.
+     * @param column
+     *            The name of the key column.
+     * @throws IllegalStateException
+     *             If the current value is before the previous value.
+     */
+    private void ordered(final Object previous, final Object value,
+            final String table, final String column) {
+        if ((previous != null) && (compare(value, previous) < 0)) {
+            throw new IllegalStateException("The rows of " + table
+                    + " are not ordered by " + column + " as expected: '"
+                    + value + "' follows '" + previous + "'. Use a key with a "
+                    + "binary collation to embed the child tables.");
+        }
+    }
+
+    /**
+     * Returns the writers for the rows read by a query.
+     *
+     * @param collection
+     *            The collection to write to.
+     * @param lobs
+     *            The store for the large CLOB and BLOB values.
+     * @return The writers for the rows.
+     */
+    private Output output(final MongoCollection collection,
+            final LobStore lobs) {
+        return new Output(new BatchWriter(collection, myBatchSize,
+                myBatchBytes, myMaxPending, myThrottle), lobs);
+    }
+
+    /**
+     * Parses a bound for the partition column's range. The bound is either an
+     * integer, a timestamp (<code>yyyy-mm-dd hh:mm:ss</code>) or a date (
+     * <code>yyyy-mm-dd</code>).
+     *
+     * @param value
+     *            The value to parse.
+     * @return The parsed bound as a {@link Long} or {@link Timestamp}.
+     * @throws IllegalStateException
+     *             If the bound cannot be parsed.
+     */
+    private Object parseBound(final String value) {
+        try {
+            return Long.valueOf(value);
+        }
+        catch (final NumberFormatException notLong) {
+            try {
+                return Timestamp.valueOf(value);
+            }
+            catch (final IllegalArgumentException notTimestamp) {
+                try {
+                    return new Timestamp(java.sql.Date.valueOf(value)
+                            .getTime());
+                }
+                catch (final IllegalArgumentException notDate) {
+                    throw new IllegalStateException(
+                            "Invalid partition bound: " + value);
+                }
+            }
+        }
+    }
+
+    /**
+     * Splits the partition column's range into {@link #myPartitions} ranges.
+     * Any bound not provided on the command line is queried from the table.
+     *
+     * @param from
+     *            The last value of the update field already migrated or
+     *            null to read all of the rows.
+     * @return The partitions.
+     * @throws SQLException
+     *             On a failure to query the column's range.
+     */
+    private List<Partition> partition(final Object from) throws SQLException {
+        Object min = myPartitionMin;
+        Object max = myPartitionMax;
+        if ((min == null) || (max == null)) {
+            final List<Object> parameters = new ArrayList<>();
+            final String sql = "SELECT MIN(" + myPartitionColumn + "), MAX("
+                    + myPartitionColumn + ") FROM " + myTableName
+                    + where(from, null, parameters);
+
+            try (Connection conn = DriverManager.getConnection(myJdbcUri);
+                    PreparedStatement statement = conn.prepareStatement(sql)) {
+                for (int i = 0; i < parameters.size(); ++i) {
+                    bind(statement, i + 1, parameters.get(i));
+                }
+                try (ResultSet rs = statement.executeQuery()) {
+                    if (rs.next()) {
+                        min = (min == null) ? rs.getObject(1) : min;
+                        max = (max == null) ? rs.getObject(2) : max;
+                    }
+                }
+            }
+        }
+
+        final List<Partition> partitions = new ArrayList<>();
+        if ((min == null) || (max == null)) {
+            // Empty table or only NULL values.
+            partitions.add(new Partition(null, null));
+            return partitions;
+        }
+
+        final boolean dates = (min instanceof Date) || (max instanceof Date);
+        final BigInteger low = BigInteger.valueOf(toLong(min));
+        final BigInteger range = BigInteger.valueOf(toLong(max)).subtract(low);
+        final BigInteger count = BigInteger.valueOf(myPartitions);
+
+        Object lower = null;
+        for (int i = 1; i < myPartitions; ++i) {
+            final long boundary = low.add(
+                    range.multiply(BigInteger.valueOf(i)).divide(count))
+                    .longValue();
+            final Object upper = dates ? new Timestamp(boundary) : Long
+                    .valueOf(boundary);
+
+            // Small ranges may produce fewer distinct boundaries.
+            if ((lower == null) ? (toLong(min) < boundary)
+                    : (toLong(lower) < boundary)) {
+                partitions.add(new Partition(lower, upper));
+                lower = upper;
+            }
+        }
+        partitions.add(new Partition(lower, null));
+
+        return partitions;
+    }
+
+    /**
+     * Profiles each {@link Stage} of the migration and prints the results.
+     *
+     * @param database
+     *            The database for the scratch collection.
+     * @throws SQLException
+     *             On a JDBC error.
+     */
+    private void profile(final MongoDatabase database) throws SQLException {
+        System.out.println("Profiling "
+                + ((mySample > 0) ? ("up to " + mySample) : "all")
+                + " rows of " + myTableName + ".");
+        for (final Stage stage : Stage.values()) {
+            System.out.println(profile(database, stage));
+        }
+    }
+
+    /**
+     * Reads the sample rows and runs them through the stage, timing each
+     * step.
+     *
+     * @param database
+     *            The database for the scratch collection.
+     * @param stage
+     *            The stage to profile.
+     * @return The profile of the stage.
+     * @throws SQLException
+     *             On a JDBC error.
+     */
+    private Profile profile(final MongoDatabase database, final Stage stage)
+            throws SQLException {
+        // A unique name so an existing collection is never dropped.
+        final String scratch = myTableName + "_profile_"
+                + Long.toHexString(System.currentTimeMillis());
+
+        final Profile profile = new Profile(stage);
+        final Output output;
+        if (stage == Stage.FULL) {
+            output = output(database.getCollection(scratch), new LobStore(
+                    database, scratch + "_lobs", myLobInline, myMaxPending,
+                    myThrottle));
+        }
+        else {
+            output = new Output(null, new LobStore(myLobInline));
+        }
+        final BatchWriter writer = output.getWriter();
+        final LobStore lobs = output.getLobs();
+
+        // Time from the query, not the connection, to the last write.
+        long start = System.nanoTime();
+        try (Connection conn = DriverManager.getConnection(myJdbcUri);
+                PreparedStatement statement = stream(conn, "SELECT * FROM "
+                        + myTableName)) {
+            statement.setMaxRows(mySample);
+
+            start = System.nanoTime();
+
+            try (ResultSet rs = statement.executeQuery()) {
+                final ColumnPlan plan = ColumnPlan.create(rs.getMetaData(),
+                        myDecimals, lobs, myTimeZone);
+                final int columns = plan.getColumnCount();
+
+                final DocumentBuilder b = BuilderFactory.start();
+                long mark = start;
+                while (rs.next()) {
+                    if (stage == Stage.EXTRACT) {
+                        for (int i = 1; i <= columns; ++i) {
+                            rs.getObject(i);
+                        }
+                    }
+                    long now = System.nanoTime();
+                    profile.fetched(now - mark);
+                    mark = now;
+                    if (stage == Stage.EXTRACT) {
+                        continue;
+                    }
+
+                    b.reset();
+                    plan.append(rs, b);
+                    final Document document = b.build();
+                    now = System.nanoTime();
+                    profile.converted(document.size(), now - mark);
+                    mark = now;
+
+                    if (writer != null) {
+                        writer.add(document);
+                        now = System.nanoTime();
+                        profile.wrote(now - mark);
+                        mark = now;
+                    }
+                }
+                // The time to find the end of the rows.
+                profile.waited(System.nanoTime() - mark);
+            }
+        }
+        finally {
+            final long closing = System.nanoTime();
+            output.close();
+            if (writer != null) {
+                profile.wrote(System.nanoTime() - closing);
+            }
+            profile.finished(System.nanoTime() - start);
+
+            if (writer != null) {
+                database.getCollection(scratch).drop();
+                database.getCollection(scratch + "_lobs.chunks").drop();
+                database.getCollection(scratch + "_lobs.files").drop();
+            }
+        }
+
+        return profile;
+    }
+
+    /**
+     * Queries the database's metadata for the table's primary key columns.
+     *
+     * @return The primary key columns in key order.
+     * @throws SQLException
+     *             On a JDBC error.
+     * @throws IllegalStateException
+     *             If the table does not have a primary key.
+     */
+    private String[] primaryKey() throws SQLException {
+        final SortedMap<Short, String> columns = new TreeMap<>();
+        try (Connection conn = DriverManager.getConnection(myJdbcUri);
+                ResultSet rs = conn.getMetaData().getPrimaryKeys(null, null,
+                        myTableName)) {
+            while ((rs != null) && rs.next()) {
+                columns.put(Short.valueOf(rs.getShort("KEY_SEQ")),
+                        rs.getString("COLUMN_NAME"));
+            }
+        }
+
+        if (columns.isEmpty()) {
+            throw new IllegalStateException("Could not find the primary key "
+                    + "for '" + myTableName + "'. Use --key=column.");
+        }
+        return columns.values().toArray(new String[columns.size()]);
+    }
+
+    /**
+     * Saves the high-water mark once all of the writes up to it are
+     * acknowledged.
+     *
+     * @param state
+     *            The collection for the marks.
+     * @param mark
+     *            The mark to save.
+     */
+    private void saveMark(final MongoCollection state, final Object mark) {
+        final DocumentBuilder document = BuilderFactory.start();
+        document.add(ID_FIELD, myTableName);
+        if (mark == null) {
+            document.addNull("mark");
+        }
+        else if (mark instanceof Date) {
+            document.add("mark", new Date(((Date) mark).getTime()));
+        }
+        else if (mark instanceof Number) {
+            document.add("mark", ((Number) mark).longValue());
+        }
+        else {
+            document.add("mark", String.valueOf(mark));
+        }
+        document.add("updated", new Date());
+
+        state.update(BuilderFactory.start().add(ID_FIELD, myTableName),
+                document, false, true);
+    }
+
+    /**
+     * Prepares the query to stream its results using a forward only, read
+     * only cursor.
+     *
+     * @param conn
+     *            The connection to prepare the query on.
+     * @param sql
+     *            The query.
+     * @return The prepared query.
+     * @throws SQLException
+     *             On a failure to prepare the query.
+     */
+    private PreparedStatement stream(final Connection conn, final String sql)
+            throws SQLException {
+        int fetchSize = myFetchSize;
+        if (fetchSize > 0) {
+            final String product = conn.getMetaData().getDatabaseProductName();
+            if ("PostgreSQL".equalsIgnoreCase(product)) {
+                // The rows are only fetched in batches within a transaction.
+                conn.setAutoCommit(false);
+            }
+            else if (("MySQL".equalsIgnoreCase(product) || "MariaDB"
+                    .equalsIgnoreCase(product))
+                    && !myJdbcUri.contains("useCursorFetch=true")) {
+                // The only way to stream without a server side cursor.
+                fetchSize = Integer.MIN_VALUE;
+            }
+        }
+
+        final PreparedStatement statement = conn.prepareStatement(sql,
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        try {
+            statement.setFetchSize(fetchSize);
+        }
+        catch (final SQLException | RuntimeException error) {
+            statement.close();
+            throw error;
+        }
+        return statement;
+    }
+
+    /**
+     * Returns the string without its trailing spaces.
+     *
+     * @param value
+     *            The string.
+     * @return The string without its trailing spaces.
+     */
+    private String stripTrailing(final String value) {
+        int end = value.length();
+        while ((end > 0) && (value.charAt(end - 1) == ' ')) {
+            end -= 1;
+        }
+        return value.substring(0, end);
+    }
+
+    /**
+     * Continuously syncs the table's changes into the collection. The whole
+     * table is loaded first if there is no saved high-water mark. Runs until
+     * interrupted.
+     *
+     * @param database
+     *            The database for the sync state and the large CLOB and BLOB
+     *            values.
+     * @param collection
+     *            The collection to write to.
+     * @throws SQLException
+     *             On a JDBC error loading the table.
+     */
+    private void sync(final MongoDatabase database,
+            final MongoCollection collection) throws SQLException {
+        if (myKey == null) {
+            myKey = primaryKey();
+        }
+
+        final MongoCollection state = database.getCollection(mySyncState);
+        final Document saved = state.findOne(BuilderFactory.start().add(
+                ID_FIELD, myTableName));
+
+        Object mark;
+        if (saved == null) {
+            // Read the mark first so the changes made during the load are
+            // applied again by the first poll.
+            mark = highWaterMark();
+            migrate(database, collection, null,
+                    (myPartitionColumn == null) ? null : partition(null));
+
+            System.out.println("Loaded " + myWritten.get() + " rows in "
+                    + myWrites.get() + " batches.");
+            if ((myFailed.get() > 0) || (myLobsFailed.get() > 0)) {
+                throw new IllegalStateException("Failed to write "
+                        + myFailed.get() + " rows and " + myLobsFailed.get()
+                        + " CLOB/BLOB documents. Not starting the sync.");
+            }
+            saveMark(state, mark);
+        }
+        else {
+            mark = mark(saved.get("mark"));
+        }
+
+        System.out.println("Syncing " + myTableName + " from " + mark
+                + " every " + myInterval + " seconds.");
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                TimeUnit.SECONDS.sleep(myInterval);
+            }
+            catch (final InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+
+            final long written = myWritten.get();
+            final long deleted = myDeleted.get();
+            final long failed = myFailed.get() + myLobsFailed.get();
+            try {
+                final Object next = highWaterMark();
+                if ((next == null) || (next.equals(mark) && (myOverlap == 0))) {
+                    continue;
+                }
+
+                // Changes that commit late, behind the mark, are only seen
+                // within the overlap.
+                final Object since = behind(mark);
+                if (myChangeTable != null) {
+                    applyChanges(database, collection, since, next);
+                }
+                else {
+                    applyUpdates(database, collection, since, next);
+                }
+
+                if (failed == (myFailed.get() + myLobsFailed.get())) {
+                    saveMark(state, next);
+                    mark = next;
+                    System.out.println("Synced to " + mark + ": saved "
+                            + (myWritten.get() - written) + " and deleted "
+                            + (myDeleted.get() - deleted) + " documents.");
+                }
+                else {
+                    System.err.println("Failed to write some of the changes "
+                            + "after " + mark + ". Retrying.");
+                }
+            }
+            catch (final SQLException error) {
+                System.err.println("Failed to read the changes after " + mark
+                        + ": " + error.getMessage() + " Retrying.");
+            }
+        }
+    }
+
+    /**
+     * Converts a partition column value to a long for splitting the range.
+     *
+     * @param value
+     *            The column value.
+     * @return The value as a long.
+     * @throws IllegalStateException
+     *             If the value is not a number or date.
+     */
+    private long toLong(final Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        else if (value instanceof Date) {
+            return ((Date) value).getTime();
+        }
+        throw new IllegalStateException("The partition column '"
+                + myPartitionColumn + "' must be an integer or date column: "
+                + value.getClass().getName());
+    }
+
+    /**
+     * Returns the <code>WHERE</code> clause for the rows after the
+     * <code>from</code> value and within the partition.
+     *
+     * @param from
+     *            The last value of the update field already migrated or
+     *            null to read all of the rows.
+     * @param partition
+     *            The partition to read or null to read the entire table.
+     * @param parameters
+     *            The list to add the clause's parameter values to.
+     * @return The <code>WHERE</code> clause, including the leading space, or
+     *         an empty string if there are no conditions.
+     */
+    private String where(final Object from, final Partition partition,
+            final List<Object> parameters) {
+        final List<String> conditions = new ArrayList<>();
+        if (from != null) {
+            conditions.add(myUpdateField + " > ?");
+            parameters.add(from);
+        }
+        if (partition != null) {
+            if ((partition.getLower() == null)
+                    && (partition.getUpper() != null)) {
+                conditions.add("(" + myPartitionColumn + " < ? OR "
+                        + myPartitionColumn + " IS NULL)");
+                parameters.add(partition.getUpper());
+            }
+            else if (partition.getLower() != null) {
+                conditions.add(myPartitionColumn + " >= ?");
+                parameters.add(partition.getLower());
+                if (partition.getUpper() != null) {
+                    conditions.add(myPartitionColumn + " < ?");
+                    parameters.add(partition.getUpper());
+                }
+            }
+        }
+
+        final StringBuilder clause = new StringBuilder();
+        for (final String condition : conditions) {
+            clause.append((clause.length() == 0) ? " WHERE " : " AND ");
+            clause.append(condition);
+        }
+        return clause.toString();
+    }
+
+    /**
+     * The stream of a child table's rows ordered by the join column. The
+     * stream advances in step with the parent's rows.
+     *
+     * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+     */
+    private final class ChildCursor {
+
+        /** The builder for the child documents. */
+        private final DocumentBuilder myBuilder;
+
+        /** The child table. */
+        private final MigrationPlan.Child myChild;
+
+        /** The connection for the child's query. */
+        private final Connection myConnection;
+
+        /** The number of child rows embedded. */
+        private long myCount;
+
+        /** The index of the join column. */
+        private int myJoinIndex;
+
+        /** The join column's value for the current row or null at the end. */
+        private Object myJoinValue;
+
+        /** The plan for the child's rows. */
+        private ColumnPlan myPlan;
+
+        /** The child's rows. */
+        private ResultSet myResults;
+
+        /** The number of child rows without a parent. */
+        private long mySkipped;
+
+        /** The child's query. */
+        private PreparedStatement myStatement;
+
+        /**
+         * Creates a new ChildCursor and reads the first row.
+         *
+         * @param child
+         *            The child table.
+         * @param lobs
+         *            The store for the child's CLOB and BLOB columns.
+         * @throws SQLException
+         *             On a JDBC error.
+         */
+        public ChildCursor(final MigrationPlan.Child child, final LobStore lobs)
+                throws SQLException {
+            myChild = child;
+            myBuilder = BuilderFactory.start();
+            myConnection = DriverManager.getConnection(myJdbcUri);
+            try {
+                myStatement = stream(myConnection, "SELECT * FROM "
+                        + child.getName() + " WHERE " + child.getJoin()
+                        + " IS NOT NULL ORDER BY " + child.getJoin());
+                myResults = myStatement.executeQuery();
+                myPlan = ColumnPlan.create(myResults.getMetaData(), myDecimals,
+                        lobs, myTimeZone);
+                myJoinIndex = myResults.findColumn(child.getJoin());
+                next();
+            }
+            catch (final SQLException | RuntimeException error) {
+                close();
+                throw error;
+            }
+        }
+
+        /**
+         * Closes the child's query and connection.
+         */
+        public void close() {
+            try {
+                if (myResults != null) {
+                    myResults.close();
+                }
+                if (myStatement != null) {
+                    myStatement.close();
+                }
+                myConnection.close();
+            }
+            catch (final SQLException error) {
+                System.err.println("Failed to close the query for "
+                        + myChild.getName() + ": " + error.getMessage());
+            }
+            finally {
+                myEmbedded.addAndGet(myCount);
+                myOrphans.addAndGet(mySkipped);
+                myCount = 0;
+                mySkipped = 0;
+            }
+        }
+
+        /**
+         * Adds the child rows for the parent's key to the parent's document.
+         * The child rows before the key have no parent and are skipped.
+         *
+         * @param parent
+         *            The parent's key value or null.
+         * @param builder
+         *            The builder for the parent's document.
+         * @throws SQLException
+         *             On a JDBC error.
+         */
+        public void embed(final Object parent, final DocumentBuilder builder)
+                throws SQLException {
+            final ArrayBuilder array = builder.pushArray(myChild.getField());
+            if (parent == null) {
+                return;
+            }
+
+            while ((myJoinValue != null) && (compare(myJoinValue, parent) < 0)) {
+                mySkipped += 1;
+                next();
+            }
+            while ((myJoinValue != null) && (compare(myJoinValue, parent) == 0)) {
+                myBuilder.reset();
+                myPlan.append(myResults, myBuilder);
+                array.add(myBuilder.build());
+                myCount += 1;
+                next();
+            }
+        }
+
+        /**
+         * Skips the child rows after the last parent.
+         *
+         * @throws SQLException
+         *             On a JDBC error.
+         */
+        public void finish() throws SQLException {
+            while (myJoinValue != null) {
+                mySkipped += 1;
+                next();
+            }
+        }
+
+        /**
+         * Advances to the next child row.
+         *
+         * @throws SQLException
+         *             On a JDBC error.
+         */
+        private void next() throws SQLException {
+            final Object previous = myJoinValue;
+            myJoinValue = myResults.next() ? myResults.getObject(myJoinIndex)
+                    : null;
+            if (myJoinValue != null) {
+                ordered(previous, myJoinValue, myChild.getName(),
+                        myChild.getJoin());
+            }
+        }
+    }
+
+    /**
+     * The writers for the rows read by a query. Closing them waits for the
+     * writes and adds their counts to the migration's totals.
+     *
+     * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+     */
+    private final class Output {
+
+        /** The store for the large CLOB and BLOB values. */
+        private final LobStore myLobs;
+
+        /** The writer for the rows' documents or null to discard them. */
+        private final BatchWriter myWriter;
+
+        /**
+         * Creates a new Output.
+         *
+         * @param writer
+         *            The writer for the rows' documents or null to discard
+         *            them.
+         * @param lobs
+         *            The store for the large CLOB and BLOB values.
+         */
+        public Output(final BatchWriter writer, final LobStore lobs) {
+            myWriter = writer;
+            myLobs = lobs;
+        }
+
+        /**
+         * Waits for the rows already written, even if the read failed, and
+         * adds the writes to the totals.
+         */
+        public void close() {
+            myLobs.close();
+            myLobsFailed.addAndGet(myLobs.getFailed());
+            if (myWriter != null) {
+                myWriter.close();
+
+                myWritten.addAndGet(myWriter.getWritten());
+                myWrites.addAndGet(myWriter.getWrites());
+                myFailed.addAndGet(myWriter.getFailed());
+            }
+        }
+
+        /**
+         * Returns the store for the large CLOB and BLOB values.
+         *
+         * @return The store for the large CLOB and BLOB values.
+         */
+        public LobStore getLobs() {
+            return myLobs;
+        }
+
+        /**
+         * Returns the writer for the rows' documents.
+         *
+         * @return The writer for the rows' documents or null if they are
+         *         discarded.
+         */
+        public BatchWriter getWriter() {
+            return myWriter;
+        }
+    }
+
+    /**
+     * A range of the partition column's values. The lower bound is inclusive
+     * and the upper bound exclusive. A null lower bound includes all of the
+     * smaller and <code>NULL</code> values and a null upper bound all of the
+     * larger values.
+     *
+     * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+     */
+    private static final class Partition {
+
+        /** The inclusive lower bound or null. */
+        private final Object myLower;
+
+        /** The exclusive upper bound or null. */
+        private final Object myUpper;
+
+        /**
+         * Creates a new Partition.
+         *
+         * @param lower
+         *            The inclusive lower bound or null.
+         * @param upper
+         *            The exclusive upper bound or null.
+         */
+        public Partition(final Object lower, final Object upper) {
+            myLower = lower;
+            myUpper = upper;
+        }
+
+        /**
+         * Returns the inclusive lower bound or null.
+         *
+         * @return The inclusive lower bound or null.
+         */
+        public Object getLower() {
+            return myLower;
+        }
+
+        /**
+         * Returns the exclusive upper bound or null.
+         *
+         * @return The exclusive upper bound or null.
+         */
+        public Object getUpper() {
+            return myUpper;
+        }
+    }
+
+    /**
+     * The measurements of a profiling pass.
+     *
+     * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+     */
+    private static final class Profile {
+
+        /** The total size of the documents. */
+        private long myBytes;
+
+        /** The time spent converting rows to documents. */
+        private long myConvert;
+
+        /** The time spent fetching rows from the database. */
+        private long myFetch;
+
+        /** The number of rows. */
+        private long myRows;
+
+        /** The stage profiled. */
+        private final Stage myStage;
+
+        /** The total time of the pass. */
+        private long myTotal;
+
+        /** The time spent waiting to write the documents. */
+        private long myWrite;
+
+        /**
+         * Creates a new Profile.
+         *
+         * @param stage
+         *            The stage profiled.
+         */
+        public Profile(final Stage stage) {
+            myStage = stage;
+        }
+
+        /**
+         * Records the conversion of a row to a document.
+         *
+         * @param bytes
+         *            The size of the document.
+         * @param nanos
+         *            The time to convert the row.
+         */
+        public void converted(final long bytes, final long nanos) {
+            myBytes += bytes;
+            myConvert += nanos;
+        }
+
+        /**
+         * Records fetching a row.
+         *
+         * @param nanos
+         *            The time to fetch the row.
+         */
+        public void fetched(final long nanos) {
+            myFetch += nanos;
+            myRows += 1;
+        }
+
+        /**
+         * Records the end of the pass.
+         *
+         * @param nanos
+         *            The total time of the pass.
+         */
+        public void finished(final long nanos) {
+            myTotal = nanos;
+        }
+
+        /**
+         * {@inheritDoc}
+         * <p>
+         * Overridden to return the report for the pass.
+         * </p>
+         */
+        @Override
+        public String toString() {
+            final double seconds = Math.max(myTotal, 1) / 1e9;
+            final StringBuilder report = new StringBuilder();
+            report.append(String.format("%-8s %,d rows in %,.2f s: %,.0f rows/s",
+                    myStage.name().toLowerCase(Locale.US), myRows, seconds,
+                    myRows / seconds));
+            if (myStage != Stage.EXTRACT) {
+                report.append(String.format(", %,.1f MB/s, %,d bytes/document",
+                        myBytes / seconds / (1024 * 1024),
+                        myBytes / Math.max(myRows, 1)));
+            }
+            report.append(String.format(
+                    "; fetch %d%%, convert %d%%, write %d%%",
+                    percent(myFetch), percent(myConvert), percent(myWrite)));
+            return report.toString();
+        }
+
+        /**
+         * Records waiting on the database without fetching a row.
+         *
+         * @param nanos
+         *            The time waiting on the database.
+         */
+        public void waited(final long nanos) {
+            myFetch += nanos;
+        }
+
+        /**
+         * Records waiting to write a document.
+         *
+         * @param nanos
+         *            The time waiting to write the document.
+         */
+        public void wrote(final long nanos) {
+            myWrite += nanos;
+        }
+
+        /**
+         * Returns the time as a percentage of the total time.
+         *
+         * @param nanos
+         *            The time.
+         * @return The percentage of the total time.
+         */
+        private long percent(final long nanos) {
+            return Math.round((nanos * 100.0) / Math.max(myTotal, 1));
+        }
+    }
+
+    /**
+     * The stages of the migration to profile, each including the ones before.
+     *
+     * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+     */
+    private static enum Stage {
+        /** Only read the rows from the database. */
+        EXTRACT,
+
+        /** Read the rows and convert them to documents. */
+        CONVERT,
+
+        /** Read, convert and write the documents. */
+        FULL;
     }
 }
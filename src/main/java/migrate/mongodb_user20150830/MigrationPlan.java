@@ -0,0 +1,300 @@
+/*
+ * #%L
+ * MigrationPlan.java - mongodb-async-examples - Allanbank Consulting, Inc.
+ * %%
+ * Copyright (C) 2015 Allanbank Consulting, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+package migrate.mongodb_user20150830;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * The tables to migrate and the child tables to embed in each table's
+ * documents.
+ * <p>
+ * The plan is read from a file in {@link Properties} format:
+ * </p>
+ * <blockquote>
+ *
+ * <pre>
+ * # The tables to migrate, each into its own collection.
+ * tables=customers,orders
+ *
+ * customers.key=id
+ *
+ * orders.collection=order_history
+ * orders.key=id
+ * orders.embed=order_lines,payments
+ *
+ * # The child's column referencing the parent's key.
+ * order_lines.join=order_id
+ * # The parent's array field for the child rows. Defaults to the child's name.
+ * order_lines.field=lines
+ *
+ * payments.join=order_id
+ * </pre>
+ *
+ * </blockquote>
+ * <p>
+ * A table's <code>collection</code> defaults to the table's name. The
+ * <code>key</code> column(s) become the document's <code>_id</code>; without
+ * one the rows are inserted with a generated <code>_id</code>. A table with
+ * embedded children must have a single key column.
+ * </p>
+ *
+ * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+ */
+public class MigrationPlan {
+
+    /**
+     * Reads the plan from the file.
+     *
+     * @param file
+     *            The plan file.
+     * @return The plan.
+     * @throws IOException
+     *             On a failure reading the file.
+     * @throws IllegalStateException
+     *             If the plan is not valid.
+     */
+    public static MigrationPlan load(final File file) throws IOException {
+        final Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            properties.load(in);
+        }
+
+        final List<Table> tables = new ArrayList<>();
+        for (final String name : list(properties.getProperty("tables"))) {
+            final String collection = properties.getProperty(name
+                    + ".collection", name);
+            final List<String> key = list(properties.getProperty(name + ".key"));
+
+            final List<Child> children = new ArrayList<>();
+            for (final String child : list(properties.getProperty(name
+                    + ".embed"))) {
+                final String join = properties.getProperty(child + ".join");
+                if (join == null) {
+                    throw new IllegalStateException("The embedded table '"
+                            + child + "' needs a '" + child
+                            + ".join' column.");
+                }
+                children.add(new Child(child, join.trim(), properties
+                        .getProperty(child + ".field", child).trim()));
+            }
+            if (!children.isEmpty() && (key.size() != 1)) {
+                throw new IllegalStateException("The table '" + name
+                        + "' needs a single '" + name
+                        + ".key' column to embed its children.");
+            }
+
+            tables.add(new Table(name, collection.trim(), key.isEmpty() ? null
+                    : key.toArray(new String[key.size()]), children));
+        }
+
+        if (tables.isEmpty()) {
+            throw new IllegalStateException("The plan '" + file
+                    + "' does not list any 'tables'.");
+        }
+        return new MigrationPlan(tables);
+    }
+
+    /**
+     * Splits the comma separated list.
+     *
+     * @param value
+     *            The list or null.
+     * @return The non-empty values.
+     */
+    private static List<String> list(final String value) {
+        final List<String> values = new ArrayList<>();
+        if (value != null) {
+            for (final String item : value.split(",")) {
+                if (!item.trim().isEmpty()) {
+                    values.add(item.trim());
+                }
+            }
+        }
+        return values;
+    }
+
+    /** The tables to migrate. */
+    private final List<Table> myTables;
+
+    /**
+     * Creates a new MigrationPlan.
+     *
+     * @param tables
+     *            The tables to migrate.
+     */
+    private MigrationPlan(final List<Table> tables) {
+        myTables = Collections.unmodifiableList(tables);
+    }
+
+    /**
+     * Returns the tables to migrate.
+     *
+     * @return The tables to migrate.
+     */
+    public List<Table> getTables() {
+        return myTables;
+    }
+
+    /**
+     * A child table embedded as an array in its parent's documents.
+     *
+     * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+     */
+    public static final class Child {
+
+        /** The parent's array field for the child rows. */
+        private final String myField;
+
+        /** The child's column referencing the parent's key. */
+        private final String myJoin;
+
+        /** The name of the child table. */
+        private final String myName;
+
+        /**
+         * Creates a new Child.
+         *
+         * @param name
+         *            The name of the child table.
+         * @param join
+         *            The child's column referencing the parent's key.
+         * @param field
+         *            The parent's array field for the child rows.
+         */
+        public Child(final String name, final String join, final String field) {
+            myName = name;
+            myJoin = join;
+            myField = field;
+        }
+
+        /**
+         * Returns the parent's array field for the child rows.
+         *
+         * @return The parent's array field for the child rows.
+         */
+        public String getField() {
+            return myField;
+        }
+
+        /**
+         * Returns the child's column referencing the parent's key.
+         *
+         * @return The child's column referencing the parent's key.
+         */
+        public String getJoin() {
+            return myJoin;
+        }
+
+        /**
+         * Returns the name of the child table.
+         *
+         * @return The name of the child table.
+         */
+        public String getName() {
+            return myName;
+        }
+    }
+
+    /**
+     * A table migrated into its own collection.
+     *
+     * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+     */
+    public static final class Table {
+
+        /** The child tables to embed. */
+        private final List<Child> myChildren;
+
+        /** The name of the collection. */
+        private final String myCollection;
+
+        /** The key column(s) or null to use a generated <code>_id</code>. */
+        private final String[] myKey;
+
+        /** The name of the table. */
+        private final String myName;
+
+        /**
+         * Creates a new Table.
+         *
+         * @param name
+         *            The name of the table.
+         * @param collection
+         *            The name of the collection.
+         * @param key
+         *            The key column(s) or null to use a generated
+         *            <code>_id</code>.
+         * @param children
+         *            The child tables to embed.
+         */
+        public Table(final String name, final String collection,
+                final String[] key, final List<Child> children) {
+            myName = name;
+            myCollection = collection;
+            myKey = key;
+            myChildren = Collections.unmodifiableList(children);
+        }
+
+        /**
+         * Returns the child tables to embed.
+         *
+         * @return The child tables to embed.
+         */
+        public List<Child> getChildren() {
+            return myChildren;
+        }
+
+        /**
+         * Returns the name of the collection.
+         *
+         * @return The name of the collection.
+         */
+        public String getCollection() {
+            return myCollection;
+        }
+
+        /**
+         * Returns the key column(s) or null to use a generated
+         * <code>_id</code>.
+         *
+         * @return The key column(s) or null.
+         */
+        public String[] getKey() {
+            return myKey;
+        }
+
+        /**
+         * Returns the name of the table.
+         *
+         * @return The name of the table.
+         */
+        public String getName() {
+            return myName;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * #%L
+ * Throttle.java - mongodb-async-examples - Allanbank Consulting, Inc.
+ * %%
+ * Copyright (C) 2015 Allanbank Consulting, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+package migrate.mongodb_user20150830;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the rate documents are written and adapts the rate to the write
+ * latency.
+ * <p>
+ * Each batch waits for its share of the current rate before it is sent. With
+ * a target latency the rate is adjusted once per {@link #WINDOW} using the
+ * 99th percentile of the acknowledgement latencies in the window: above the
+ * target the rate is halved, from the lower of the rate and the throughput
+ * actually acknowledged; at or below the target the rate grows by a fixed
+ * step, up to the maximum rate. The additive increase and multiplicative
+ * decrease (AIMD) backs off quickly when the cluster is struggling, e.g. with
+ * replication lag, and probes slowly for spare capacity.
+ * </p>
+ * <p>
+ * A single throttle is shared by all of the writers so the limit is for the
+ * whole migration. Instances are thread safe.
+ * </p>
+ *
+ * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+ */
+public class Throttle {
+
+    /** The rate to start at with a target latency but no maximum rate. */
+    public static final double DEFAULT_START_RATE = 1000;
+
+    /** The maximum number of latencies kept for each window. */
+    private static final int SAMPLES = 256;
+
+    /** The time between each adjustment of the rate. */
+    private static final long WINDOW = TimeUnit.SECONDS.toNanos(1);
+
+    /** The number of documents acknowledged in the current window. */
+    private long myAcknowledged;
+
+    /** The number of latencies recorded in the current window. */
+    private int myCount;
+
+    /** The latencies of the current window, in nanoseconds. */
+    private final long[] myLatencies;
+
+    /** The maximum rate in documents per second or zero for no maximum. */
+    private final double myMaxRate;
+
+    /** The time the next batch may be sent. */
+    private long myNextSend;
+
+    /** The current rate in documents per second. */
+    private double myRate;
+
+    /** The documents per second added to the rate after a good window. */
+    private final double myStep;
+
+    /** The target 99th percentile latency or zero to not adapt the rate. */
+    private final long myTargetLatency;
+
+    /** The start of the current window. */
+    private long myWindowStart;
+
+    /**
+     * Creates a new Throttle.
+     *
+     * @param maxRate
+     *            The maximum rate in documents per second or zero for no
+     *            maximum.
+     * @param targetLatency
+     *            The target 99th percentile write latency in milliseconds or
+     *            zero to not adapt the rate.
+     * @param step
+     *            The documents per second added to the rate after each window
+     *            within the target. Also the minimum rate.
+     */
+    public Throttle(final double maxRate, final long targetLatency,
+            final double step) {
+        myMaxRate = maxRate;
+        myTargetLatency = TimeUnit.MILLISECONDS.toNanos(targetLatency);
+        myStep = step;
+        myRate = (maxRate > 0) ? maxRate : DEFAULT_START_RATE;
+        myLatencies = new long[SAMPLES];
+        myCount = 0;
+        myAcknowledged = 0;
+        myNextSend = System.nanoTime();
+        myWindowStart = myNextSend;
+    }
+
+    /**
+     * Records the acknowledgement of a batch and, at the end of a window,
+     * adjusts the rate.
+     *
+     * @param documents
+     *            The number of documents in the batch.
+     * @param latency
+     *            The time from sending the batch to its acknowledgement, in
+     *            nanoseconds.
+     */
+    public synchronized void acknowledged(final int documents,
+            final long latency) {
+        myLatencies[myCount % SAMPLES] = latency;
+        myCount += 1;
+        myAcknowledged += documents;
+
+        final long now = System.nanoTime();
+        final long elapsed = now - myWindowStart;
+        if ((myTargetLatency <= 0) || (elapsed < WINDOW)) {
+            return;
+        }
+
+        final long[] latencies = Arrays.copyOf(myLatencies,
+                Math.min(myCount, SAMPLES));
+        Arrays.sort(latencies);
+        final long p99 = latencies[(int) Math.ceil(latencies.length * 0.99) - 1];
+
+        if (myTargetLatency < p99) {
+            final double acknowledged = (myAcknowledged * (double) WINDOW)
+                    / elapsed;
+            final double rate = Math.max(myStep,
+                    Math.min(myRate, acknowledged) / 2);
+            if (rate < myRate) {
+                System.out.println("Write p99 latency of "
+                        + TimeUnit.NANOSECONDS.toMillis(p99)
+                        + " ms is over the target. Reducing the rate to "
+                        + Math.round(rate) + " documents/second.");
+            }
+            myRate = rate;
+        }
+        else if ((myMaxRate <= 0) || (myRate < myMaxRate)) {
+            myRate = (myMaxRate <= 0) ? (myRate + myStep) : Math.min(myMaxRate,
+                    myRate + myStep);
+        }
+
+        myCount = 0;
+        myAcknowledged = 0;
+        myWindowStart = now;
+    }
+
+    /**
+     * Waits until the documents may be sent at the current rate.
+     *
+     * @param documents
+     *            The number of documents to send.
+     */
+    public void acquire(final int documents) {
+        final long wait;
+        synchronized (this) {
+            final long now = System.nanoTime();
+            final long start = Math.max(now, myNextSend);
+            myNextSend = start + (long) ((documents * 1e9) / myRate);
+            wait = start - now;
+        }
+
+        if (wait > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            catch (final InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Returns the current rate in documents per second.
+     *
+     * @return The current rate in documents per second.
+     */
+    public synchronized double getRate() {
+        return myRate;
+    }
+}
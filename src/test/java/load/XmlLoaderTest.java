@@ -0,0 +1,76 @@
+/*
+ *           Copyright 2015 - Allanbank Consulting, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package load;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import org.junit.Test;
+
+/**
+ * Tests for the {@link XmlLoader}.
+ *
+ * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+ */
+public class XmlLoaderTest {
+
+    /**
+     * Test method for {@link XmlLoader#keyPath(String)} with a field name that
+     * is not a valid MongoDB field name.
+     */
+    @Test
+    public void testKeyPathCleansNames() {
+        assertArrayEquals(new String[] { "header", "_$id" },
+                XmlLoader.keyPath("/record/header/@$id"));
+    }
+
+    /**
+     * Test method for {@link XmlLoader#keyPath(String)} with a dotted field
+     * path.
+     */
+    @Test
+    public void testKeyPathDotted() {
+        assertArrayEquals(new String[] { "id" }, XmlLoader.keyPath("id"));
+        assertArrayEquals(new String[] { "header", "record", "id" },
+                XmlLoader.keyPath("header.record.id"));
+    }
+
+    /**
+     * Test method for {@link XmlLoader#keyPath(String)} with an absolute XPath.
+     * The root element is the document so it is not part of the field path.
+     */
+    @Test
+    public void testKeyPathXPath() {
+        assertArrayEquals(new String[] { "id" },
+                XmlLoader.keyPath("/record/id"));
+        assertArrayEquals(new String[] { "id" },
+                XmlLoader.keyPath("/record/@id"));
+        assertArrayEquals(new String[] { "header", "id" },
+                XmlLoader.keyPath("/record/header/@id"));
+        assertArrayEquals(new String[] { "header", "id" },
+                XmlLoader.keyPath("//record/header/id"));
+    }
+
+    /**
+     * Test method for {@link XmlLoader#keyPath(String)} with a relative XPath.
+     * Every step is part of the field path.
+     */
+    @Test
+    public void testKeyPathXPathRelative() {
+        assertArrayEquals(new String[] { "header", "id" },
+                XmlLoader.keyPath("header/@id"));
+        assertArrayEquals(new String[] { "id" }, XmlLoader.keyPath("@id"));
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * #%L
+ * LobStoreTest.java - mongodb-async-examples - Allanbank Consulting, Inc.
+ * %%
+ * Copyright (C) 2015 Allanbank Consulting, Inc.
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+package migrate.mongodb_user20150830;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.sql.SQLException;
+
+import org.junit.Test;
+
+import com.allanbank.mongodb.bson.Document;
+import com.allanbank.mongodb.bson.builder.BuilderFactory;
+import com.allanbank.mongodb.bson.builder.DocumentBuilder;
+import com.allanbank.mongodb.bson.element.ObjectId;
+
+/**
+ * Tests for the {@link LobStore}.
+ *
+ * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+ */
+public class LobStoreTest {
+
+    /**
+     * Test method for
+     * {@link LobStore#addClob(DocumentBuilder, String, Reader)} with a CLOB
+     * larger than the inline limit that ends in a lone high surrogate. The
+     * surrogate is held back waiting for its pair only until the end of the
+     * CLOB.
+     *
+     * @throws SQLException
+     *             On a test failure.
+     */
+    @Test(timeout = 10000)
+    public void testAddClobChunkedEndingInHighSurrogate() throws SQLException {
+        final TrickleReader in = new TrickleReader("abcdefgh\uD800");
+
+        final DocumentBuilder builder = BuilderFactory.start();
+        new LobStore(4).addClob(builder, "clob", in);
+
+        final Document document = builder.build();
+        assertTrue(document.get("clob").getValueAsObject() instanceof ObjectId);
+        assertTrue(in.isClosed());
+    }
+
+    /**
+     * Test method for
+     * {@link LobStore#addClob(DocumentBuilder, String, Reader)} with a CLOB
+     * larger than the inline limit with a surrogate pair split across reads
+     * and a lone high surrogate at the end.
+     *
+     * @throws SQLException
+     *             On a test failure.
+     */
+    @Test(timeout = 10000)
+    public void testAddClobChunkedWithSplitPair() throws SQLException {
+        final TrickleReader in = new TrickleReader(
+                "abcd\uD83D\uDE00efgh\uD83D\uDE00\uD800");
+
+        final DocumentBuilder builder = BuilderFactory.start();
+        new LobStore(2).addClob(builder, "clob", in);
+
+        final Document document = builder.build();
+        assertTrue(document.get("clob").getValueAsObject() instanceof ObjectId);
+        assertTrue(in.isClosed());
+    }
+
+    /**
+     * Test method for
+     * {@link LobStore#addClob(DocumentBuilder, String, Reader)} with a CLOB
+     * within the inline limit that ends in a lone high surrogate.
+     *
+     * @throws SQLException
+     *             On a test failure.
+     */
+    @Test(timeout = 10000)
+    public void testAddClobInlineEndingInHighSurrogate() throws SQLException {
+        final TrickleReader in = new TrickleReader("abc\uD800");
+
+        final DocumentBuilder builder = BuilderFactory.start();
+        new LobStore(16).addClob(builder, "clob", in);
+
+        final Document document = builder.build();
+        assertEquals("abc\uD800", document.get("clob").getValueAsObject());
+        assertTrue(in.isClosed());
+    }
+
+    /**
+     * A reader that returns a single character from each read, as a driver
+     * streaming a CLOB might, and records when it is closed.
+     *
+     * @copyright 2015, Allanbank Consulting, Inc., All Rights Reserved
+     */
+    private static final class TrickleReader extends Reader {
+
+        /** True once the reader is closed. */
+        private boolean myClosed;
+
+        /** The reader for the value. */
+        private final Reader myValue;
+
+        /**
+         * Creates a new TrickleReader.
+         *
+         * @param value
+         *            The value to read.
+         */
+        public TrickleReader(final String value) {
+            myValue = new StringReader(value);
+            myClosed = false;
+        }
+
+        /**
+         * {@inheritDoc}
+         * <p>
+         * Overridden to record that the reader is closed.
+         * </p>
+         */
+        @Override
+        public void close() throws IOException {
+            myValue.close();
+            myClosed = true;
+        }
+
+        /**
+         * Returns true once the reader is closed.
+         *
+         * @return True once the reader is closed.
+         */
+        public boolean isClosed() {
+            return myClosed;
+        }
+
+        /**
+         * {@inheritDoc}
+         * <p>
+         * Overridden to read at most one character.
+         * </p>
+         */
+        @Override
+        public int read(final char[] buffer, final int offset, final int length)
+                throws IOException {
+            return myValue.read(buffer, offset, Math.min(length, 1));
+        }
+    }
+}